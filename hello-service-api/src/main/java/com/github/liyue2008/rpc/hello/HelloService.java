@@ -13,10 +13,13 @@
  */
 package com.github.liyue2008.rpc.hello;
 
+import com.github.liyue2008.rpc.RpcService;
+
 /**
  * @author LiYue
  * Date: 2019/9/20
  */
+@RpcService
 public interface HelloService {
     String hello(String name);
 }
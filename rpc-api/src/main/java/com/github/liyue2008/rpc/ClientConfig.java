@@ -0,0 +1,318 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc;
+
+/**
+ * 客户端配置，需要在获取远程服务引用之前通过{@link RpcAccessPoint#setClientConfig(ClientConfig)}设置，
+ * 只对之后创建的连接生效。
+ * @author LiYue
+ * Date: 2019/10/16
+ */
+public class ClientConfig {
+    /**
+     * 选择连接的方式
+     */
+    public enum ConnectionSelector {
+        /**
+         * 轮流使用每个连接
+         */
+        ROUND_ROBIN,
+        /**
+         * 使用在途请求最少的连接
+         */
+        LEAST_OUTSTANDING,
+        /**
+         * 调用线程是网络IO线程时，优先使用建立在这个线程上的连接；没有这样的连接并且还能新建连接时，
+         * 在调用线程上新建一个。其它情况下轮流使用每个连接。
+         * 需要同时开启{@link #sharedEventLoop}，服务端的IO线程上发起的调用不再切换线程，适合代理和网关这类服务。
+         */
+        EVENT_LOOP
+    }
+
+    /**
+     * 连接积压了太多还没有写出的请求、变为不可写时，发送请求的方式
+     */
+    public enum BackpressureMode {
+        /**
+         * 等待连接恢复可写，最多等待{@link #writeWaitMillis}，超时后请求失败。在网络IO线程上发送时不等待，直接失败
+         */
+        WAIT,
+        /**
+         * 请求立即失败
+         */
+        FAIL,
+        /**
+         * 请求继续排队，连接上排队的请求字节数超过{@link #writeQueueBytes}时请求立即失败
+         */
+        QUEUE
+    }
+
+    /**
+     * 服务提供者注册在同一个{@link RpcAccessPoint}中时的调用方式
+     */
+    public enum LocalCallMode {
+        /**
+         * 和其它远程服务一样通过网络调用
+         */
+        REMOTE,
+        /**
+         * 桩直接调用服务提供者的实例，调用方和服务提供者共享参数和返回值对象，服务方法在调用线程中执行；
+         * 单向方法异步执行，返回CompletableFuture的方法在设置的completionExecutor中完成
+         */
+        DIRECT,
+        /**
+         * 请求不经过网络，直接交给进程内的请求处理器，参数和返回值仍然通过序列化复制，
+         * 服务方法按照注册服务时的配置执行，语义和远程调用相同。流式调用仍然通过网络发送。
+         */
+        COPY
+    }
+
+    /**
+     * 请求超时时间，超时的请求立即以{@link java.util.concurrent.TimeoutException}失败
+     */
+    private long requestTimeoutMillis = 10000L;
+    /**
+     * 每个连接上最多同时有多少个请求在等待响应
+     */
+    private int maxInFlightRequests = 10000;
+    /**
+     * 在途请求达到上限时，发送请求最多等待多长时间，为0时立即失败
+     */
+    private long inFlightWaitMillis = 0L;
+    /**
+     * 每个服务地址最多建立多少个连接，连接在需要时才创建
+     */
+    private int connectionsPerEndpoint = 1;
+    private ConnectionSelector connectionSelector = ConnectionSelector.ROUND_ROBIN;
+    /**
+     * 使用进程内共享的网络IO线程组，和同一进程中其它开启了共享的服务端、客户端共用线程
+     */
+    private boolean sharedEventLoop = false;
+    private FlushMode flushMode = FlushMode.BATCH;
+    /**
+     * 合并刷新时，积累了多少个请求立即刷新
+     */
+    private int flushMaxMessages = 64;
+    /**
+     * 合并刷新时，积累了多少字节立即刷新
+     */
+    private int flushMaxBytes = 64 * 1024;
+    /**
+     * 请求payload的压缩算法
+     */
+    private Compression compression = Compression.NONE;
+    /**
+     * payload小于这个字节数时不压缩
+     */
+    private int compressionThreshold = 1024;
+    /**
+     * 自适应压缩：观察到的压缩率很差时暂停压缩，之后定期重新尝试
+     */
+    private boolean adaptiveCompression = true;
+    /**
+     * 收到的响应帧最多多少字节，压缩过的payload解压后也不能超过这个长度，超过时关闭连接
+     */
+    private int maxFrameLength = 64 * 1024 * 1024;
+    /**
+     * 请求最高使用的协议版本：1是固定长度的int头部，2是varint编码的紧凑头部。
+     * 每个连接先用版本1发送请求，服务端在响应中表明支持版本2之后才切换，所以可以直接连接只支持版本1的旧服务端。
+     * 设置为1时总是使用版本1。
+     */
+    private int protocolVersion = 2;
+    /**
+     * 流式调用的流控窗口：客户端最多缓存多少个还没有消费的元素，
+     * 服务端在得到新的信用之前最多发送这么多个元素
+     */
+    private int streamWindow = 32;
+    private LocalCallMode localCallMode = LocalCallMode.DIRECT;
+    /**
+     * 连接中等待写出的字节数超过高水位时连接变为不可写，降到低水位以下时恢复可写
+     */
+    private int writeBufferLowWaterMark = 32 * 1024;
+    private int writeBufferHighWaterMark = 64 * 1024;
+    private BackpressureMode backpressureMode = BackpressureMode.QUEUE;
+    private long writeWaitMillis = 1000L;
+    /**
+     * 每个连接上最多排队多少字节还没有写出的请求，限制服务提供者变慢时请求占用的堆外内存
+     */
+    private long writeQueueBytes = 64L * 1024 * 1024;
+
+    public long getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+
+    public void setRequestTimeoutMillis(long requestTimeoutMillis) {
+        this.requestTimeoutMillis = requestTimeoutMillis;
+    }
+
+    public int getMaxInFlightRequests() {
+        return maxInFlightRequests;
+    }
+
+    public void setMaxInFlightRequests(int maxInFlightRequests) {
+        this.maxInFlightRequests = maxInFlightRequests;
+    }
+
+    public long getInFlightWaitMillis() {
+        return inFlightWaitMillis;
+    }
+
+    public void setInFlightWaitMillis(long inFlightWaitMillis) {
+        this.inFlightWaitMillis = inFlightWaitMillis;
+    }
+
+    public int getConnectionsPerEndpoint() {
+        return connectionsPerEndpoint;
+    }
+
+    public void setConnectionsPerEndpoint(int connectionsPerEndpoint) {
+        this.connectionsPerEndpoint = connectionsPerEndpoint;
+    }
+
+    public ConnectionSelector getConnectionSelector() {
+        return connectionSelector;
+    }
+
+    public void setConnectionSelector(ConnectionSelector connectionSelector) {
+        this.connectionSelector = connectionSelector;
+    }
+
+    public boolean isSharedEventLoop() {
+        return sharedEventLoop;
+    }
+
+    public void setSharedEventLoop(boolean sharedEventLoop) {
+        this.sharedEventLoop = sharedEventLoop;
+    }
+
+    public FlushMode getFlushMode() {
+        return flushMode;
+    }
+
+    public void setFlushMode(FlushMode flushMode) {
+        this.flushMode = flushMode;
+    }
+
+    public int getFlushMaxMessages() {
+        return flushMaxMessages;
+    }
+
+    public void setFlushMaxMessages(int flushMaxMessages) {
+        this.flushMaxMessages = flushMaxMessages;
+    }
+
+    public int getFlushMaxBytes() {
+        return flushMaxBytes;
+    }
+
+    public void setFlushMaxBytes(int flushMaxBytes) {
+        this.flushMaxBytes = flushMaxBytes;
+    }
+
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    public void setProtocolVersion(int protocolVersion) {
+        this.protocolVersion = protocolVersion;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public boolean isAdaptiveCompression() {
+        return adaptiveCompression;
+    }
+
+    public void setAdaptiveCompression(boolean adaptiveCompression) {
+        this.adaptiveCompression = adaptiveCompression;
+    }
+
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    public void setMaxFrameLength(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    public int getStreamWindow() {
+        return streamWindow;
+    }
+
+    public void setStreamWindow(int streamWindow) {
+        this.streamWindow = streamWindow;
+    }
+
+    public LocalCallMode getLocalCallMode() {
+        return localCallMode;
+    }
+
+    public void setLocalCallMode(LocalCallMode localCallMode) {
+        this.localCallMode = localCallMode;
+    }
+
+    public int getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    public void setWriteBufferLowWaterMark(int writeBufferLowWaterMark) {
+        this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+    }
+
+    public int getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    public void setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
+        this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+    }
+
+    public BackpressureMode getBackpressureMode() {
+        return backpressureMode;
+    }
+
+    public void setBackpressureMode(BackpressureMode backpressureMode) {
+        this.backpressureMode = backpressureMode;
+    }
+
+    public long getWriteWaitMillis() {
+        return writeWaitMillis;
+    }
+
+    public void setWriteWaitMillis(long writeWaitMillis) {
+        this.writeWaitMillis = writeWaitMillis;
+    }
+
+    public long getWriteQueueBytes() {
+        return writeQueueBytes;
+    }
+
+    public void setWriteQueueBytes(long writeQueueBytes) {
+        this.writeQueueBytes = writeQueueBytes;
+    }
+}
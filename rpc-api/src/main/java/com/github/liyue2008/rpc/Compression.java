@@ -0,0 +1,35 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc;
+
+/**
+ * 请求和响应payload的压缩算法，只对协议版本2的帧生效。
+ * 压缩后的长度不小于原长度时，payload按原样发送。
+ * @author LiYue
+ * Date: 2019/10/17
+ */
+public enum Compression {
+    /**
+     * 不压缩
+     */
+    NONE,
+    /**
+     * Snappy，和LZ4一样是基于LZ77的快速压缩算法，压缩率一般，CPU开销很小
+     */
+    SNAPPY,
+    /**
+     * Deflate，压缩率高，CPU开销比SNAPPY大，适合带宽是瓶颈的场景
+     */
+    DEFLATE
+}
@@ -0,0 +1,87 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc;
+
+/**
+ * 服务端执行服务方法的方式，注册服务时指定，参见{@link RpcAccessPoint#addServiceProvider(Object, Class, ExecutorConfig)}。
+ * 使用同一个ThreadPool配置实例注册的服务共用一个线程池。
+ * @author LiYue
+ * Date: 2019/10/15
+ */
+public class ExecutorConfig {
+    public enum Mode {
+        /**
+         * 直接在网络IO线程上执行，服务方法必须很快返回，否则会阻塞同一个IO线程上的所有连接
+         */
+        DIRECT,
+        /**
+         * 在有界线程池中执行，队列满时直接返回服务端繁忙的错误响应
+         */
+        THREAD_POOL,
+        /**
+         * 每个请求一个虚拟线程，需要JDK 21及以上版本
+         */
+        VIRTUAL_THREAD
+    }
+
+    private static final ExecutorConfig DEFAULT = direct();
+    private final Mode mode;
+    private final int threads;
+    private final int queueCapacity;
+
+    private ExecutorConfig(Mode mode, int threads, int queueCapacity) {
+        this.mode = mode;
+        this.threads = threads;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public static ExecutorConfig direct() {
+        return new ExecutorConfig(Mode.DIRECT, 0, 0);
+    }
+
+    /**
+     * @param threads 线程数
+     * @param queueCapacity 等待执行的请求队列的最大长度
+     */
+    public static ExecutorConfig threadPool(int threads, int queueCapacity) {
+        if (threads <= 0 || queueCapacity < 0) {
+            throw new IllegalArgumentException(
+                    String.format("Invalid thread pool config, threads: %d, queue capacity: %d!", threads, queueCapacity));
+        }
+        return new ExecutorConfig(Mode.THREAD_POOL, threads, queueCapacity);
+    }
+
+    public static ExecutorConfig virtualThread() {
+        return new ExecutorConfig(Mode.VIRTUAL_THREAD, 0, 0);
+    }
+
+    /**
+     * 默认配置：直接在网络IO线程上执行。需要隔离慢方法的服务在注册时指定{@link #threadPool(int, int)}
+     */
+    public static ExecutorConfig defaultConfig() {
+        return DEFAULT;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+}
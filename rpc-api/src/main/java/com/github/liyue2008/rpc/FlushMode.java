@@ -0,0 +1,31 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc;
+
+/**
+ * 写出消息后什么时候刷新到网络
+ * @author LiYue
+ * Date: 2019/10/17
+ */
+public enum FlushMode {
+    /**
+     * 每个消息写出后立即刷新，每个消息一次系统调用
+     */
+    IMMEDIATE,
+    /**
+     * 合并刷新：读取请求的过程中产生的响应在读取完成时一起刷新，
+     * 其它时候在当前事件循环的任务执行完之后刷新一次；积累的消息数或者字节数达到阈值时立即刷新
+     */
+    BATCH
+}
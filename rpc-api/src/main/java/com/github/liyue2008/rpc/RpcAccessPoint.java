@@ -18,6 +18,7 @@ import com.github.liyue2008.rpc.spi.ServiceSupport;
 import java.io.Closeable;
 import java.net.URI;
 import java.util.Collection;
+import java.util.concurrent.Executor;
 
 /**
  * RPC框架对外提供的服务接口
@@ -34,6 +35,32 @@ public interface RpcAccessPoint extends Closeable{
      */
     <T> T getRemoteService(URI uri, Class<T> serviceClass);
 
+    /**
+     * 客户端获取远程服务的引用，并指定异步调用的完成线程池。
+     * 返回值是CompletableFuture的方法不阻塞调用线程，响应到达后在completionExecutor中完成返回的CompletableFuture。
+     * @param uri 远程服务地址
+     * @param serviceClass 服务的接口类的Class
+     * @param completionExecutor 异步调用的完成线程池，为null时在网络IO线程上完成，这时回调中不能有阻塞操作
+     * @param <T> 服务接口的类型
+     * @return 远程服务引用
+     */
+    default <T> T getRemoteService(URI uri, Class<T> serviceClass, Executor completionExecutor) {
+        // 不支持指定完成线程池的实现，按照它自己的方式完成异步调用
+        return getRemoteService(uri, serviceClass);
+    }
+
+    /**
+     * 设置客户端配置，需要在获取远程服务引用之前调用
+     * @param clientConfig 客户端配置
+     */
+    void setClientConfig(ClientConfig clientConfig);
+
+    /**
+     * 客户端预先准备远程服务的桩，一般在启动时调用，避免第一次获取远程服务引用时的开销
+     * @param serviceClasses 服务的接口类的Class
+     */
+    default void prepareRemoteServices(Class<?>... serviceClasses) {}
+
     /**
      * 服务端注册服务的实现实例
      * @param service 实现实例
@@ -43,6 +70,23 @@ public interface RpcAccessPoint extends Closeable{
      */
     <T> URI addServiceProvider(T service, Class<T> serviceClass);
 
+    /**
+     * 服务端注册服务的实现实例，并指定执行这个服务的方法的方式
+     * @param service 实现实例
+     * @param serviceClass 服务的接口类的Class
+     * @param executorConfig 执行服务方法的方式
+     * @param <T> 服务接口的类型
+     * @return 服务地址
+     * @throws UnsupportedOperationException 实现不支持指定执行方式，并且executorConfig不是默认配置
+     */
+    default <T> URI addServiceProvider(T service, Class<T> serviceClass, ExecutorConfig executorConfig) {
+        if (executorConfig == ExecutorConfig.defaultConfig()) {
+            return addServiceProvider(service, serviceClass);
+        }
+        throw new UnsupportedOperationException(
+                String.format("Executor mode %s is not supported!", executorConfig.getMode()));
+    }
+
     /**
      * 获取注册中心的引用
      * @param nameServiceUri 注册中心URI
@@ -59,6 +103,12 @@ public interface RpcAccessPoint extends Closeable{
         return null;
     }
 
+    /**
+     * 设置服务端配置，需要在启动服务之前调用
+     * @param serverConfig 服务端配置
+     */
+    void setServerConfig(ServerConfig serverConfig);
+
     /**
      * 服务端启动RPC框架，监听接口，开始提供远程服务。
      * @return 服务实例，用于程序停止的时候安全关闭服务。
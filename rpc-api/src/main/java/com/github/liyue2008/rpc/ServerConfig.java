@@ -0,0 +1,318 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc;
+
+/**
+ * 服务端配置，需要在启动服务之前通过{@link RpcAccessPoint#setServerConfig(ServerConfig)}设置。
+ * @author LiYue
+ * Date: 2019/10/17
+ */
+public class ServerConfig {
+    /**
+     * 监听的地址，也是服务地址URI中的主机名；为null时监听所有网卡，URI中的主机名是localhost
+     */
+    private String host = null;
+    /**
+     * 监听的TCP端口，为0时由系统分配，启动服务之后服务地址URI中才是实际的端口
+     */
+    private int port = 9999;
+    /**
+     * 接受连接的线程数，每个监听的端口只会用到一个线程
+     */
+    private int acceptThreads = 1;
+    /**
+     * 网络IO线程数，为0时使用Netty的默认值：CPU核数的2倍
+     */
+    private int ioThreads = 0;
+    /**
+     * 等待接受的连接队列长度，为0时使用系统的默认值
+     */
+    private int backlog = 0;
+    private boolean tcpNoDelay = true;
+    /**
+     * 连接的接收缓冲区字节数，为0时使用系统的默认值
+     */
+    private int receiveBufferSize = 0;
+    /**
+     * 连接的发送缓冲区字节数，为0时使用系统的默认值
+     */
+    private int sendBufferSize = 0;
+    /**
+     * 连接中等待写出的字节数超过高水位时连接变为不可写，降到低水位以下时恢复可写
+     */
+    private int writeBufferLowWaterMark = 32 * 1024;
+    private int writeBufferHighWaterMark = 64 * 1024;
+    /**
+     * 开启SO_REUSEPORT，每个网络IO线程各自监听同一个端口，由内核把新连接分散到各个线程，
+     * 连接在接受它的线程上处理，不再经过单独的接受连接线程。只支持epoll，不支持时退回到单个监听。
+     */
+    private boolean reusePort = false;
+    /**
+     * 使用进程内共享的网络IO线程组，和同一进程中其它开启了共享的服务端、客户端共用线程。
+     * 共享的线程组同时用来接受连接，线程数由第一个借用它的服务端或客户端决定。
+     */
+    private boolean sharedEventLoop = false;
+    private FlushMode flushMode = FlushMode.BATCH;
+    /**
+     * 合并刷新时，积累了多少个消息立即刷新
+     */
+    private int flushMaxMessages = 64;
+    /**
+     * 合并刷新时，积累了多少字节立即刷新
+     */
+    private int flushMaxBytes = 64 * 1024;
+    /**
+     * 响应payload的压缩算法，只有声明了可以解压的客户端连接才会压缩响应
+     */
+    private Compression compression = Compression.NONE;
+    /**
+     * payload小于这个字节数时不压缩
+     */
+    private int compressionThreshold = 1024;
+    /**
+     * 自适应压缩：观察到的压缩率很差时暂停压缩，之后定期重新尝试
+     */
+    private boolean adaptiveCompression = true;
+    /**
+     * 收到的请求帧最多多少字节，压缩过的payload解压后也不能超过这个长度，超过时关闭连接
+     */
+    private int maxFrameLength = 64 * 1024 * 1024;
+    /**
+     * 双向流中服务端为每个流缓存的客户端消息数量，也是授予客户端的信用窗口
+     */
+    private int streamWindow = 32;
+    /**
+     * 在TCP端口之外同时监听的Unix domain socket文件路径，为null时只监听TCP端口。
+     * 同一台机器上的客户端可以用unix:///path访问这个服务端。
+     */
+    private String domainSocketPath = null;
+    /**
+     * 实验性的共享内存传输使用的文件路径，为null时不启用。
+     * 同一台机器上的客户端可以用shm:///path访问这个服务端，文件建议放在/dev/shm这类内存文件系统中。
+     */
+    private String sharedMemoryPath = null;
+    /**
+     * 共享内存文件中的连接槽位数，也就是最多同时连接的客户端连接数
+     */
+    private int sharedMemoryConnections = 8;
+    /**
+     * 每个方向的环形缓冲区字节数，必须是2的幂
+     */
+    private int sharedMemoryRingSize = 1024 * 1024;
+    /**
+     * 轮询环形缓冲区时一直自旋等待：延迟最低，但是每个连接的每一端都要占满一个CPU核。
+     * 为false时先自旋一小段时间，之后逐步退避到park。
+     */
+    private boolean sharedMemoryBusySpin = false;
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public int getAcceptThreads() {
+        return acceptThreads;
+    }
+
+    public void setAcceptThreads(int acceptThreads) {
+        this.acceptThreads = acceptThreads;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public void setIoThreads(int ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public void setBacklog(int backlog) {
+        this.backlog = backlog;
+    }
+
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay;
+    }
+
+    public void setTcpNoDelay(boolean tcpNoDelay) {
+        this.tcpNoDelay = tcpNoDelay;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    public void setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    public void setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+    }
+
+    public int getWriteBufferLowWaterMark() {
+        return writeBufferLowWaterMark;
+    }
+
+    public void setWriteBufferLowWaterMark(int writeBufferLowWaterMark) {
+        this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+    }
+
+    public int getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    public void setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
+        this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+    }
+
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    public void setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+    }
+
+    public boolean isSharedEventLoop() {
+        return sharedEventLoop;
+    }
+
+    public void setSharedEventLoop(boolean sharedEventLoop) {
+        this.sharedEventLoop = sharedEventLoop;
+    }
+
+    public FlushMode getFlushMode() {
+        return flushMode;
+    }
+
+    public void setFlushMode(FlushMode flushMode) {
+        this.flushMode = flushMode;
+    }
+
+    public int getFlushMaxMessages() {
+        return flushMaxMessages;
+    }
+
+    public void setFlushMaxMessages(int flushMaxMessages) {
+        this.flushMaxMessages = flushMaxMessages;
+    }
+
+    public int getFlushMaxBytes() {
+        return flushMaxBytes;
+    }
+
+    public void setFlushMaxBytes(int flushMaxBytes) {
+        this.flushMaxBytes = flushMaxBytes;
+    }
+
+    public Compression getCompression() {
+        return compression;
+    }
+
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public void setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public boolean isAdaptiveCompression() {
+        return adaptiveCompression;
+    }
+
+    public void setAdaptiveCompression(boolean adaptiveCompression) {
+        this.adaptiveCompression = adaptiveCompression;
+    }
+
+    public int getMaxFrameLength() {
+        return maxFrameLength;
+    }
+
+    public void setMaxFrameLength(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
+    public int getStreamWindow() {
+        return streamWindow;
+    }
+
+    public void setStreamWindow(int streamWindow) {
+        this.streamWindow = streamWindow;
+    }
+
+    public String getDomainSocketPath() {
+        return domainSocketPath;
+    }
+
+    public void setDomainSocketPath(String domainSocketPath) {
+        this.domainSocketPath = domainSocketPath;
+    }
+
+    public String getSharedMemoryPath() {
+        return sharedMemoryPath;
+    }
+
+    public void setSharedMemoryPath(String sharedMemoryPath) {
+        this.sharedMemoryPath = sharedMemoryPath;
+    }
+
+    public int getSharedMemoryConnections() {
+        return sharedMemoryConnections;
+    }
+
+    public void setSharedMemoryConnections(int sharedMemoryConnections) {
+        this.sharedMemoryConnections = sharedMemoryConnections;
+    }
+
+    public int getSharedMemoryRingSize() {
+        return sharedMemoryRingSize;
+    }
+
+    public void setSharedMemoryRingSize(int sharedMemoryRingSize) {
+        this.sharedMemoryRingSize = sharedMemoryRingSize;
+    }
+
+    public boolean isSharedMemoryBusySpin() {
+        return sharedMemoryBusySpin;
+    }
+
+    public void setSharedMemoryBusySpin(boolean sharedMemoryBusySpin) {
+        this.sharedMemoryBusySpin = sharedMemoryBusySpin;
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc;
+
+/**
+ * 远程服务引用的写出状态，通过网络调用的远程服务引用都实现了这个接口。
+ * 到服务提供者的连接上积压了太多还没有写出的请求时变为不可写，这时发出的请求按照
+ * {@link ClientConfig#getBackpressureMode()}等待、立即失败或者在字节数预算内排队。
+ * 调用方可以据此提前降低发送速度，而不是等到请求失败：
+ * <pre>
+ * Writability writability = (Writability) helloService;
+ * if (!writability.isWritable()) { ... }
+ * </pre>
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+public interface Writability {
+    /**
+     * @return 是否至少有一个到服务提供者的连接可以写出请求
+     */
+    boolean isWritable();
+
+    void addWritabilityListener(Listener listener);
+
+    void removeWritabilityListener(Listener listener);
+
+    interface Listener {
+        /**
+         * 写出状态变化时在网络IO线程上调用，不能有阻塞操作
+         * @param writable 变化之后的状态
+         */
+        void onWritabilityChanged(boolean writable);
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.client;
+
+import com.github.liyue2008.rpc.Writability;
+
+/**
+ * 编译时生成的桩的基类，由注解处理器为标注了{@link com.github.liyue2008.rpc.RpcService}的服务接口生成，
+ * 运行时通过SPI加载。桩只把方法的序号和参数交给框架在创建桩时设置的{@link Invoker}，
+ * 只依赖rpc-api，服务接口所在的模块编译时不需要依赖框架的实现。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+public abstract class PrebuiltStub implements Writability {
+    private final Class<?> serviceClass;
+    private Invoker invoker;
+
+    /**
+     * @param serviceClass 桩实现的服务接口
+     */
+    protected PrebuiltStub(Class<?> serviceClass) {
+        this.serviceClass = serviceClass;
+    }
+
+    public Class<?> getServiceClass() {
+        return serviceClass;
+    }
+
+    public Invoker getInvoker() {
+        return invoker;
+    }
+
+    public void setInvoker(Invoker invoker) {
+        this.invoker = invoker;
+    }
+
+    /**
+     * 调用服务接口的第methodIndex个方法
+     * @param methodIndex 方法的序号，服务接口中的方法按方法名和参数类型排序之后的下标
+     * @param arguments 调用参数
+     * @return 返回值
+     */
+    protected Object invoke(int methodIndex, Object [] arguments) {
+        return invoker.invoke(methodIndex, arguments);
+    }
+
+    @Override
+    public boolean isWritable() {
+        return invoker.isWritable();
+    }
+
+    @Override
+    public void addWritabilityListener(Listener listener) {
+        invoker.addWritabilityListener(listener);
+    }
+
+    @Override
+    public void removeWritabilityListener(Listener listener) {
+        invoker.removeWritabilityListener(listener);
+    }
+
+    /**
+     * 框架提供的远程调用的实现
+     */
+    public interface Invoker extends Writability {
+        Object invoke(int methodIndex, Object [] arguments);
+    }
+}
@@ -0,0 +1,37 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.server;
+
+/**
+ * 服务端的分发器，直接调用服务提供者的方法，不需要反射。
+ * 一般由注解处理器在编译时为标注了{@link com.github.liyue2008.rpc.RpcService}的服务接口生成，
+ * 运行时通过SPI加载。只依赖rpc-api，服务接口所在的模块编译时不需要依赖框架的实现。
+ * @author LiYue
+ * Date: 2019/10/10
+ */
+public interface ServiceDispatcher {
+    /**
+     * 分发器对应的服务接口
+     */
+    Class<?> getServiceClass();
+
+    /**
+     * 调用服务提供者的方法
+     * @param serviceProvider 服务提供者
+     * @param methodIndex 方法的序号，服务接口中的方法按方法名和参数类型排序之后的下标
+     * @param arguments 调用参数
+     * @return 方法的返回值，没有返回值时返回null
+     */
+    Object invoke(Object serviceProvider, int methodIndex, Object [] arguments) throws Throwable;
+}
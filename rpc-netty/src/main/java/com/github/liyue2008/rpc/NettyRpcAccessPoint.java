@@ -13,75 +13,260 @@
  */
 package com.github.liyue2008.rpc;
 
+import com.github.liyue2008.rpc.client.ServiceStub;
 import com.github.liyue2008.rpc.client.StubFactory;
+import com.github.liyue2008.rpc.client.stubs.DirectStub;
 import com.github.liyue2008.rpc.server.RpcRequestHandler;
 import com.github.liyue2008.rpc.server.ServiceProviderRegistry;
 import com.github.liyue2008.rpc.spi.ServiceSupport;
+import com.github.liyue2008.rpc.transport.LocalTransport;
+import com.github.liyue2008.rpc.transport.PooledTransport;
 import com.github.liyue2008.rpc.transport.RequestHandlerRegistry;
 import com.github.liyue2008.rpc.transport.Transport;
 import com.github.liyue2008.rpc.transport.TransportClient;
 import com.github.liyue2008.rpc.transport.TransportServer;
+import com.github.liyue2008.rpc.transport.netty.shm.SharedMemoryAddress;
+import com.github.liyue2008.rpc.transport.netty.shm.SharedMemoryClient;
+import io.netty.channel.unix.DomainSocketAddress;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeoutException;
+import java.util.concurrent.Executor;
 
 /**
  * @author LiYue
  * Date: 2019/9/20
  */
 public class NettyRpcAccessPoint implements RpcAccessPoint {
-    private final String host = "localhost";
-    private final int port = 9999;
-    private final URI uri = URI.create("rpc://" + host + ":" + port);
-    private TransportServer server = null;
-    private TransportClient client = ServiceSupport.load(TransportClient.class);
+    private static final String SCHEME = "rpc";
+    private final List<TransportServer> servers = new ArrayList<>();
+    /**
+     * 按照服务地址的scheme选择客户端
+     */
+    private final Map<String/*scheme*/, TransportClient> clients = new HashMap<>();
     private final Map<URI, Transport> clientMap = new ConcurrentHashMap<>();
+    /**
+     * 服务提供者也注册在这个进程中时，每个服务地址使用的传输：指向自己的地址是{@link LocalTransport}，
+     * 其它地址是网络传输。判断地址是不是指向自己需要解析域名，结果缓存在这里，服务停止时清空
+     */
+    private final Map<URI, Transport> localClientMap = new ConcurrentHashMap<>();
+    /**
+     * 注册在这个RpcAccessPoint中的服务提供者，用于进程内调用
+     */
+    private final Map<Class<?>, Object> localProviders = new ConcurrentHashMap<>();
     private final StubFactory stubFactory = ServiceSupport.load(StubFactory.class);
     private final ServiceProviderRegistry serviceProviderRegistry = ServiceSupport.load(ServiceProviderRegistry.class);
+    private volatile ClientConfig clientConfig = new ClientConfig();
+    private ServerConfig serverConfig = new ServerConfig();
+    private volatile boolean serving = false;
+
+    public NettyRpcAccessPoint() {
+        for (TransportClient client : ServiceSupport.loadAll(TransportClient.class)) {
+            for (String scheme : client.supportedSchemes()) {
+                clients.putIfAbsent(scheme, client);
+            }
+        }
+    }
 
     @Override
     public <T> T getRemoteService(URI uri, Class<T> serviceClass) {
+        ClientConfig.LocalCallMode localCallMode = clientConfig.getLocalCallMode();
+        Object localProvider = localProviders.get(serviceClass);
+        // 服务还没有启动时，这个地址上的服务可能属于其它进程
+        if (null != localProvider && localCallMode != ClientConfig.LocalCallMode.REMOTE && serving) {
+            Transport transport = localClientMap.get(uri);
+            if (null == transport) {
+                transport = localClientTransport(uri);
+            }
+            if (transport instanceof LocalTransport && localCallMode == ClientConfig.LocalCallMode.DIRECT) {
+                // 服务提供者就在这个进程中，桩直接调用服务提供者
+                return DirectStub.create(serviceClass, localProvider);
+            }
+            return stubFactory.createStub(transport, serviceClass);
+        }
         Transport transport = clientMap.computeIfAbsent(uri, this::createTransport);
         return stubFactory.createStub(transport, serviceClass);
     }
 
-    private Transport createTransport(URI uri) {
+    @Override
+    public <T> T getRemoteService(URI uri, Class<T> serviceClass, Executor completionExecutor) {
+        T stub = getRemoteService(uri, serviceClass);
+        ServiceStub serviceStub = ServiceStub.of(stub);
+        if (null != serviceStub) {
+            serviceStub.setCompletionExecutor(completionExecutor);
+        }
+        return stub;
+    }
+
+    private Transport localClientTransport(URI uri) {
+        // 不在computeIfAbsent中判断，isLocal需要的锁和stopServers清空缓存的顺序相反
+        Transport remote = clientMap.computeIfAbsent(uri, this::createTransport);
+        Transport transport = isLocal(uri) ?
+                new LocalTransport(RequestHandlerRegistry.getInstance(), remote, clientConfig.getRequestTimeoutMillis()) : remote;
+        Transport previous = localClientMap.putIfAbsent(uri, transport);
+        return null == previous ? transport : previous;
+    }
+
+    /**
+     * uri是否指向这个RpcAccessPoint自己的服务地址，只在服务启动之后调用，
+     * 需要解析域名，调用方负责缓存结果
+     */
+    private boolean isLocal(URI uri) {
+        String domainSocketPath = serverConfig.getDomainSocketPath();
+        if (null != domainSocketPath && "unix".equals(uri.getScheme())) {
+            return domainSocketPath.equals(uri.getPath());
+        }
+        String sharedMemoryPath = serverConfig.getSharedMemoryPath();
+        if (null != sharedMemoryPath && SharedMemoryClient.SCHEME.equals(uri.getScheme())) {
+            return sharedMemoryPath.equals(uri.getPath());
+        }
+        if (!SCHEME.equals(uri.getScheme()) || uri.getPort() != port() || null == uri.getHost()) {
+            return false;
+        }
         try {
-            return client.createTransport(new InetSocketAddress(uri.getHost(), uri.getPort()),30000L);
-        } catch (InterruptedException | TimeoutException e) {
-            throw new RuntimeException(e);
+            InetAddress address = InetAddress.getByName(uri.getHost());
+            return address.isLoopbackAddress() || address.isAnyLocalAddress() || null != NetworkInterface.getByInetAddress(address);
+        } catch (IOException e) {
+            return false;
         }
     }
+
+    @Override
+    public void setClientConfig(ClientConfig clientConfig) {
+        this.clientConfig = clientConfig;
+        for (TransportClient client : clients.values()) {
+            client.setClientConfig(clientConfig);
+        }
+    }
+
+    @Override
+    public void prepareRemoteServices(Class<?>... serviceClasses) {
+        stubFactory.prepareStubs(serviceClasses);
+    }
+
+    /**
+     * 每个服务地址一个连接池，连接在第一次使用时才创建
+     */
+    private Transport createTransport(URI uri) {
+        ClientConfig clientConfig = this.clientConfig;
+        TransportClient client = clients.get(uri.getScheme());
+        if (null == client) {
+            throw new IllegalArgumentException(String.format("Unsupported scheme: %s!", uri));
+        }
+        SocketAddress address = client.addressOf(uri);
+        return new PooledTransport(clientConfig.getConnectionsPerEndpoint(), clientConfig.getConnectionSelector(),
+                () -> client.createTransport(address, 30000L));
+    }
+
     @Override
     public synchronized <T> URI addServiceProvider(T service, Class<T> serviceClass) {
         serviceProviderRegistry.addServiceProvider(serviceClass, service);
-        return uri;
+        localProviders.put(serviceClass, service);
+        return uri();
     }
 
     @Override
-    public synchronized Closeable startServer() throws Exception {
-        if (null == server) {
-            server = ServiceSupport.load(TransportServer.class);
-            server.start(RequestHandlerRegistry.getInstance(), port);
+    public synchronized <T> URI addServiceProvider(T service, Class<T> serviceClass, ExecutorConfig executorConfig) {
+        serviceProviderRegistry.addServiceProvider(serviceClass, service, executorConfig);
+        localProviders.put(serviceClass, service);
+        return uri();
+    }
 
+    /**
+     * 服务地址，主机名是{@link ServerConfig#getHost()}，没有设置时是localhost
+     */
+    private synchronized URI uri() {
+        String host = null == serverConfig.getHost() ? "localhost" : serverConfig.getHost();
+        try {
+            return new URI(SCHEME, null, host, port(), null, null, null);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
         }
-        return () -> {
-            if(null != server) {
-                server.stop();
+    }
+
+    /**
+     * 启动服务之后是实际监听的端口，配置的端口是0时由系统分配
+     */
+    private synchronized int port() {
+        if (!servers.isEmpty()) {
+            SocketAddress address = servers.get(0).localAddress();
+            if (address instanceof InetSocketAddress) {
+                return ((InetSocketAddress) address).getPort();
             }
-        };
+        }
+        return serverConfig.getPort();
     }
 
     @Override
-    public void close() {
-        if(null != server) {
+    public synchronized void setServerConfig(ServerConfig serverConfig) {
+        this.serverConfig = serverConfig;
+    }
+
+    @Override
+    public synchronized Closeable startServer() throws Exception {
+        if (servers.isEmpty()) {
+            try {
+                String host = serverConfig.getHost();
+                startServer(SCHEME, null == host ?
+                        new InetSocketAddress(serverConfig.getPort()) : new InetSocketAddress(host, serverConfig.getPort()));
+                if (null != serverConfig.getDomainSocketPath()) {
+                    // 同时监听Unix domain socket，同一台机器上的客户端不经过TCP协议栈
+                    startServer("unix", new DomainSocketAddress(serverConfig.getDomainSocketPath()));
+                }
+                if (null != serverConfig.getSharedMemoryPath()) {
+                    // 实验性的共享内存传输
+                    startServer(SharedMemoryClient.SCHEME, new SharedMemoryAddress(serverConfig.getSharedMemoryPath()));
+                }
+                serving = true;
+            } catch (Exception e) {
+                stopServers();
+                throw e;
+            }
+        }
+        return this::stopServers;
+    }
+
+    private void startServer(String scheme, SocketAddress address) throws Exception {
+        for (TransportServer server : ServiceSupport.loadAll(TransportServer.class)) {
+            if (server.supportedSchemes().contains(scheme)) {
+                server.setServerConfig(serverConfig);
+                server.start(RequestHandlerRegistry.getInstance(), address);
+                servers.add(server);
+                return;
+            }
+        }
+        throw new IllegalArgumentException(String.format("Unsupported scheme: %s!", scheme));
+    }
+
+    private synchronized void stopServers() {
+        serving = false;
+        localClientMap.clear();
+        for (TransportServer server : servers) {
             server.stop();
         }
-        client.close();
+        servers.clear();
+    }
+
+    @Override
+    public void close() {
+        stopServers();
+        for (TransportClient client : new HashSet<>(clients.values())) {
+            client.close();
+        }
+        // localClientMap已经在stopServers中清空
+        clientMap.clear();
     }
 }
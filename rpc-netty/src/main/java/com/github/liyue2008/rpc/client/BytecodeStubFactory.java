@@ -0,0 +1,81 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.client;
+
+import com.github.liyue2008.rpc.client.stubs.AbstractStub;
+import com.github.liyue2008.rpc.transport.Transport;
+
+/**
+ * 直接生成字节码的桩工厂，不需要在运行时编译源代码。
+ * 支持服务接口的所有方法，参数的个数和类型不限，只要参数和返回值的类型有对应的序列化实现。
+ * 生成的桩用{@link ClassValue}挂在服务接口上缓存，不会阻止服务接口的ClassLoader被卸载。
+ * @author LiYue
+ * Date: 2019/10/8
+ */
+public class BytecodeStubFactory implements StubFactory {
+    private final static String STUB_PACKAGE = "com.github.liyue2008.rpc.client.stubs.";
+    private final ClassValue<Class<?>> stubClasses = new ClassValue<Class<?>>() {
+        @Override
+        protected Class<?> computeValue(Class<?> serviceClass) {
+            return defineStubClass(serviceClass);
+        }
+    };
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T createStub(Transport transport, Class<T> serviceClass) {
+        try {
+            ServiceStub stubInstance = (ServiceStub) getStubClass(serviceClass).newInstance();
+            stubInstance.setTransport(transport);
+            return (T) stubInstance;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    @Override
+    public void prepareStubs(Class<?>... serviceClasses) {
+        for (Class<?> serviceClass : serviceClasses) {
+            getStubClass(serviceClass);
+        }
+    }
+
+    private Class<?> getStubClass(Class<?> serviceClass) {
+        return stubClasses.get(serviceClass);
+    }
+
+    private Class<?> defineStubClass(Class<?> serviceClass) {
+        String stubClassName = STUB_PACKAGE + serviceClass.getName().replace('.', '_').replace('$', '_') + "Stub";
+        byte [] classBytes = StubClassGenerator.generate(stubClassName, serviceClass);
+        return new StubClassLoader(serviceClass.getClassLoader()).defineStubClass(stubClassName, classBytes);
+    }
+
+    /**
+     * 桩需要同时看到服务接口和框架中的类，先从服务接口的ClassLoader加载，找不到再从框架的ClassLoader加载。
+     */
+    private static class StubClassLoader extends ClassLoader {
+        StubClassLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> defineStubClass(String name, byte [] classBytes) {
+            return defineClass(name, classBytes, 0, classBytes.length);
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            return AbstractStub.class.getClassLoader().loadClass(name);
+        }
+    }
+}
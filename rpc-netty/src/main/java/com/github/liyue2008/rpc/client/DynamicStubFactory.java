@@ -20,6 +20,9 @@ import com.itranswarp.compiler.JavaStringCompiler;
 import java.util.Map;
 
 /**
+ * 桩的类只在第一次使用时编译加载一次，用{@link ClassValue}挂在服务接口上缓存，
+ * 之后每次创建桩只需要实例化这个类。缓存不会强引用服务接口和它的ClassLoader，
+ * 服务接口被卸载时对应的桩也一起被回收。
  * @author LiYue
  * Date: 2019/9/27
  */
@@ -42,10 +45,41 @@ public class DynamicStubFactory implements StubFactory{
             "        );\n" +
             "    }\n" +
             "}";
+    private final ClassValue<Class<?>> stubClasses = new ClassValue<Class<?>>() {
+        @Override
+        protected Class<?> computeValue(Class<?> serviceClass) {
+            return compileStubClass(serviceClass);
+        }
+    };
 
     @Override
     @SuppressWarnings("unchecked")
     public <T> T createStub(Transport transport, Class<T> serviceClass) {
+        try {
+            Class<?> clazz = getStubClass(serviceClass);
+
+            // 把Transport赋值给桩
+            ServiceStub stubInstance = (ServiceStub) clazz.newInstance();
+            stubInstance.setTransport(transport);
+            // 返回这个桩
+            return (T) stubInstance;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    @Override
+    public void prepareStubs(Class<?>... serviceClasses) {
+        for (Class<?> serviceClass : serviceClasses) {
+            getStubClass(serviceClass);
+        }
+    }
+
+    private Class<?> getStubClass(Class<?> serviceClass) {
+        return stubClasses.get(serviceClass);
+    }
+
+    private Class<?> compileStubClass(Class<?> serviceClass) {
         try {
             // 填充模板
             String stubSimpleName = serviceClass.getSimpleName() + "Stub";
@@ -58,13 +92,7 @@ public class DynamicStubFactory implements StubFactory{
             JavaStringCompiler compiler = new JavaStringCompiler();
             Map<String, byte[]> results = compiler.compile(stubSimpleName + ".java", source);
             // 加载编译好的类
-            Class<?> clazz = compiler.loadClass(stubFullName, results);
-
-            // 把Transport赋值给桩
-            ServiceStub stubInstance = (ServiceStub) clazz.newInstance();
-            stubInstance.setTransport(transport);
-            // 返回这个桩
-            return (T) stubInstance;
+            return compiler.loadClass(stubFullName, results);
         } catch (Throwable t) {
             throw new RuntimeException(t);
         }
@@ -0,0 +1,136 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.client;
+
+import com.github.liyue2008.rpc.client.stubs.MethodIdTable;
+import com.github.liyue2008.rpc.client.stubs.RpcMethod;
+import com.github.liyue2008.rpc.serialize.SerializeSupport;
+import com.github.liyue2008.rpc.transport.Transport;
+import com.github.liyue2008.rpc.transport.command.Code;
+import com.github.liyue2008.rpc.transport.command.Command;
+import com.github.liyue2008.rpc.transport.command.Header;
+import com.github.liyue2008.rpc.transport.command.ResponseHeader;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 方法ID的协商和缓存。
+ * 每个物理连接上（见{@link Transport#connection()}），第一次调用某个服务时异步向服务端查询这个服务的方法ID，
+ * 查询完成之前仍然用方法名调用，之后的请求中只携带方法ID和方法签名。连接断开重建之后是一个新的连接，重新协商。
+ * 连接上还没有收到表明服务端支持{@link Header#VERSION_2}的响应时不查询，不校验方法签名的旧版本服务端上不使用方法ID。
+ * 查询失败时（比如超时）继续用方法名调用，等待一段时间之后再重新查询，连续失败时等待的时间加倍。
+ * @author LiYue
+ * Date: 2019/10/14
+ */
+public class MethodIdSupport {
+    private final static long MIN_RETRY_MILLIS = 1000L;
+    private final static long MAX_RETRY_MILLIS = 60000L;
+    private final static Map<Transport, Map<String /*服务名*/, Negotiation>> methodIdsMap =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * 一个服务在一个连接上的协商状态
+     */
+    private static class Negotiation {
+        private CompletableFuture<int []> future;
+        private int failures = 0;
+        private long retryAtMillis = 0L;
+    }
+
+    /**
+     * 查询服务在这个连接上的方法ID
+     * @param transport 物理连接
+     * @param methods 服务的所有方法
+     * @return 按照方法序号排列的方法ID，-1表示服务端没有这个方法；还没有协商好时返回null
+     */
+    public static int [] get(Transport transport, RpcMethod [] methods) {
+        if (methods.length == 0) {
+            return new int[0];
+        }
+        if (transport.peerVersion() < Header.VERSION_2) {
+            // 还不知道服务端是不是新版本，旧版本的服务端不认识方法ID查询请求，会直接关闭连接
+            return null;
+        }
+        String serviceName = methods[0].getServiceName();
+        CompletableFuture<int []> future;
+        synchronized (methodIdsMap) {
+            Negotiation negotiation = methodIdsMap.computeIfAbsent(transport, k -> new HashMap<>())
+                    .computeIfAbsent(serviceName, k -> new Negotiation());
+            if (null == negotiation.future ||
+                    (negotiation.future.isCompletedExceptionally() && System.currentTimeMillis() >= negotiation.retryAtMillis)) {
+                negotiation.future = query(transport, methods);
+                negotiation.future.whenComplete((methodIds, throwable) -> {
+                    synchronized (methodIdsMap) {
+                        if (null == throwable) {
+                            negotiation.failures = 0;
+                        } else {
+                            negotiation.failures++;
+                            negotiation.retryAtMillis = System.currentTimeMillis() + retryDelayMillis(negotiation.failures);
+                        }
+                    }
+                });
+            }
+            future = negotiation.future;
+        }
+        return future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+    }
+
+    /**
+     * 服务端不认识方法ID时（比如服务端重启了），丢弃缓存的方法ID，下次调用时重新协商
+     */
+    public static void invalidate(Transport transport, String serviceName) {
+        synchronized (methodIdsMap) {
+            Map<String, Negotiation> methodIds = methodIdsMap.get(transport);
+            if (null != methodIds) {
+                methodIds.remove(serviceName);
+            }
+        }
+    }
+
+    private static long retryDelayMillis(int failures) {
+        return Math.min(MAX_RETRY_MILLIS, MIN_RETRY_MILLIS << Math.min(failures - 1, 16));
+    }
+
+    private static CompletableFuture<int []> query(Transport transport, RpcMethod [] methods) {
+        Header header = new Header(ServiceTypes.TYPE_METHOD_ID_REQUEST, Header.CURRENT_VERSION);
+        Command request = new Command(header, SerializeSupport.serialize(methods[0].getServiceName()));
+        return transport.send(request).thenApply(response -> {
+            try {
+                ResponseHeader responseHeader = (ResponseHeader) response.getHeader();
+                if (responseHeader.getCode() != Code.SUCCESS.getCode()) {
+                    throw new RpcException(responseHeader.getCode(), responseHeader.getError());
+                }
+                MethodIdTable table = SerializeSupport.parse(response.getPayload());
+                int [] methodIds = new int[methods.length];
+                if (null == table || !table.isSignatureRequired()) {
+                    // 服务端不校验签名，方法ID失效时会调用到别的方法，只用方法名调用
+                    Arrays.fill(methodIds, -1);
+                    return methodIds;
+                }
+                for (RpcMethod method : methods) {
+                    Integer methodId = table.get(method.getName());
+                    methodIds[method.getIndex()] = null == methodId ? -1 : methodId;
+                }
+                return methodIds;
+            } finally {
+                response.release();
+            }
+        });
+    }
+}
@@ -0,0 +1,79 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.client;
+
+import com.github.liyue2008.rpc.client.stubs.PrebuiltStubInvoker;
+import com.github.liyue2008.rpc.spi.ServiceSupport;
+import com.github.liyue2008.rpc.transport.Transport;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 优先使用编译时生成、通过SPI注册的桩，没有预先生成的桩时，
+ * 交给SPI中注册的下一个{@link StubFactory}在运行时生成。
+ * @author LiYue
+ * Date: 2019/10/10
+ */
+public class PrebuiltStubFactory implements StubFactory {
+    private Map<Class<?>, Class<?>> stubClasses = null;
+    private StubFactory fallbackStubFactory = null;
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T createStub(Transport transport, Class<T> serviceClass) {
+        Class<?> stubClass = getStubClasses().get(serviceClass);
+        if (null == stubClass) {
+            return getFallbackStubFactory().createStub(transport, serviceClass);
+        }
+        try {
+            PrebuiltStub stubInstance = (PrebuiltStub) stubClass.newInstance();
+            PrebuiltStubInvoker invoker = new PrebuiltStubInvoker(serviceClass);
+            invoker.setTransport(transport);
+            stubInstance.setInvoker(invoker);
+            return (T) stubInstance;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    @Override
+    public void prepareStubs(Class<?>... serviceClasses) {
+        for (Class<?> serviceClass : serviceClasses) {
+            if (!getStubClasses().containsKey(serviceClass)) {
+                getFallbackStubFactory().prepareStubs(serviceClass);
+            }
+        }
+    }
+
+    private synchronized Map<Class<?>, Class<?>> getStubClasses() {
+        if (null == stubClasses) {
+            Map<Class<?>, Class<?>> map = new HashMap<>();
+            for (PrebuiltStub stub : ServiceSupport.loadAll(PrebuiltStub.class)) {
+                map.put(stub.getServiceClass(), stub.getClass());
+            }
+            stubClasses = map;
+        }
+        return stubClasses;
+    }
+
+    private synchronized StubFactory getFallbackStubFactory() {
+        if (null == fallbackStubFactory) {
+            fallbackStubFactory = ServiceSupport.loadAll(StubFactory.class).stream()
+                    .filter(stubFactory -> !(stubFactory instanceof PrebuiltStubFactory))
+                    .findFirst().orElseThrow(() -> new IllegalStateException("No stub factory to fall back to!"));
+        }
+        return fallbackStubFactory;
+    }
+}
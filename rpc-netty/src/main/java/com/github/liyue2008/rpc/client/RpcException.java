@@ -13,15 +13,23 @@
  */
 package com.github.liyue2008.rpc.client;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
 /**
+ * 服务端返回的错误响应
  * @author LiYue
- * Date: 2019/9/23
+ * Date: 2019/10/14
  */
-public class RequestIdSupport {
-    private final static AtomicInteger nextRequestId = new AtomicInteger(0);
-    public static int next() {
-        return nextRequestId.getAndIncrement();
+public class RpcException extends RuntimeException {
+    private final int code;
+
+    public RpcException(int code, String message) {
+        super(message);
+        this.code = code;
+    }
+
+    /**
+     * 错误码，见{@link com.github.liyue2008.rpc.transport.command.Code}
+     */
+    public int getCode() {
+        return code;
     }
 }
@@ -15,10 +15,28 @@ package com.github.liyue2008.rpc.client;
 
 import com.github.liyue2008.rpc.transport.Transport;
 
+import java.util.concurrent.Executor;
+
 /**
  * @author LiYue
  * Date: 2019/9/27
  */
 public interface ServiceStub {
     void setTransport(Transport transport);
+
+    /**
+     * 设置返回值是CompletableFuture的方法在哪个线程池中完成
+     * @param completionExecutor 为null时在网络IO线程上完成，这时回调中不能有阻塞操作
+     */
+    default void setCompletionExecutor(Executor completionExecutor) {}
+
+    /**
+     * 找到远程服务引用背后的桩，编译时生成的{@link PrebuiltStub}把调用委托给运行时创建的桩
+     * @param remoteService 远程服务引用
+     * @return 不是桩时返回null
+     */
+    static ServiceStub of(Object remoteService) {
+        Object stub = remoteService instanceof PrebuiltStub ? ((PrebuiltStub) remoteService).getInvoker() : remoteService;
+        return stub instanceof ServiceStub ? (ServiceStub) stub : null;
+    }
 }
@@ -19,4 +19,5 @@ package com.github.liyue2008.rpc.client;
  */
 public class ServiceTypes {
     public final static int TYPE_RPC_REQUEST = 0;
+    public final static int TYPE_METHOD_ID_REQUEST = 1;
 }
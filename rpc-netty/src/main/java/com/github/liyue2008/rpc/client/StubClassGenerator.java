@@ -0,0 +1,335 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.client;
+
+import com.github.liyue2008.rpc.client.stubs.AbstractStub;
+import com.github.liyue2008.rpc.client.stubs.RpcMethod;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 直接生成桩的字节码，不依赖Java编译器。生成的桩相当于：
+ * <pre>
+ * public final class XxxStub extends AbstractStub implements Xxx {
+ *     public XxxStub() {
+ *         super(Xxx.class);
+ *     }
+ *     public String hello(String name) {
+ *         return (String) invoke(0, new Object[] {name});
+ *     }
+ *     ...
+ * }
+ * </pre>
+ * 生成的方法中没有分支，所以不需要StackMapTable。
+ * @author LiYue
+ * Date: 2019/10/8
+ */
+class StubClassGenerator {
+    private final static int CLASS_FILE_MAJOR_VERSION = 52;
+    private final static int ACC_PUBLIC = 0x0001;
+    private final static int ACC_FINAL = 0x0010;
+    private final static int ACC_SUPER = 0x0020;
+
+    private final static int CONSTANT_UTF8 = 1;
+    private final static int CONSTANT_CLASS = 7;
+    private final static int CONSTANT_METHOD_REF = 10;
+    private final static int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final static int ALOAD_0 = 0x2a;
+    private final static int ILOAD = 0x15;
+    private final static int LLOAD = 0x16;
+    private final static int FLOAD = 0x17;
+    private final static int DLOAD = 0x18;
+    private final static int ALOAD = 0x19;
+    private final static int SIPUSH = 0x11;
+    private final static int WIDE = 0xc4;
+    private final static int LDC_W = 0x13;
+    private final static int DUP = 0x59;
+    private final static int POP = 0x57;
+    private final static int AASTORE = 0x53;
+    private final static int ANEWARRAY = 0xbd;
+    private final static int CHECKCAST = 0xc0;
+    private final static int INVOKEVIRTUAL = 0xb6;
+    private final static int INVOKESPECIAL = 0xb7;
+    private final static int INVOKESTATIC = 0xb8;
+    private final static int IRETURN = 0xac;
+    private final static int LRETURN = 0xad;
+    private final static int FRETURN = 0xae;
+    private final static int DRETURN = 0xaf;
+    private final static int ARETURN = 0xb0;
+    private final static int RETURN = 0xb1;
+
+    private final static String OBJECT = "java/lang/Object";
+    private final static String ABSTRACT_STUB = internalName(AbstractStub.class);
+    private final static String INVOKE_DESCRIPTOR = "(I[Ljava/lang/Object;)Ljava/lang/Object;";
+
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+    private final Map<String, Integer> constants = new HashMap<>();
+    private int constantCount = 1;
+
+    /**
+     * 生成桩的class文件
+     * @param stubClassName 桩的类名
+     * @param serviceClass 服务接口
+     * @return class文件的内容
+     */
+    static byte [] generate(String stubClassName, Class<?> serviceClass) {
+        try {
+            return new StubClassGenerator().generateClass(stubClassName.replace('.', '/'), serviceClass);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private byte [] generateClass(String stubClassName, Class<?> serviceClass) throws IOException {
+        int thisClass = classConstant(stubClassName);
+        int superClass = classConstant(ABSTRACT_STUB);
+        int serviceInterface = classConstant(internalName(serviceClass));
+
+        List<byte []> methods = new ArrayList<>();
+        methods.add(constructor(serviceInterface));
+        for (RpcMethod rpcMethod : RpcMethod.methodsOf(serviceClass)) {
+            methods.add(stubMethod(rpcMethod));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(CLASS_FILE_MAJOR_VERSION);
+        out.writeShort(constantCount);
+        constantPool.flush();
+        constantPoolBytes.writeTo(out);
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(serviceInterface);
+        // fields
+        out.writeShort(0);
+        out.writeShort(methods.size());
+        for (byte [] method : methods) {
+            out.write(method);
+        }
+        // attributes
+        out.writeShort(0);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private byte [] constructor(int serviceInterface) throws IOException {
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(code);
+        out.writeByte(ALOAD_0);
+        out.writeByte(LDC_W);
+        out.writeShort(serviceInterface);
+        out.writeByte(INVOKESPECIAL);
+        out.writeShort(methodConstant(ABSTRACT_STUB, "<init>", "(Ljava/lang/Class;)V"));
+        out.writeByte(RETURN);
+        out.flush();
+        return method("<init>", "()V", 2, 1, code.toByteArray());
+    }
+
+    private byte [] stubMethod(RpcMethod rpcMethod) throws IOException {
+        Method method = rpcMethod.getMethod();
+        Class<?> [] parameterTypes = method.getParameterTypes();
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(code);
+
+        // this.invoke(index, new Object[] {args...})
+        out.writeByte(ALOAD_0);
+        out.writeByte(SIPUSH);
+        out.writeShort(rpcMethod.getIndex());
+        out.writeByte(SIPUSH);
+        out.writeShort(parameterTypes.length);
+        out.writeByte(ANEWARRAY);
+        out.writeShort(classConstant(OBJECT));
+        int slot = 1;
+        for (int i = 0; i < parameterTypes.length; i++) {
+            Class<?> parameterType = parameterTypes[i];
+            out.writeByte(DUP);
+            out.writeByte(SIPUSH);
+            out.writeShort(i);
+            out.writeByte(WIDE);
+            out.writeByte(loadInstruction(parameterType));
+            out.writeShort(slot);
+            if (parameterType.isPrimitive()) {
+                Class<?> boxedType = boxedType(parameterType);
+                out.writeByte(INVOKESTATIC);
+                out.writeShort(methodConstant(internalName(boxedType), "valueOf",
+                        "(" + descriptor(parameterType) + ")" + descriptor(boxedType)));
+            }
+            out.writeByte(AASTORE);
+            slot += slotSize(parameterType);
+        }
+        out.writeByte(INVOKEVIRTUAL);
+        out.writeShort(methodConstant(ABSTRACT_STUB, "invoke", INVOKE_DESCRIPTOR));
+
+        // 处理返回值
+        Class<?> returnType = method.getReturnType();
+        if (returnType == void.class) {
+            out.writeByte(POP);
+            out.writeByte(RETURN);
+        } else if (returnType.isPrimitive()) {
+            Class<?> boxedType = boxedType(returnType);
+            out.writeByte(CHECKCAST);
+            out.writeShort(classConstant(internalName(boxedType)));
+            out.writeByte(INVOKEVIRTUAL);
+            out.writeShort(methodConstant(internalName(boxedType), returnType.getName() + "Value",
+                    "()" + descriptor(returnType)));
+            out.writeByte(returnInstruction(returnType));
+        } else {
+            out.writeByte(CHECKCAST);
+            out.writeShort(classConstant(internalName(returnType)));
+            out.writeByte(ARETURN);
+        }
+        out.flush();
+        // 栈的最大深度：this, index, array, array, index, 一个long/double参数占两个位置
+        return method(method.getName(), methodDescriptor(method), 7, slot, code.toByteArray());
+    }
+
+    private byte [] method(String name, String descriptor, int maxStack, int maxLocals, byte [] code) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(utf8Constant(name));
+        out.writeShort(utf8Constant(descriptor));
+        // 只有一个Code属性
+        out.writeShort(1);
+        out.writeShort(utf8Constant("Code"));
+        out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        // exception table
+        out.writeShort(0);
+        // attributes
+        out.writeShort(0);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private int utf8Constant(String value) throws IOException {
+        Integer index = constants.get("U:" + value);
+        if (null == index) {
+            constantPool.writeByte(CONSTANT_UTF8);
+            constantPool.writeUTF(value);
+            index = addConstant("U:" + value);
+        }
+        return index;
+    }
+
+    private int classConstant(String internalName) throws IOException {
+        Integer index = constants.get("C:" + internalName);
+        if (null == index) {
+            int name = utf8Constant(internalName);
+            constantPool.writeByte(CONSTANT_CLASS);
+            constantPool.writeShort(name);
+            index = addConstant("C:" + internalName);
+        }
+        return index;
+    }
+
+    private int methodConstant(String owner, String name, String descriptor) throws IOException {
+        String key = "M:" + owner + "." + name + descriptor;
+        Integer index = constants.get(key);
+        if (null == index) {
+            int ownerClass = classConstant(owner);
+            int nameIndex = utf8Constant(name);
+            int descriptorIndex = utf8Constant(descriptor);
+            constantPool.writeByte(CONSTANT_NAME_AND_TYPE);
+            constantPool.writeShort(nameIndex);
+            constantPool.writeShort(descriptorIndex);
+            int nameAndType = addConstant("N:" + name + descriptor);
+            constantPool.writeByte(CONSTANT_METHOD_REF);
+            constantPool.writeShort(ownerClass);
+            constantPool.writeShort(nameAndType);
+            index = addConstant(key);
+        }
+        return index;
+    }
+
+    private int addConstant(String key) {
+        int index = constantCount++;
+        constants.put(key, index);
+        return index;
+    }
+
+    private static String internalName(Class<?> clazz) {
+        return clazz.isArray() ? descriptor(clazz) : clazz.getName().replace('.', '/');
+    }
+
+    private static String methodDescriptor(Method method) {
+        StringBuilder sb = new StringBuilder("(");
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            sb.append(descriptor(parameterType));
+        }
+        return sb.append(')').append(descriptor(method.getReturnType())).toString();
+    }
+
+    private static String descriptor(Class<?> clazz) {
+        if (clazz.isArray()) {
+            return clazz.getName().replace('.', '/');
+        }
+        if (clazz == void.class) return "V";
+        if (clazz == boolean.class) return "Z";
+        if (clazz == byte.class) return "B";
+        if (clazz == char.class) return "C";
+        if (clazz == short.class) return "S";
+        if (clazz == int.class) return "I";
+        if (clazz == long.class) return "J";
+        if (clazz == float.class) return "F";
+        if (clazz == double.class) return "D";
+        return "L" + internalName(clazz) + ";";
+    }
+
+    private static Class<?> boxedType(Class<?> primitiveType) {
+        if (primitiveType == boolean.class) return Boolean.class;
+        if (primitiveType == byte.class) return Byte.class;
+        if (primitiveType == char.class) return Character.class;
+        if (primitiveType == short.class) return Short.class;
+        if (primitiveType == int.class) return Integer.class;
+        if (primitiveType == long.class) return Long.class;
+        if (primitiveType == float.class) return Float.class;
+        return Double.class;
+    }
+
+    private static int loadInstruction(Class<?> type) {
+        if (!type.isPrimitive()) return ALOAD;
+        if (type == long.class) return LLOAD;
+        if (type == float.class) return FLOAD;
+        if (type == double.class) return DLOAD;
+        return ILOAD;
+    }
+
+    private static int returnInstruction(Class<?> type) {
+        if (type == long.class) return LRETURN;
+        if (type == float.class) return FRETURN;
+        if (type == double.class) return DRETURN;
+        return IRETURN;
+    }
+
+    private static int slotSize(Class<?> type) {
+        return type == long.class || type == double.class ? 2 : 1;
+    }
+}
@@ -21,4 +21,10 @@ import com.github.liyue2008.rpc.transport.Transport;
  */
 public interface StubFactory {
     <T> T createStub(Transport transport, Class<T> serviceClass);
+
+    /**
+     * 预先生成桩的类，避免在第一次调用时才生成
+     * @param serviceClasses 服务接口的Class
+     */
+    default void prepareStubs(Class<?>... serviceClasses) {}
 }
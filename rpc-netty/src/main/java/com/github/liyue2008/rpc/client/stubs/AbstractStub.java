@@ -13,47 +13,385 @@
  */
 package com.github.liyue2008.rpc.client.stubs;
 
-import com.github.liyue2008.rpc.client.RequestIdSupport;
+import com.github.liyue2008.rpc.Writability;
+import com.github.liyue2008.rpc.client.MethodIdSupport;
+import com.github.liyue2008.rpc.client.RpcException;
 import com.github.liyue2008.rpc.client.ServiceStub;
 import com.github.liyue2008.rpc.client.ServiceTypes;
 import com.github.liyue2008.rpc.serialize.SerializeSupport;
+import com.github.liyue2008.rpc.transport.ClientStream;
 import com.github.liyue2008.rpc.transport.Transport;
 import com.github.liyue2008.rpc.transport.command.Code;
 import com.github.liyue2008.rpc.transport.command.Command;
 import com.github.liyue2008.rpc.transport.command.Header;
 import com.github.liyue2008.rpc.transport.command.ResponseHeader;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author LiYue
  * Date: 2019/9/27
  */
-public abstract class AbstractStub implements ServiceStub {
+public abstract class AbstractStub implements ServiceStub, Writability {
+    private static final Logger logger = LoggerFactory.getLogger(AbstractStub.class);
+    private final RpcMethod [] methods;
+    private Executor completionExecutor = ForkJoinPool.commonPool();
     protected Transport transport;
 
+    protected AbstractStub() {
+        this.methods = null;
+    }
+
+    /**
+     * @param serviceClass 桩实现的服务接口，用于{@link #invoke(int, Object[])}
+     */
+    protected AbstractStub(Class<?> serviceClass) {
+        this.methods = RpcMethod.methodsOf(serviceClass);
+    }
+
+    /**
+     * 调用服务接口的第methodIndex个方法，方法的顺序见{@link RpcMethod#methodsOf(Class)}。
+     * 返回值是CompletableFuture的方法不等待响应，直接返回CompletableFuture。
+     * @param methodIndex 方法的序号
+     * @param arguments 调用参数
+     * @return 返回值
+     */
+    protected Object invoke(int methodIndex, Object [] arguments) {
+        if (methods[methodIndex].isOneWay()) {
+            invokeOneWay(methodIndex, arguments);
+            return null;
+        }
+        if (methods[methodIndex].isBidiStream()) {
+            return invokeBidiStream(methods[methodIndex], (Iterator<?>) arguments[0]);
+        }
+        if (methods[methodIndex].isStream()) {
+            return invokeStream(methods[methodIndex], arguments);
+        }
+        if (methods[methodIndex].isAsync()) {
+            return invokeAsync(methodIndex, arguments);
+        }
+        try {
+            return invokeAsync(syncConnection(), methodIndex, arguments, null).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RpcException) {
+                throw (RpcException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException | TimeoutException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 选择同步调用使用的连接。响应由连接的IO线程处理，在这个线程上同步等待只能等到超时，直接失败。
+     */
+    private Transport syncConnection() throws InterruptedException, TimeoutException {
+        Transport connection = transport.connection();
+        if (connection.inEventLoop()) {
+            throw new IllegalStateException(
+                    "Synchronous call on the I/O thread of its own connection, use an asynchronous method or a service executor instead!");
+        }
+        return connection;
+    }
+
+    private CompletableFuture<Object> invokeAsync(int methodIndex, Object [] arguments) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        try {
+            invokeAsync(transport.connection(), methodIndex, arguments, completionExecutor).whenComplete((result, throwable) -> {
+                if (null == throwable) {
+                    future.complete(result);
+                } else {
+                    future.completeExceptionally(unwrap(throwable));
+                }
+            });
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+        return future;
+    }
+
+    /**
+     * 发送请求，在响应到达时反序列化返回值，不阻塞调用线程。
+     * 使用连接上协商好的方法ID，请求也在这个连接上发送。
+     * @param connection 选定的物理连接，见{@link Transport#connection()}
+     * @param completionExecutor 返回的CompletableFuture在这个线程池中完成，为null时在网络IO线程上完成
+     */
+    private CompletableFuture<Object> invokeAsync(Transport connection, int methodIndex, Object [] arguments, Executor completionExecutor) {
+        RpcMethod method = methods[methodIndex];
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        int [] methodIds = MethodIdSupport.get(connection, methods);
+        if (null != methodIds && methodIds[methodIndex] >= 0) {
+            sendRequestAsync(connection, new RpcRequest(methodIds[methodIndex], method.getSignature(), arguments)).whenComplete((response, t) -> {
+                Throwable throwable = unwrap(t);
+                if (null == throwable) {
+                    completeWithResult(future, response);
+                } else if (throwable instanceof RpcException && ((RpcException) throwable).getCode() == Code.UNKNOWN_METHOD_ID.getCode()) {
+                    // 服务端不认识这个方法ID，或者方法ID已经指向别的方法，重新协商，这次用方法名调用
+                    MethodIdSupport.invalidate(connection, method.getServiceName());
+                    sendRequestAsync(connection, new RpcRequest(method.getServiceName(), method.getName(), arguments))
+                            .whenComplete((retryResponse, retryThrowable) -> {
+                                if (null == retryThrowable) {
+                                    completeWithResult(future, retryResponse);
+                                } else {
+                                    future.completeExceptionally(retryThrowable);
+                                }
+                            });
+                } else {
+                    future.completeExceptionally(throwable);
+                }
+            });
+        } else {
+            sendRequestAsync(connection, new RpcRequest(method.getServiceName(), method.getName(), arguments))
+                    .whenComplete((response, throwable) -> {
+                        if (null == throwable) {
+                            completeWithResult(future, response);
+                        } else {
+                            future.completeExceptionally(unwrap(throwable));
+                        }
+                    });
+        }
+        return null == completionExecutor ? future : future.whenCompleteAsync((result, throwable) -> {}, completionExecutor);
+    }
+
+    /**
+     * 发送单向请求，请求交给网络层之后立即返回。
+     * 服务端不回复，所以也无法发现方法ID失效，只使用已经协商好的方法ID。
+     * 服务端不支持{@link Header#VERSION_2}，或者还不知道服务端的版本时，按普通请求发送，丢弃响应。
+     */
+    private void invokeOneWay(int methodIndex, Object [] arguments) {
+        RpcMethod method = methods[methodIndex];
+        try {
+            Transport connection = transport.connection();
+            if (connection.peerVersion() < Header.VERSION_2) {
+                sendRequestAsync(connection, new RpcRequest(method.getServiceName(), method.getName(), arguments))
+                        .whenComplete((response, throwable) -> {
+                            if (null == throwable) {
+                                response.release();
+                            } else {
+                                logger.warn("One-way request {}#{} failed: {}", method.getServiceName(), method.getName(), unwrap(throwable).toString());
+                            }
+                        });
+                return;
+            }
+            int [] methodIds = MethodIdSupport.get(connection, methods);
+            RpcRequest request = null != methodIds && methodIds[methodIndex] >= 0 ?
+                    new RpcRequest(methodIds[methodIndex], method.getSignature(), arguments) :
+                    new RpcRequest(method.getServiceName(), method.getName(), arguments);
+            connection.sendOneWay(requestCommand(request));
+        } catch (InterruptedException | TimeoutException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 发送流式请求。请求只发送一次，不使用方法ID，避免在流的中途重新协商。
+     */
+    private StreamIterator<Object> invokeStream(RpcMethod method, Object [] arguments) {
+        StreamIterator<Object> iterator = new StreamIterator<>();
+        try {
+            Transport connection = streamConnection(method);
+            Command request = requestCommand(new RpcRequest(method.getServiceName(), method.getName(), arguments));
+            iterator.setStream(connection.sendStream(request, iterator));
+        } catch (InterruptedException | TimeoutException e) {
+            throw new RuntimeException(e);
+        }
+        return iterator;
+    }
+
+    /**
+     * 选择流式调用使用的连接。流依赖{@link Header#VERSION_2}的帧格式，旧版本的服务端会把它当成长度并关闭连接，
+     * 所以还不知道服务端的版本时先同步探测一次，服务端不支持时直接失败。
+     */
+    private Transport streamConnection(RpcMethod method) throws InterruptedException, TimeoutException {
+        Transport connection = transport.connection();
+        if (connection.peerVersion() <= 0 && !connection.inEventLoop()) {
+            probeVersion(connection, method);
+        }
+        if (connection.peerVersion() < Header.VERSION_2) {
+            throw new IllegalStateException(String.format(
+                    "Stream method %s#%s requires protocol version %d, but the connection only supports version %s!",
+                    method.getServiceName(), method.getName(), Header.VERSION_2,
+                    connection.peerVersion() > 0 ? String.valueOf(connection.peerVersion()) : "unknown"));
+        }
+        return connection;
+    }
+
+    /**
+     * 用空的方法名按普通请求调用，服务端返回NO_PROVIDER，从响应中得到服务端支持的版本
+     */
+    private static void probeVersion(Transport connection, RpcMethod method) throws InterruptedException {
+        try {
+            connection.send(requestCommand(new RpcRequest(method.getServiceName(), "", new Object[0]))).get().release();
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * 打开双向流，在单独的线程中逐个发送参数Iterator中的消息，没有服务端授予的信用时发送线程阻塞等待，
+     * 调用线程立即返回接收服务端响应的Iterator。
+     */
+    private StreamIterator<Object> invokeBidiStream(RpcMethod method, Iterator<?> messages) {
+        StreamIterator<Object> responses = new StreamIterator<>();
+        ClientStream stream;
+        try {
+            Transport connection = streamConnection(method);
+            Command request = requestCommand(new RpcRequest(method.getServiceName(), method.getName(), new Object[0]));
+            request.getHeader().setFlags(Header.FLAG_STREAM_MESSAGE);
+            stream = connection.sendStream(request, responses);
+        } catch (InterruptedException | TimeoutException e) {
+            throw new RuntimeException(e);
+        }
+        responses.setStream(stream);
+        StreamSenders.EXECUTOR.execute(() -> sendMessages(stream, messages, responses));
+        return responses;
+    }
+
+    private static void sendMessages(ClientStream stream, Iterator<?> messages, StreamIterator<Object> responses) {
+        try {
+            while (null != messages && messages.hasNext()) {
+                ByteBuf message = ByteBufAllocator.DEFAULT.buffer();
+                try {
+                    SerializeSupport.serialize(messages.next(), message);
+                } catch (Throwable t) {
+                    message.release();
+                    throw t;
+                }
+                if (!stream.send(message)) {
+                    // 服务端已经结束了这个流，或者调用方关闭了返回的Iterator
+                    return;
+                }
+            }
+            stream.halfClose();
+        } catch (Throwable t) {
+            stream.cancel();
+            responses.onError(t);
+        } finally {
+            if (messages instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) messages).close();
+                } catch (Exception ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * 双向流的发送线程，按需创建，空闲一段时间后退出
+     */
+    private static class StreamSenders {
+        private static final AtomicInteger threadIndex = new AtomicInteger(0);
+        private static final Executor EXECUTOR = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "rpc-stream-sender-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static Throwable unwrap(Throwable throwable) {
+        return throwable instanceof CompletionException && null != throwable.getCause() ? throwable.getCause() : throwable;
+    }
+
+    private static void completeWithResult(CompletableFuture<Object> future, Command response) {
+        try {
+            future.complete(parseAndRelease(response));
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        }
+    }
+
+    /**
+     * 直接从响应命令的payload中反序列化返回值
+     */
+    private static Object parseAndRelease(Command response) {
+        try {
+            return SerializeSupport.parse(response.getPayloadBuffer());
+        } finally {
+            response.release();
+        }
+    }
+
     protected byte [] invokeRemote(RpcRequest request) {
-        Header header = new Header(ServiceTypes.TYPE_RPC_REQUEST, 1, RequestIdSupport.next());
-        byte [] payload = SerializeSupport.serialize(request);
-        Command requestCommand = new Command(header, payload);
         try {
-            Command responseCommand = transport.send(requestCommand).get();
-            ResponseHeader responseHeader = (ResponseHeader) responseCommand.getHeader();
-            if(responseHeader.getCode() == Code.SUCCESS.getCode()) {
+            Command responseCommand = sendRequestAsync(syncConnection(), request).get();
+            try {
                 return responseCommand.getPayload();
-            } else {
-                throw new Exception(responseHeader.getError());
+            } finally {
+                responseCommand.release();
             }
-
         } catch (ExecutionException e) {
+            if (e.getCause() instanceof RpcException) {
+                throw (RpcException) e.getCause();
+            }
             throw new RuntimeException(e.getCause());
+        } catch (IllegalStateException e) {
+            throw e;
         } catch (Throwable e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 把请求直接序列化到payload的ByteBuf中发送，编码时这个ByteBuf作为帧的一部分写出，不再复制。
+     * @return 成功的响应命令，调用方负责释放；失败的响应以{@link RpcException}异常完成
+     */
+    private static CompletableFuture<Command> sendRequestAsync(Transport transport, RpcRequest request) {
+        return transport.send(requestCommand(request)).thenApply(responseCommand -> {
+            ResponseHeader responseHeader = (ResponseHeader) responseCommand.getHeader();
+            if (responseHeader.getCode() == Code.SUCCESS.getCode()) {
+                return responseCommand;
+            }
+            responseCommand.release();
+            throw new RpcException(responseHeader.getCode(), responseHeader.getError());
+        });
+    }
+
+    private static Command requestCommand(RpcRequest request) {
+        Header header = new Header(ServiceTypes.TYPE_RPC_REQUEST, Header.CURRENT_VERSION);
+        ByteBuf payload = ByteBufAllocator.DEFAULT.buffer();
+        try {
+            SerializeSupport.serialize(request, payload);
+        } catch (Throwable t) {
+            payload.release();
+            throw t;
+        }
+        return new Command(header, payload);
+    }
+
     @Override
     public void setTransport(Transport transport) {
         this.transport = transport;
     }
+
+    @Override
+    public void setCompletionExecutor(Executor completionExecutor) {
+        this.completionExecutor = completionExecutor;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return transport.isWritable();
+    }
+
+    @Override
+    public void addWritabilityListener(Listener listener) {
+        transport.addWritabilityListener(listener);
+    }
+
+    @Override
+    public void removeWritabilityListener(Listener listener) {
+        transport.removeWritabilityListener(listener);
+    }
 }
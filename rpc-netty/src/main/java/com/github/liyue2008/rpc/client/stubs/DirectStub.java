@@ -0,0 +1,170 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.client.stubs;
+
+import com.github.liyue2008.rpc.Writability;
+import com.github.liyue2008.rpc.client.ServiceStub;
+import com.github.liyue2008.rpc.transport.Transport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 进程内直接调用服务提供者的桩，参数和返回值不复制。
+ * 和其它桩一样实现了{@link ServiceStub}和{@link Writability}：
+ * 单向方法在线程池中异步执行，不阻塞调用方；返回CompletableFuture的方法在设置的completionExecutor中完成；
+ * 没有连接，所以总是可写的。其它方法在调用线程中直接执行。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+public class DirectStub implements InvocationHandler, ServiceStub, Writability {
+    private static final Logger logger = LoggerFactory.getLogger(DirectStub.class);
+    private final Object serviceProvider;
+    private final Map<Method, RpcMethod> methods = new HashMap<>();
+    private volatile Executor completionExecutor = ForkJoinPool.commonPool();
+
+    private DirectStub(Class<?> serviceClass, Object serviceProvider) {
+        this.serviceProvider = serviceProvider;
+        for (RpcMethod method : RpcMethod.methodsOf(serviceClass)) {
+            methods.put(method.getMethod(), method);
+        }
+    }
+
+    /**
+     * 创建直接调用服务提供者的桩
+     * @param serviceClass 服务接口
+     * @param serviceProvider 注册在这个进程中的服务提供者
+     */
+    public static <T> T create(Class<T> serviceClass, Object serviceProvider) {
+        DirectStub stub = new DirectStub(serviceClass, serviceProvider);
+        return serviceClass.cast(Proxy.newProxyInstance(serviceClass.getClassLoader(),
+                new Class<?> [] {serviceClass, ServiceStub.class, Writability.class}, stub));
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object [] args) throws Throwable {
+        RpcMethod rpcMethod = methods.get(method);
+        if (null == rpcMethod) {
+            return invokeOther(proxy, method, args);
+        }
+        if (rpcMethod.isOneWay()) {
+            invokeOneWay(method, args);
+            return null;
+        }
+        Object result = invokeProvider(method, args);
+        if (rpcMethod.isAsync() && null != result) {
+            return completeOn((CompletionStage<?>) result);
+        }
+        return result;
+    }
+
+    private void invokeOneWay(Method method, Object [] args) {
+        Executor executor = null == completionExecutor ? ForkJoinPool.commonPool() : completionExecutor;
+        Runnable task = () -> {
+            try {
+                invokeProvider(method, args);
+            } catch (Throwable t) {
+                logger.warn("Invoke one-way method {} failed!", method.getName(), t);
+            }
+        };
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            logger.warn("One-way call {} dropped, executor busy!", method.getName());
+        }
+    }
+
+    private CompletableFuture<Object> completeOn(CompletionStage<?> stage) {
+        Executor executor = completionExecutor;
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        if (null == executor) {
+            stage.whenComplete((result, throwable) -> complete(future, result, throwable));
+        } else {
+            stage.whenCompleteAsync((result, throwable) -> complete(future, result, throwable), executor);
+        }
+        return future;
+    }
+
+    private static void complete(CompletableFuture<Object> future, Object result, Throwable throwable) {
+        if (null != throwable) {
+            future.completeExceptionally(throwable);
+        } else {
+            future.complete(result);
+        }
+    }
+
+    private Object invokeProvider(Method method, Object [] args) throws Throwable {
+        return call(serviceProvider, method, args);
+    }
+
+    private Object invokeOther(Object proxy, Method method, Object [] args) throws Throwable {
+        if (method.getDeclaringClass() == ServiceStub.class || method.getDeclaringClass() == Writability.class) {
+            return call(this, method, args);
+        }
+        switch (method.getName()) {
+            case "equals":
+                return proxy == args[0];
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "toString":
+                return "DirectStub(" + serviceProvider + ")";
+            default:
+                return invokeProvider(method, args);
+        }
+    }
+
+    private static Object call(Object target, Method method, Object [] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * 直接调用没有连接
+     */
+    @Override
+    public void setTransport(Transport transport) {}
+
+    @Override
+    public void setCompletionExecutor(Executor completionExecutor) {
+        this.completionExecutor = completionExecutor;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return true;
+    }
+
+    /**
+     * 总是可写，状态不会变化
+     */
+    @Override
+    public void addWritabilityListener(Listener listener) {}
+
+    @Override
+    public void removeWritabilityListener(Listener listener) {}
+}
@@ -0,0 +1,39 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.client.stubs;
+
+import java.util.HashMap;
+
+/**
+ * 服务端为一个服务的所有方法分配的方法ID。
+ * 校验方法签名的服务端会设置{@link #isSignatureRequired()}，客户端只在这种服务端上使用方法ID，
+ * 方法ID失效（比如服务端重启后按照不同的顺序注册了服务）时服务端能发现，而不是调用到另一个方法。
+ * @author LiYue
+ * Date: 2019/10/14
+ */
+public class MethodIdTable extends HashMap<String /*方法名*/, Integer /*方法ID*/> {
+    private boolean signatureRequired = false;
+
+    /**
+     * 用方法ID调用时是否需要携带方法签名，不校验签名的旧版本服务端返回false
+     * @see RpcMethod#getSignature()
+     */
+    public boolean isSignatureRequired() {
+        return signatureRequired;
+    }
+
+    public void setSignatureRequired(boolean signatureRequired) {
+        this.signatureRequired = signatureRequired;
+    }
+}
@@ -0,0 +1,32 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.client.stubs;
+
+import com.github.liyue2008.rpc.client.PrebuiltStub;
+
+/**
+ * 编译时生成的桩{@link PrebuiltStub}背后的远程调用实现，和运行时生成的桩走同样的调用流程。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+public final class PrebuiltStubInvoker extends AbstractStub implements PrebuiltStub.Invoker {
+    public PrebuiltStubInvoker(Class<?> serviceClass) {
+        super(serviceClass);
+    }
+
+    @Override
+    public Object invoke(int methodIndex, Object [] arguments) {
+        return super.invoke(methodIndex, arguments);
+    }
+}
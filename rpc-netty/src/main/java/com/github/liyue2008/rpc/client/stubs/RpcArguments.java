@@ -0,0 +1,135 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.client.stubs;
+
+import com.github.liyue2008.rpc.serialize.BufferSerializer;
+import com.github.liyue2008.rpc.serialize.SerializeSupport;
+import com.github.liyue2008.rpc.serialize.Serializer;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 调用参数的序列化。
+ * 只有一个参数时，直接序列化这个参数，和只支持一个参数的桩保持兼容；
+ * 其它情况：
+ * Number of arguments                 4 bytes
+ *      Argument:
+ *          Length:                    4 bytes
+ *          Serialized argument:       variable length
+ *      Argument:
+ *      ...
+ *
+ * @author LiYue
+ * Date: 2019/10/8
+ */
+public class RpcArguments {
+    private final static Object [] EMPTY_ARGUMENTS = new Object[0];
+
+    public static byte [] serialize(Object [] arguments) {
+        if (null == arguments) {
+            arguments = EMPTY_ARGUMENTS;
+        }
+        if (arguments.length == 1) {
+            return SerializeSupport.serialize(arguments[0]);
+        }
+        byte [][] serializedArguments = new byte[arguments.length][];
+        int size = Integer.BYTES;
+        for (int i = 0; i < arguments.length; i++) {
+            serializedArguments[i] = SerializeSupport.serialize(arguments[i]);
+            size += Integer.BYTES + serializedArguments[i].length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(serializedArguments.length);
+        for (byte [] serializedArgument : serializedArguments) {
+            buffer.putInt(serializedArgument.length);
+            buffer.put(serializedArgument);
+        }
+        return buffer.array();
+    }
+
+    public static Object [] parse(byte [] bytes, int parameterCount) {
+        return parse(bytes, new Serializer<?>[parameterCount]);
+    }
+
+    /**
+     * 反序列化调用参数
+     * @param bytes 序列化后的参数
+     * @param argumentSerializers 每个参数预先查找好的序列化实现，可以为null
+     */
+    public static Object [] parse(byte [] bytes, Serializer<?> [] argumentSerializers) {
+        int parameterCount = argumentSerializers.length;
+        if (parameterCount == 1) {
+            return new Object[] {SerializeSupport.parse(bytes, argumentSerializers[0])};
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int count = bytes.length == 0 ? 0 : buffer.getInt();
+        if (count != parameterCount) {
+            throw new IllegalArgumentException(
+                    String.format("Argument count mismatch, expected: %d, actual: %d!", parameterCount, count));
+        }
+        Object [] arguments = new Object[count];
+        for (int i = 0; i < count; i++) {
+            byte [] serializedArgument = new byte[buffer.getInt()];
+            buffer.get(serializedArgument);
+            arguments[i] = SerializeSupport.parse(serializedArgument, argumentSerializers[i]);
+        }
+        return arguments;
+    }
+
+    /**
+     * 把调用参数直接序列化到ByteBuf，格式和{@link #serialize(Object[])}相同。
+     * 每个参数的长度先写一个占位，参数写完之后再回填。
+     */
+    public static void serialize(Object [] arguments, ByteBuf buffer) {
+        if (null == arguments) {
+            arguments = EMPTY_ARGUMENTS;
+        }
+        if (arguments.length == 1) {
+            SerializeSupport.serialize(arguments[0], buffer);
+            return;
+        }
+        buffer.writeInt(arguments.length);
+        for (Object argument : arguments) {
+            int lengthIndex = buffer.writerIndex();
+            buffer.writeInt(0);
+            SerializeSupport.serialize(argument, buffer);
+            buffer.setInt(lengthIndex, buffer.writerIndex() - lengthIndex - Integer.BYTES);
+        }
+    }
+
+    /**
+     * 从ByteBuf反序列化调用参数，读取buffer中所有可读的数据
+     * @param buffer 序列化后的参数
+     * @param argumentSerializers 每个参数预先查找好的序列化实现，可以为null
+     */
+    public static Object [] parse(ByteBuf buffer, BufferSerializer<?> [] argumentSerializers) {
+        int parameterCount = argumentSerializers.length;
+        if (parameterCount == 1) {
+            return new Object[] {SerializeSupport.parse(buffer, buffer.readableBytes(), argumentSerializers[0])};
+        }
+        int count = buffer.isReadable() ? buffer.readInt() : 0;
+        if (count != parameterCount) {
+            throw new IllegalArgumentException(
+                    String.format("Argument count mismatch, expected: %d, actual: %d!", parameterCount, count));
+        }
+        Object [] arguments = new Object[count];
+        for (int i = 0; i < count; i++) {
+            int length = buffer.readInt();
+            arguments[i] = SerializeSupport.parse(buffer, length, argumentSerializers[i]);
+        }
+        return arguments;
+    }
+}
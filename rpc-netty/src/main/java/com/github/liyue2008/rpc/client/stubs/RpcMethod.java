@@ -0,0 +1,165 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.client.stubs;
+
+import com.github.liyue2008.rpc.OneWay;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 服务接口中的一个方法。
+ * 客户端和服务端用同样的规则对接口的方法排序和命名：
+ * 方法名不重复时直接用方法名，有重载的方法在方法名后面加上参数类型。
+ * @author LiYue
+ * Date: 2019/10/8
+ */
+public class RpcMethod {
+    private final static ClassValue<RpcMethod[]> methodsCache = new ClassValue<RpcMethod[]>() {
+        @Override
+        protected RpcMethod[] computeValue(Class<?> serviceClass) {
+            return resolveMethods(serviceClass);
+        }
+    };
+    private final int index;
+    private final String serviceName;
+    private final String name;
+    private final Method method;
+    private final boolean async;
+    private final boolean stream;
+    private final boolean bidiStream;
+    private final boolean oneWay;
+    private final int signature;
+
+    private RpcMethod(int index, String serviceName, String name, Method method) {
+        this.index = index;
+        this.serviceName = serviceName;
+        this.name = name;
+        this.method = method;
+        int signature = (serviceName + '#' + name).hashCode();
+        this.signature = 0 == signature ? 1 : signature;
+        Class<?> returnType = method.getReturnType();
+        this.async = CompletionStage.class.isAssignableFrom(returnType) && returnType.isAssignableFrom(CompletableFuture.class);
+        this.stream = returnType == Iterator.class;
+        Class<?> [] parameterTypes = method.getParameterTypes();
+        this.bidiStream = stream && parameterTypes.length == 1 && parameterTypes[0] == Iterator.class;
+        this.oneWay = method.isAnnotationPresent(OneWay.class);
+        if (oneWay && returnType != void.class) {
+            throw new IllegalArgumentException(String.format("One-way method %s must return void!", method));
+        }
+    }
+
+    /**
+     * 返回服务接口中所有需要远程调用的方法，按照固定的顺序排列，数组下标就是{@link #getIndex()}。
+     * @param serviceClass 服务接口的Class
+     */
+    public static RpcMethod[] methodsOf(Class<?> serviceClass) {
+        return methodsCache.get(serviceClass);
+    }
+
+    private static RpcMethod[] resolveMethods(Class<?> serviceClass) {
+        if (!serviceClass.isInterface()) {
+            throw new IllegalArgumentException(String.format("%s is not an interface!", serviceClass.getName()));
+        }
+        Method [] methods = Arrays.stream(serviceClass.getMethods())
+                .filter(method -> Modifier.isAbstract(method.getModifiers()))
+                .sorted(Comparator.comparing(Method::getName).thenComparing(RpcMethod::parameterDescriptor))
+                .toArray(Method[]::new);
+        RpcMethod [] rpcMethods = new RpcMethod[methods.length];
+        for (int i = 0; i < methods.length; i++) {
+            Method method = methods[i];
+            boolean overloaded = Arrays.stream(methods)
+                    .filter(m -> m.getName().equals(method.getName())).count() > 1;
+            String name = overloaded ? method.getName() + parameterDescriptor(method) : method.getName();
+            rpcMethods[i] = new RpcMethod(i, serviceClass.getCanonicalName(), name, method);
+        }
+        return rpcMethods;
+    }
+
+    private static String parameterDescriptor(Method method) {
+        StringBuilder sb = new StringBuilder("(");
+        for (Class<?> parameterType : method.getParameterTypes()) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append(parameterType.getName());
+        }
+        return sb.append(')').toString();
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * 服务名，即{@link RpcRequest#getInterfaceName()}
+     */
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    /**
+     * 方法名，即{@link RpcRequest#getMethodName()}
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 服务名和方法名的哈希，客户端用方法ID调用时和方法ID一起发送，服务端据此确认这个方法ID
+     * 指向的还是同一个方法。不会是0，请求中的0表示没有签名。
+     */
+    public int getSignature() {
+        return signature;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * 返回值是CompletableFuture或者CompletionStage的方法，客户端不等待响应，直接返回CompletableFuture
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
+    /**
+     * 返回值是Iterator的方法，服务端把每个元素作为一个响应帧按照客户端的信用逐个发送，
+     * 客户端返回一个阻塞的{@link StreamIterator}
+     */
+    public boolean isStream() {
+        return stream;
+    }
+
+    /**
+     * 参数和返回值都是Iterator的双向流方法：客户端逐个发送参数Iterator中的元素，
+     * 同时逐个接收服务端返回的元素，两个方向都按照对方授予的信用发送
+     */
+    public boolean isBidiStream() {
+        return bidiStream;
+    }
+
+    /**
+     * 标注了{@link OneWay}的方法，客户端不等待响应，服务端也不发送响应
+     */
+    public boolean isOneWay() {
+        return oneWay;
+    }
+}
@@ -13,19 +13,92 @@
  */
 package com.github.liyue2008.rpc.client.stubs;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
 /**
+ * 调用参数有三种形式：
+ * 1. 序列化好的字节数组；
+ * 2. 还没有序列化的参数，客户端构建请求时使用，序列化请求时直接把参数写入ByteBuf；
+ * 3. ByteBuf，服务端解析请求时引用请求命令payload的切片，只在请求命令被释放之前有效。
  * @author LiYue
  * Date: 2019/9/27
  */
 public class RpcRequest {
+    private final int methodId;
+    private final int methodSignature;
     private final String interfaceName;
     private final String methodName;
-    private final byte [] serializedArguments;
+    private byte [] serializedArguments;
+    private final Object [] arguments;
+    private final ByteBuf argumentsBuffer;
 
-    public RpcRequest(String interfaceName, String methodName, byte[] serializedArguments) {
+    private RpcRequest(int methodId, int methodSignature, String interfaceName, String methodName,
+                       byte [] serializedArguments, Object [] arguments, ByteBuf argumentsBuffer) {
+        this.methodId = methodId;
+        this.methodSignature = methodSignature;
         this.interfaceName = interfaceName;
         this.methodName = methodName;
         this.serializedArguments = serializedArguments;
+        this.arguments = arguments;
+        this.argumentsBuffer = argumentsBuffer;
+    }
+
+    public RpcRequest(String interfaceName, String methodName, byte[] serializedArguments) {
+        this(-1, 0, interfaceName, methodName, serializedArguments, null, null);
+    }
+
+    /**
+     * 用协商好的方法ID代替服务名和方法名
+     */
+    public RpcRequest(int methodId, byte[] serializedArguments) {
+        this(methodId, 0, null, null, serializedArguments, null, null);
+    }
+
+    /**
+     * 用方法ID调用，同时携带方法签名，服务端据此拒绝已经失效的方法ID
+     * @see RpcMethod#getSignature()
+     */
+    public RpcRequest(int methodId, int methodSignature, byte[] serializedArguments) {
+        this(methodId, methodSignature, null, null, serializedArguments, null, null);
+    }
+
+    public RpcRequest(String interfaceName, String methodName, Object [] arguments) {
+        this(-1, 0, interfaceName, methodName, null, arguments, null);
+    }
+
+    public RpcRequest(int methodId, Object [] arguments) {
+        this(methodId, 0, null, null, null, arguments, null);
+    }
+
+    public RpcRequest(int methodId, int methodSignature, Object [] arguments) {
+        this(methodId, methodSignature, null, null, null, arguments, null);
+    }
+
+    public RpcRequest(String interfaceName, String methodName, ByteBuf argumentsBuffer) {
+        this(-1, 0, interfaceName, methodName, null, null, argumentsBuffer);
+    }
+
+    public RpcRequest(int methodId, ByteBuf argumentsBuffer) {
+        this(methodId, 0, null, null, null, null, argumentsBuffer);
+    }
+
+    public RpcRequest(int methodId, int methodSignature, ByteBuf argumentsBuffer) {
+        this(methodId, methodSignature, null, null, null, null, argumentsBuffer);
+    }
+
+    /**
+     * 方法ID，没有时返回-1
+     */
+    public int getMethodId() {
+        return methodId;
+    }
+
+    /**
+     * 方法签名，没有时返回0
+     */
+    public int getMethodSignature() {
+        return methodSignature;
     }
 
     public String getInterfaceName() {
@@ -36,7 +109,28 @@ public class RpcRequest {
         return methodName;
     }
 
+    /**
+     * 以字节数组的形式返回序列化后的参数，参数是其它形式时，这里会序列化或者复制一次。
+     */
     public byte[] getSerializedArguments() {
+        if (null == serializedArguments) {
+            serializedArguments = null != argumentsBuffer ?
+                    ByteBufUtil.getBytes(argumentsBuffer) : RpcArguments.serialize(arguments);
+        }
         return serializedArguments;
     }
+
+    /**
+     * 还没有序列化的参数，没有时返回null
+     */
+    public Object[] getArguments() {
+        return arguments;
+    }
+
+    /**
+     * 序列化后的参数所在的ByteBuf，没有时返回null
+     */
+    public ByteBuf getArgumentsBuffer() {
+        return argumentsBuffer;
+    }
 }
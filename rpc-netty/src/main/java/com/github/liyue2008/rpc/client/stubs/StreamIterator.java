@@ -0,0 +1,153 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.client.stubs;
+
+import com.github.liyue2008.rpc.client.RpcException;
+import com.github.liyue2008.rpc.serialize.SerializeSupport;
+import com.github.liyue2008.rpc.transport.ClientStream;
+import com.github.liyue2008.rpc.transport.StreamListener;
+import com.github.liyue2008.rpc.transport.command.Code;
+import com.github.liyue2008.rpc.transport.command.Command;
+import com.github.liyue2008.rpc.transport.command.Header;
+import com.github.liyue2008.rpc.transport.command.ResponseHeader;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 流式调用在客户端的返回值，阻塞地逐个返回服务端发来的元素。
+ * 元素在网络IO线程上反序列化后放入队列，队列中最多有{@link ClientStream#window()}个元素：
+ * 每消费半个窗口的元素，再授予服务端同样数量的信用。
+ * 不再需要后面的元素时需要调用{@link #close()}取消这个流，否则服务端会一直保留这个流。
+ * 不是线程安全的，只能在一个线程中使用。
+ * @author LiYue
+ * Date: 2019/10/18
+ */
+public class StreamIterator<T> implements Iterator<T>, Closeable, StreamListener {
+    private static final Object END = new Object();
+    private static final Object NULL = new Object();
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private ClientStream stream = null;
+    private Object next = null;
+    private boolean done = false;
+    private int consumed = 0;
+
+    void setStream(ClientStream stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (null != next) {
+            return next != END;
+        }
+        if (done) {
+            return false;
+        }
+        Object element;
+        try {
+            element = queue.poll(stream.timeoutMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            close();
+            throw new RuntimeException(e);
+        }
+        if (null == element) {
+            close();
+            throw new RuntimeException(new TimeoutException(
+                    String.format("No stream element received in %d ms!", stream.timeoutMillis())));
+        }
+        if (element instanceof Failure) {
+            // 流可能还没有结束，比如反序列化失败，取消它；已经结束的流取消时什么也不做
+            done = true;
+            stream.cancel();
+            Throwable cause = ((Failure) element).cause;
+            throw cause instanceof RpcException ? (RpcException) cause : new RuntimeException(cause);
+        }
+        next = element;
+        if (element == END) {
+            done = true;
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object element = next;
+        next = null;
+        if (++consumed >= Math.max(1, stream.window() / 2)) {
+            stream.grant(consumed);
+            consumed = 0;
+        }
+        return element == NULL ? null : (T) element;
+    }
+
+    /**
+     * 取消这个流，之后{@link #hasNext()}返回false
+     */
+    @Override
+    public void close() {
+        if (!done) {
+            done = true;
+            next = END;
+            stream.cancel();
+        }
+    }
+
+    @Override
+    public void onNext(Command response) {
+        try {
+            Object element = SerializeSupport.parse(response.getPayloadBuffer().duplicate());
+            queue.add(null == element ? NULL : element);
+        } catch (Throwable t) {
+            queue.add(new Failure(t));
+        }
+    }
+
+    @Override
+    public void onComplete(Command response) {
+        ResponseHeader header = (ResponseHeader) response.getHeader();
+        if (header.getCode() != Code.SUCCESS.getCode()) {
+            queue.add(new Failure(new RpcException(header.getCode(), header.getError())));
+            return;
+        }
+        if (!header.hasFlag(Header.FLAG_END_OF_STREAM) && response.payloadLength() > 0) {
+            // 服务端没有按照流式响应返回，把唯一的返回值作为最后一个元素
+            onNext(response);
+        }
+        queue.add(END);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        queue.add(new Failure(throwable));
+    }
+
+    private static class Failure {
+        private final Throwable cause;
+
+        private Failure(Throwable cause) {
+            this.cause = cause;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.serialize;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 直接读写ByteBuf的序列化接口。
+ * 和{@link Serializer}不同，序列化时不需要预先计算长度，也不需要中间的字节数组，
+ * 一次遍历就把对象写入ByteBuf。序列化后的数据格式和{@link Serializer}相同，两者可以混用。
+ *
+ * 没有对应实现的类型，使用{@link Serializer}的适配器，参见{@link SerializeSupport}。
+ * @author LiYue
+ * Date: 2019/10/14
+ */
+public interface BufferSerializer<T> {
+    /**
+     * 序列化对象，从buffer的writerIndex开始写入，写完后writerIndex指向序列化数据之后
+     * @param entry 待序列化的对象
+     * @param buffer 存放序列化数据的ByteBuf
+     */
+    void serialize(T entry, ByteBuf buffer);
+
+    /**
+     * 反序列化对象，从buffer的readerIndex开始读取length个字节，读完后readerIndex指向序列化数据之后
+     * @param buffer 存放序列化数据的ByteBuf
+     * @param length 对象序列化后的长度
+     * @return 反序列化之后生成的对象
+     */
+    T parse(ByteBuf buffer, int length);
+
+    /**
+     * 用一个字节标识对象类型，和{@link Serializer#type()}使用相同的值
+     */
+    byte type();
+
+    /**
+     * 返回序列化对象类型的Class对象。
+     */
+    Class<T> getSerializeClass();
+}
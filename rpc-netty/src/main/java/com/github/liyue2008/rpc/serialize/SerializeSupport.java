@@ -14,6 +14,7 @@
 package com.github.liyue2008.rpc.serialize;
 
 import com.github.liyue2008.rpc.spi.ServiceSupport;
+import io.netty.buffer.ByteBuf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,6 +30,8 @@ public class SerializeSupport {
     private static final Logger logger = LoggerFactory.getLogger(SerializeSupport.class);
     private static Map<Class<?>/*序列化对象类型*/, Serializer<?>/*序列化实现*/> serializerMap = new HashMap<>();
     private static Map<Byte/*序列化实现类型*/, Class<?>/*序列化对象类型*/> typeMap = new HashMap<>();
+    private static Map<Class<?>/*序列化对象类型*/, BufferSerializer<?>/*序列化实现*/> bufferSerializerMap = new HashMap<>();
+    private static Map<Byte/*序列化实现类型*/, BufferSerializer<?>/*序列化实现*/> bufferTypeMap = new HashMap<>();
 
     static {
         for (Serializer serializer : ServiceSupport.loadAll(Serializer.class)) {
@@ -37,6 +40,22 @@ public class SerializeSupport {
                     serializer.getSerializeClass().getCanonicalName(),
                     serializer.type());
         }
+        for (BufferSerializer<?> serializer : ServiceSupport.loadAll(BufferSerializer.class)) {
+            registerBufferSerializer(serializer);
+            logger.info("Found buffer serializer, class: {}, type: {}.",
+                    serializer.getSerializeClass().getCanonicalName(),
+                    serializer.type());
+        }
+        // 没有BufferSerializer实现的类型，用字节数组的Serializer适配
+        for (Serializer<?> serializer : serializerMap.values()) {
+            if (!bufferSerializerMap.containsKey(serializer.getSerializeClass())) {
+                registerBufferSerializer(new SerializerAdapter<>(serializer));
+            }
+        }
+    }
+    private static <E> void registerBufferSerializer(BufferSerializer<E> serializer) {
+        bufferSerializerMap.put(serializer.getSerializeClass(), serializer);
+        bufferTypeMap.put(serializer.type(), serializer);
     }
     private static byte parseEntryType(byte[] buffer) {
         return buffer[0];
@@ -54,7 +73,13 @@ public class SerializeSupport {
             throw new SerializeException("Type mismatch!");
         }
     }
+    /**
+     * 反序列化，长度为0的字节数组表示null
+     */
     public static  <E> E parse(byte [] buffer) {
+        if (buffer.length == 0) {
+            return null;
+        }
         return parse(buffer, 0, buffer.length);
     }
 
@@ -70,15 +95,124 @@ public class SerializeSupport {
 
     }
 
+    /**
+     * 使用预先查找好的序列化实现反序列化，数据的类型与序列化实现不一致时，按照数据中的类型反序列化
+     * @param buffer 序列化数据
+     * @param serializer 预先查找好的序列化实现，可以为null
+     */
+    public static  <E> E parse(byte [] buffer, Serializer<E> serializer) {
+        if (buffer.length == 0) {
+            return null;
+        }
+        if (null != serializer && parseEntryType(buffer) == serializer.type()) {
+            return serializer.parse(buffer, 1, buffer.length - 1);
+        }
+        return parse(buffer, 0, buffer.length);
+    }
+
+    /**
+     * 查找指定类型的序列化实现
+     * @param eClass 序列化对象类型
+     * @return 序列化实现，没有时返回null
+     */
+    public static <E> Serializer<E> serializerOf(Class<E> eClass) {
+        return (Serializer<E>) serializerMap.get(eClass);
+    }
+
+    /**
+     * 序列化，null序列化为长度为0的字节数组
+     */
     public static <E> byte [] serialize(E  entry) {
+        if (null == entry) {
+            return new byte[0];
+        }
         @SuppressWarnings("unchecked")
         Serializer<E> serializer = (Serializer<E>) serializerMap.get(entry.getClass());
         if(serializer == null) {
             throw new SerializeException(String.format("Unknown entry class type: %s", entry.getClass().toString()));
         }
+        return serialize(entry, serializer);
+    }
+
+    /**
+     * 使用预先查找好的序列化实现序列化，对象的类型与序列化实现不一致时，按照对象的类型查找序列化实现
+     * @param entry 待序列化的对象
+     * @param serializer 预先查找好的序列化实现，可以为null
+     */
+    public static <E> byte [] serialize(E entry, Serializer<E> serializer) {
+        if (null == entry || null == serializer || entry.getClass() != serializer.getSerializeClass()) {
+            return serialize(entry);
+        }
         byte [] bytes = new byte [serializer.size(entry) + 1];
         bytes[0] = serializer.type();
         serializer.serialize(entry, bytes, 1, bytes.length - 1);
         return bytes;
     }
+
+    /**
+     * 序列化到ByteBuf，格式和{@link #serialize(Object)}相同，null不写入任何数据
+     * @param entry 待序列化的对象
+     * @param buffer 从writerIndex开始写入
+     */
+    public static <E> void serialize(E entry, ByteBuf buffer) {
+        if (null == entry) {
+            return;
+        }
+        BufferSerializer<E> serializer = (BufferSerializer<E>) bufferSerializerMap.get(entry.getClass());
+        if(serializer == null) {
+            throw new SerializeException(String.format("Unknown entry class type: %s", entry.getClass().toString()));
+        }
+        buffer.writeByte(serializer.type());
+        serializer.serialize(entry, buffer);
+    }
+
+    /**
+     * 使用预先查找好的序列化实现序列化到ByteBuf，对象的类型与序列化实现不一致时，按照对象的类型查找序列化实现
+     * @param entry 待序列化的对象
+     * @param buffer 从writerIndex开始写入
+     * @param serializer 预先查找好的序列化实现，可以为null
+     */
+    public static <E> void serialize(E entry, ByteBuf buffer, BufferSerializer<E> serializer) {
+        if (null == entry || null == serializer || entry.getClass() != serializer.getSerializeClass()) {
+            serialize(entry, buffer);
+            return;
+        }
+        buffer.writeByte(serializer.type());
+        serializer.serialize(entry, buffer);
+    }
+
+    /**
+     * 反序列化buffer中所有可读的数据，没有可读数据表示null
+     */
+    public static <E> E parse(ByteBuf buffer) {
+        return parse(buffer, buffer.readableBytes(), null);
+    }
+
+    /**
+     * 从ByteBuf反序列化，数据的类型与序列化实现不一致时，按照数据中的类型反序列化
+     * @param buffer 从readerIndex开始读取
+     * @param length 序列化数据的长度，0表示null
+     * @param serializer 预先查找好的序列化实现，可以为null
+     */
+    public static <E> E parse(ByteBuf buffer, int length, BufferSerializer<E> serializer) {
+        if (length == 0) {
+            return null;
+        }
+        byte type = buffer.readByte();
+        BufferSerializer<?> bufferSerializer = null != serializer && serializer.type() == type ?
+                serializer : bufferTypeMap.get(type);
+        if (null == bufferSerializer) {
+            throw new SerializeException(String.format("Unknown entry type: %d!", type));
+        }
+        return (E) bufferSerializer.parse(buffer, length - 1);
+    }
+
+    /**
+     * 查找指定类型直接读写ByteBuf的序列化实现
+     * @param eClass 序列化对象类型
+     * @return 序列化实现，没有时返回null
+     */
+    public static <E> BufferSerializer<E> bufferSerializerOf(Class<E> eClass) {
+        return (BufferSerializer<E>) bufferSerializerMap.get(eClass);
+    }
 }
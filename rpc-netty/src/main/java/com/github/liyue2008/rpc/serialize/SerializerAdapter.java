@@ -0,0 +1,68 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.serialize;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 把只支持字节数组的{@link Serializer}适配成{@link BufferSerializer}。
+ * ByteBuf有可访问的数组时直接在数组上读写，否则经过一次临时字节数组的复制。
+ * @author LiYue
+ * Date: 2019/10/14
+ */
+class SerializerAdapter<T> implements BufferSerializer<T> {
+    private final Serializer<T> serializer;
+
+    SerializerAdapter(Serializer<T> serializer) {
+        this.serializer = serializer;
+    }
+
+    @Override
+    public void serialize(T entry, ByteBuf buffer) {
+        int size = serializer.size(entry);
+        buffer.ensureWritable(size);
+        if (buffer.hasArray()) {
+            serializer.serialize(entry, buffer.array(), buffer.arrayOffset() + buffer.writerIndex(), size);
+            buffer.writerIndex(buffer.writerIndex() + size);
+        } else {
+            byte [] bytes = new byte[size];
+            serializer.serialize(entry, bytes, 0, size);
+            buffer.writeBytes(bytes);
+        }
+    }
+
+    @Override
+    public T parse(ByteBuf buffer, int length) {
+        T entry;
+        if (buffer.hasArray()) {
+            entry = serializer.parse(buffer.array(), buffer.arrayOffset() + buffer.readerIndex(), length);
+            buffer.skipBytes(length);
+        } else {
+            byte [] bytes = new byte[length];
+            buffer.readBytes(bytes);
+            entry = serializer.parse(bytes, 0, length);
+        }
+        return entry;
+    }
+
+    @Override
+    public byte type() {
+        return serializer.type();
+    }
+
+    @Override
+    public Class<T> getSerializeClass() {
+        return serializer.getSerializeClass();
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.serialize.impl;
+
+import com.github.liyue2008.rpc.client.stubs.MethodIdTable;
+import com.github.liyue2008.rpc.serialize.Serializer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Size of the map                     4 bytes
+ *      Map entry:
+ *          Method name:
+ *              Length:                4 bytes
+ *              Serialized name bytes: variable length
+ *          Method id:                 4 bytes
+ *      Map entry:
+ *      ...
+ * Flags:                              4 bytes
+ *
+ * 旧版本的服务端不写Flags，旧版本的客户端忽略Flags。
+ *
+ * @author LiYue
+ * Date: 2019/10/14
+ */
+public class MethodIdTableSerializer implements Serializer<MethodIdTable> {
+    private static final int FLAG_SIGNATURE_REQUIRED = 0x01;
+
+    @Override
+    public int size(MethodIdTable entry) {
+        int size = Integer.BYTES + Integer.BYTES;
+        for (String methodName : entry.keySet()) {
+            size += Integer.BYTES + methodName.getBytes(StandardCharsets.UTF_8).length + Integer.BYTES;
+        }
+        return size;
+    }
+
+    @Override
+    public void serialize(MethodIdTable entry, byte[] bytes, int offset, int length) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        buffer.putInt(entry.size());
+        for (Map.Entry<String, Integer> e : entry.entrySet()) {
+            byte [] nameBytes = e.getKey().getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(nameBytes.length);
+            buffer.put(nameBytes);
+            buffer.putInt(e.getValue());
+        }
+        buffer.putInt(entry.isSignatureRequired() ? FLAG_SIGNATURE_REQUIRED : 0);
+    }
+
+    @Override
+    public MethodIdTable parse(byte[] bytes, int offset, int length) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        MethodIdTable table = new MethodIdTable();
+        int size = buffer.getInt();
+        for (int i = 0; i < size; i++) {
+            byte [] nameBytes = new byte[buffer.getInt()];
+            buffer.get(nameBytes);
+            table.put(new String(nameBytes, StandardCharsets.UTF_8), buffer.getInt());
+        }
+        if (buffer.remaining() >= Integer.BYTES) {
+            table.setSignatureRequired((buffer.getInt() & FLAG_SIGNATURE_REQUIRED) != 0);
+        }
+        return table;
+    }
+
+    @Override
+    public byte type() {
+        return Types.TYPE_METHOD_ID_TABLE;
+    }
+
+    @Override
+    public Class<MethodIdTable> getSerializeClass() {
+        return MethodIdTable.class;
+    }
+}
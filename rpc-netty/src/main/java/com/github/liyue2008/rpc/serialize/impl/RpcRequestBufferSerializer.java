@@ -0,0 +1,90 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.serialize.impl;
+
+import com.github.liyue2008.rpc.client.stubs.RpcArguments;
+import com.github.liyue2008.rpc.client.stubs.RpcRequest;
+import com.github.liyue2008.rpc.serialize.BufferSerializer;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 格式见{@link RpcRequestSerializer}。
+ * 序列化时还没有序列化的调用参数直接写入ByteBuf，各个长度字段先写占位再回填；
+ * 反序列化时调用参数引用buffer的切片，不复制数据。
+ * @author LiYue
+ * Date: 2019/10/14
+ */
+public class RpcRequestBufferSerializer implements BufferSerializer<RpcRequest> {
+    private final StringBufferSerializer stringSerializer = new StringBufferSerializer();
+
+    @Override
+    public void serialize(RpcRequest request, ByteBuf buffer) {
+        if (request.getMethodId() >= 0 && 0 != request.getMethodSignature()) {
+            buffer.writeInt(RpcRequestSerializer.SIGNED_METHOD_ID);
+            buffer.writeInt(request.getMethodId());
+            buffer.writeInt(request.getMethodSignature());
+        } else if (request.getMethodId() >= 0) {
+            buffer.writeInt(-request.getMethodId() - 1);
+        } else {
+            writeString(request.getInterfaceName(), buffer);
+            writeString(request.getMethodName(), buffer);
+        }
+
+        int lengthIndex = buffer.writerIndex();
+        buffer.writeInt(0);
+        if (null != request.getArguments()) {
+            RpcArguments.serialize(request.getArguments(), buffer);
+        } else if (null != request.getArgumentsBuffer()) {
+            ByteBuf argumentsBuffer = request.getArgumentsBuffer();
+            buffer.writeBytes(argumentsBuffer, argumentsBuffer.readerIndex(), argumentsBuffer.readableBytes());
+        } else {
+            buffer.writeBytes(request.getSerializedArguments());
+        }
+        buffer.setInt(lengthIndex, buffer.writerIndex() - lengthIndex - Integer.BYTES);
+    }
+
+    private void writeString(String string, ByteBuf buffer) {
+        int lengthIndex = buffer.writerIndex();
+        buffer.writeInt(0);
+        stringSerializer.serialize(string, buffer);
+        buffer.setInt(lengthIndex, buffer.writerIndex() - lengthIndex - Integer.BYTES);
+    }
+
+    @Override
+    public RpcRequest parse(ByteBuf buffer, int length) {
+        int len = buffer.readInt();
+        if (len == RpcRequestSerializer.SIGNED_METHOD_ID) {
+            int methodId = buffer.readInt();
+            int methodSignature = buffer.readInt();
+            return new RpcRequest(methodId, methodSignature, buffer.readSlice(buffer.readInt()));
+        }
+        if (len < 0) {
+            int methodId = -len - 1;
+            return new RpcRequest(methodId, buffer.readSlice(buffer.readInt()));
+        }
+        String interfaceName = stringSerializer.parse(buffer, len);
+        String methodName = stringSerializer.parse(buffer, buffer.readInt());
+        return new RpcRequest(interfaceName, methodName, buffer.readSlice(buffer.readInt()));
+    }
+
+    @Override
+    public byte type() {
+        return Types.TYPE_RPC_REQUEST;
+    }
+
+    @Override
+    public Class<RpcRequest> getSerializeClass() {
+        return RpcRequest.class;
+    }
+}
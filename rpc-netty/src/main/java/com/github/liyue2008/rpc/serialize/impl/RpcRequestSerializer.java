@@ -20,12 +20,48 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 /**
+ * 用服务名和方法名调用时：
+ * Interface name:
+ *      Length:                         4 bytes
+ *      Serialized name bytes:          variable length
+ * Method name:
+ *      Length:                         4 bytes
+ *      Serialized name bytes:          variable length
+ * Arguments:
+ *      Length:                         4 bytes
+ *      Serialized arguments:           variable length
+ *
+ * 用方法ID调用时，第一个字段是负数：
+ * -(Method id) - 1                     4 bytes
+ * Arguments:
+ *      Length:                         4 bytes
+ *      Serialized arguments:           variable length
+ *
+ * 用方法ID调用并且携带方法签名时，第一个字段是{@link #SIGNED_METHOD_ID}：
+ * SIGNED_METHOD_ID                     4 bytes
+ * Method id                            4 bytes
+ * Method signature                     4 bytes
+ * Arguments:
+ *      Length:                         4 bytes
+ *      Serialized arguments:           variable length
+ *
  * @author LiYue
  * Date: 2019/9/27
  */
 public class RpcRequestSerializer implements Serializer<RpcRequest> {
+    /**
+     * 带签名的方法ID请求的标记，不会和-(Method id) - 1冲突
+     */
+    static final int SIGNED_METHOD_ID = Integer.MIN_VALUE;
+
     @Override
     public int size(RpcRequest request) {
+        if (request.getMethodId() >= 0 && 0 != request.getMethodSignature()) {
+            return Integer.BYTES * 3 + Integer.BYTES + request.getSerializedArguments().length;
+        }
+        if (request.getMethodId() >= 0) {
+            return Integer.BYTES + Integer.BYTES + request.getSerializedArguments().length;
+        }
         return Integer.BYTES + request.getInterfaceName().getBytes(StandardCharsets.UTF_8).length +
                 Integer.BYTES + request.getMethodName().getBytes(StandardCharsets.UTF_8).length +
                 Integer.BYTES + request.getSerializedArguments().length;
@@ -34,13 +70,22 @@ public class RpcRequestSerializer implements Serializer<RpcRequest> {
     @Override
     public void serialize(RpcRequest request, byte[] bytes, int offset, int length) {
         ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
-        byte [] tmpBytes = request.getInterfaceName().getBytes(StandardCharsets.UTF_8);
-        buffer.putInt(tmpBytes.length);
-        buffer.put(tmpBytes);
+        byte [] tmpBytes;
+        if (request.getMethodId() >= 0 && 0 != request.getMethodSignature()) {
+            buffer.putInt(SIGNED_METHOD_ID);
+            buffer.putInt(request.getMethodId());
+            buffer.putInt(request.getMethodSignature());
+        } else if (request.getMethodId() >= 0) {
+            buffer.putInt(-request.getMethodId() - 1);
+        } else {
+            tmpBytes = request.getInterfaceName().getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(tmpBytes.length);
+            buffer.put(tmpBytes);
 
-        tmpBytes = request.getMethodName().getBytes(StandardCharsets.UTF_8);
-        buffer.putInt(tmpBytes.length);
-        buffer.put(tmpBytes);
+            tmpBytes = request.getMethodName().getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(tmpBytes.length);
+            buffer.put(tmpBytes);
+        }
 
         tmpBytes = request.getSerializedArguments();
         buffer.putInt(tmpBytes.length);
@@ -51,6 +96,20 @@ public class RpcRequestSerializer implements Serializer<RpcRequest> {
     public RpcRequest parse(byte[] bytes, int offset, int length) {
         ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
         int len = buffer.getInt();
+        if (len == SIGNED_METHOD_ID) {
+            int methodId = buffer.getInt();
+            int methodSignature = buffer.getInt();
+            byte [] serializedArgs = new byte[buffer.getInt()];
+            buffer.get(serializedArgs);
+            return new RpcRequest(methodId, methodSignature, serializedArgs);
+        }
+        if (len < 0) {
+            int methodId = -len - 1;
+            len = buffer.getInt();
+            byte [] serializedArgs = new byte[len];
+            buffer.get(serializedArgs);
+            return new RpcRequest(methodId, serializedArgs);
+        }
         byte [] tmpBytes = new byte[len];
         buffer.get(tmpBytes);
         String interfaceName = new String(tmpBytes, StandardCharsets.UTF_8);
@@ -0,0 +1,66 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.serialize.impl;
+
+import com.github.liyue2008.rpc.serialize.BufferSerializer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 和{@link StringSerializer}格式相同，直接读写ByteBuf。
+ * 序列化时先按ASCII逐个字符写入，遇到第一个非ASCII字符后，剩下的部分再按UTF-8编码；
+ * 纯ASCII的字符串只需要一次遍历，也不会像UTF-8编码那样预留3倍的空间。
+ * @author LiYue
+ * Date: 2019/10/14
+ */
+public class StringBufferSerializer implements BufferSerializer<String> {
+    @Override
+    public void serialize(String entry, ByteBuf buffer) {
+        int length = entry.length();
+        buffer.ensureWritable(length);
+        int writerIndex = buffer.writerIndex();
+        int i = 0;
+        for (; i < length; i++) {
+            char c = entry.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            buffer.setByte(writerIndex + i, c);
+        }
+        buffer.writerIndex(writerIndex + i);
+        if (i < length) {
+            ByteBufUtil.writeUtf8(buffer, entry.subSequence(i, length));
+        }
+    }
+
+    @Override
+    public String parse(ByteBuf buffer, int length) {
+        // JDK解码UTF-8时对纯ASCII的数据有快速路径
+        String entry = buffer.toString(buffer.readerIndex(), length, StandardCharsets.UTF_8);
+        buffer.skipBytes(length);
+        return entry;
+    }
+
+    @Override
+    public byte type() {
+        return Types.TYPE_STRING;
+    }
+
+    @Override
+    public Class<String> getSerializeClass() {
+        return String.class;
+    }
+}
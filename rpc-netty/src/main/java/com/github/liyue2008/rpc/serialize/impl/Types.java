@@ -21,4 +21,5 @@ class Types {
     final static int TYPE_STRING = 0;
     final static int TYPE_METADATA = 100;
     final static int TYPE_RPC_REQUEST = 101;
+    final static int TYPE_METHOD_ID_TABLE = 102;
 }
@@ -0,0 +1,91 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.server;
+
+import com.github.liyue2008.rpc.serialize.BufferSerializer;
+import com.github.liyue2008.rpc.serialize.SerializeSupport;
+import com.github.liyue2008.rpc.transport.InboundStream;
+import io.netty.buffer.ByteBuf;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 双向流方法的参数，在服务方法的线程中阻塞地逐个读取并反序列化客户端发来的消息。
+ * 不是线程安全的，只能在一个线程中使用。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+class InboundIterator<T> implements Iterator<T>, AutoCloseable {
+    private final InboundStream inbound;
+    private final BufferSerializer<?> serializer;
+    private T next = null;
+    private boolean fetched = false;
+    private boolean done = false;
+
+    InboundIterator(InboundStream inbound, BufferSerializer<?> serializer) {
+        this.inbound = inbound;
+        this.serializer = serializer;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean hasNext() {
+        if (fetched) {
+            return true;
+        }
+        if (done) {
+            return false;
+        }
+        ByteBuf message;
+        try {
+            message = inbound.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new RuntimeException(e);
+        }
+        if (null == message) {
+            done = true;
+            return false;
+        }
+        try {
+            next = (T) SerializeSupport.parse(message, message.readableBytes(), serializer);
+        } finally {
+            message.release();
+        }
+        fetched = true;
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        T element = next;
+        next = null;
+        fetched = false;
+        return element;
+    }
+
+    /**
+     * 不再读取后面的消息
+     */
+    @Override
+    public void close() {
+        done = true;
+        inbound.close();
+    }
+}
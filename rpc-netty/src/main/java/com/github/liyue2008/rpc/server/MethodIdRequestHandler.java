@@ -0,0 +1,54 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.server;
+
+import com.github.liyue2008.rpc.client.ServiceTypes;
+import com.github.liyue2008.rpc.serialize.SerializeSupport;
+import com.github.liyue2008.rpc.spi.ServiceSupport;
+import com.github.liyue2008.rpc.spi.Singleton;
+import com.github.liyue2008.rpc.transport.RequestHandler;
+import com.github.liyue2008.rpc.transport.command.Command;
+import com.github.liyue2008.rpc.transport.command.Header;
+import com.github.liyue2008.rpc.transport.command.ResponseHeader;
+
+/**
+ * 处理客户端的方法ID查询请求，返回服务的所有方法ID
+ * @author LiYue
+ * Date: 2019/10/14
+ */
+@Singleton
+public class MethodIdRequestHandler implements RequestHandler {
+    private RpcRequestHandler rpcRequestHandler = null;
+
+    @Override
+    public Command handle(Command requestCommand) {
+        Header header = requestCommand.getHeader();
+        String serviceName = SerializeSupport.parse(requestCommand.getPayload());
+        return new Command(new ResponseHeader(type(), header.getVersion(), header.getRequestId()),
+                SerializeSupport.serialize(getRpcRequestHandler().getMethodIdTable(serviceName)));
+    }
+
+    private synchronized RpcRequestHandler getRpcRequestHandler() {
+        if (null == rpcRequestHandler) {
+            // RpcRequestHandler是单例，与NettyRpcAccessPoint中注册服务用的是同一个实例
+            rpcRequestHandler = (RpcRequestHandler) ServiceSupport.load(ServiceProviderRegistry.class);
+        }
+        return rpcRequestHandler;
+    }
+
+    @Override
+    public int type() {
+        return ServiceTypes.TYPE_METHOD_ID_REQUEST;
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.server;
+
+import com.github.liyue2008.rpc.client.stubs.RpcArguments;
+import com.github.liyue2008.rpc.client.stubs.RpcMethod;
+import com.github.liyue2008.rpc.serialize.BufferSerializer;
+import com.github.liyue2008.rpc.serialize.SerializeSupport;
+import com.github.liyue2008.rpc.transport.InboundStream;
+import com.github.liyue2008.rpc.transport.ResponseStream;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * 服务的一个方法的调用器，在注册服务时预先构建好：
+ * 绑定了服务提供者的MethodHandle（或者编译时生成的分发器），以及参数和返回值的序列化实现。
+ * @author LiYue
+ * Date: 2019/10/12
+ */
+class MethodInvoker {
+    private final RpcMethod rpcMethod;
+    private final Invocation invocation;
+    private final Executor executor;
+    private final BufferSerializer<?> [] argumentSerializers;
+    private final BufferSerializer<Object> resultSerializer;
+    /**
+     * 服务方法的返回值是CompletableFuture或者CompletionStage，异步返回结果
+     */
+    private final boolean async;
+    /**
+     * 服务方法的返回值是Iterator，流式返回结果
+     */
+    private final boolean stream;
+    /**
+     * 双向流中客户端消息的序列化实现，不是双向流方法时为null
+     */
+    private final BufferSerializer<?> messageSerializer;
+
+    private MethodInvoker(RpcMethod rpcMethod, Invocation invocation, Executor executor) {
+        this.rpcMethod = rpcMethod;
+        this.invocation = invocation;
+        this.executor = executor;
+        Method method = rpcMethod.getMethod();
+        if (rpcMethod.isBidiStream()) {
+            if (null == executor) {
+                // 读取客户端消息需要阻塞等待，不能在IO线程上执行
+                throw new IllegalArgumentException(String.format(
+                        "Bidirectional stream method %s can not be executed in the I/O thread!", rpcMethod.getName()));
+            }
+            this.argumentSerializers = new BufferSerializer<?>[0];
+            this.messageSerializer = SerializeSupport.bufferSerializerOf(typeArgumentOf(method.getGenericParameterTypes()[0]));
+        } else {
+            Class<?> [] parameterTypes = method.getParameterTypes();
+            this.argumentSerializers = new BufferSerializer<?>[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                argumentSerializers[i] = SerializeSupport.bufferSerializerOf(boxedType(parameterTypes[i]));
+            }
+            this.messageSerializer = null;
+        }
+        this.async = CompletionStage.class.isAssignableFrom(method.getReturnType());
+        this.stream = rpcMethod.isStream();
+        this.resultSerializer = async || stream ?
+                serializerOf(typeArgumentOf(method.getGenericReturnType())) : serializerOf(method.getReturnType());
+    }
+
+    /**
+     * 构建方法的调用器
+     * @param rpcMethod 服务方法
+     * @param serviceProvider 服务提供者
+     * @param dispatcher 编译时生成的分发器，没有时为null，使用MethodHandle调用
+     * @param executor 执行服务方法的线程池，为null时在IO线程上执行
+     */
+    static MethodInvoker of(RpcMethod rpcMethod, Object serviceProvider, ServiceDispatcher dispatcher, Executor executor) throws IllegalAccessException {
+        if (null != dispatcher) {
+            int methodIndex = rpcMethod.getIndex();
+            return new MethodInvoker(rpcMethod, arguments -> dispatcher.invoke(serviceProvider, methodIndex, arguments), executor);
+        }
+        MethodHandle methodHandle = unreflect(rpcMethod.getMethod())
+                .bindTo(serviceProvider)
+                .asSpreader(Object[].class, rpcMethod.getMethod().getParameterCount())
+                .asType(MethodType.methodType(Object.class, Object[].class));
+        return new MethodInvoker(rpcMethod, arguments -> (Object) methodHandle.invokeExact(arguments), executor);
+    }
+
+    RpcMethod getRpcMethod() {
+        return rpcMethod;
+    }
+
+    Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * 反序列化参数，调用服务方法，在返回的CompletableFuture中给出序列化之后的返回值。
+     * 参数在这个方法返回之前就已经读取完毕；服务方法同步返回时，返回的CompletableFuture已经完成。
+     * @param serializedArguments 序列化后的参数
+     * @return 序列化之后的返回值，调用方负责释放
+     */
+    CompletableFuture<ByteBuf> invoke(ByteBuf serializedArguments) throws Throwable {
+        Object [] arguments = RpcArguments.parse(serializedArguments, argumentSerializers);
+        Object result = invocation.invoke(arguments);
+        if (async && null != result) {
+            return ((CompletionStage<?>) result).toCompletableFuture().thenApply(this::serialize);
+        }
+        return CompletableFuture.completedFuture(serialize(result));
+    }
+
+    /**
+     * 调用单向方法，不序列化返回值
+     */
+    void invokeOneWay(ByteBuf serializedArguments) throws Throwable {
+        invocation.invoke(RpcArguments.parse(serializedArguments, argumentSerializers));
+    }
+
+    boolean isStream() {
+        return stream;
+    }
+
+    boolean isBidiStream() {
+        return null != messageSerializer;
+    }
+
+    /**
+     * 调用返回值是Iterator的服务方法，返回的数据源逐个序列化Iterator中的元素。
+     * 参数在这个方法返回之前就已经读取完毕。
+     */
+    ResponseStream invokeStream(ByteBuf serializedArguments) throws Throwable {
+        Object [] arguments = RpcArguments.parse(serializedArguments, argumentSerializers);
+        return responseStream((Iterator<?>) invocation.invoke(arguments), null);
+    }
+
+    /**
+     * 调用双向流方法，服务方法的参数是逐个反序列化客户端消息的Iterator
+     * @param inbound 客户端发来的消息，数据源关闭时一起关闭
+     */
+    ResponseStream invokeBidiStream(InboundStream inbound) throws Throwable {
+        Object [] arguments = new Object[] {new InboundIterator<>(inbound, messageSerializer)};
+        try {
+            return responseStream((Iterator<?>) invocation.invoke(arguments), inbound);
+        } catch (Throwable t) {
+            inbound.close();
+            throw t;
+        }
+    }
+
+    private ResponseStream responseStream(Iterator<?> iterator, InboundStream inbound) {
+        return new ResponseStream() {
+            @Override
+            public ByteBuf next() {
+                return null != iterator && iterator.hasNext() ? serialize(iterator.next()) : null;
+            }
+
+            @Override
+            public void close() {
+                if (null != inbound) {
+                    inbound.close();
+                }
+                // 服务提供者返回的Iterator可以实现AutoCloseable，在流结束或者被取消时释放资源
+                if (iterator instanceof AutoCloseable) {
+                    try {
+                        ((AutoCloseable) iterator).close();
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }
+        };
+    }
+
+    private ByteBuf serialize(Object result) {
+        ByteBuf buffer = ByteBufAllocator.DEFAULT.buffer();
+        try {
+            SerializeSupport.serialize(result, buffer, resultSerializer);
+        } catch (Throwable t) {
+            buffer.release();
+            throw t;
+        }
+        return buffer;
+    }
+
+    /**
+     * CompletableFuture&lt;T&gt;或者Iterator&lt;T&gt;中T的类型，无法确定时返回Object
+     */
+    private static Class<?> typeArgumentOf(Type type) {
+        if (type instanceof ParameterizedType) {
+            Type valueType = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (valueType instanceof Class) {
+                return (Class<?>) valueType;
+            }
+        }
+        return Object.class;
+    }
+
+    private static MethodHandle unreflect(Method method) throws IllegalAccessException {
+        try {
+            return MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            // 服务接口不是public的
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BufferSerializer<Object> serializerOf(Class<?> type) {
+        return (BufferSerializer<Object>) SerializeSupport.bufferSerializerOf(boxedType(type));
+    }
+
+    private static Class<?> boxedType(Class<?> type) {
+        if (!type.isPrimitive()) return type;
+        if (type == boolean.class) return Boolean.class;
+        if (type == byte.class) return Byte.class;
+        if (type == char.class) return Character.class;
+        if (type == short.class) return Short.class;
+        if (type == int.class) return Integer.class;
+        if (type == long.class) return Long.class;
+        if (type == float.class) return Float.class;
+        if (type == double.class) return Double.class;
+        return Void.class;
+    }
+
+    private interface Invocation {
+        Object invoke(Object [] arguments) throws Throwable;
+    }
+}
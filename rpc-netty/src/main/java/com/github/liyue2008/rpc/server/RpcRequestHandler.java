@@ -13,21 +13,36 @@
  */
 package com.github.liyue2008.rpc.server;
 
+import com.github.liyue2008.rpc.ExecutorConfig;
 import com.github.liyue2008.rpc.client.ServiceTypes;
+import com.github.liyue2008.rpc.client.stubs.MethodIdTable;
+import com.github.liyue2008.rpc.client.stubs.RpcMethod;
 import com.github.liyue2008.rpc.client.stubs.RpcRequest;
 import com.github.liyue2008.rpc.serialize.SerializeSupport;
+import com.github.liyue2008.rpc.spi.ServiceSupport;
 import com.github.liyue2008.rpc.spi.Singleton;
 import com.github.liyue2008.rpc.transport.RequestHandler;
 import com.github.liyue2008.rpc.transport.command.Code;
 import com.github.liyue2008.rpc.transport.command.Command;
 import com.github.liyue2008.rpc.transport.command.Header;
 import com.github.liyue2008.rpc.transport.command.ResponseHeader;
+import com.github.liyue2008.rpc.transport.command.StreamRequest;
+import com.github.liyue2008.rpc.transport.command.StreamResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 /**
  * @author LiYue
@@ -36,44 +51,195 @@ import java.util.Map;
 @Singleton
 public class RpcRequestHandler implements RequestHandler, ServiceProviderRegistry {
     private static final Logger logger = LoggerFactory.getLogger(RpcRequestHandler.class);
-    private Map<String/*service name*/, Object/*service provider*/> serviceProviders = new HashMap<>();
+    /**
+     * 分发表：服务名 -> 方法名 -> 方法的调用器，在注册服务时构建
+     */
+    private final Map<String/*service name*/, Map<String/*method name*/, MethodInvoker>> dispatchTable = new ConcurrentHashMap<>();
+    /**
+     * 按照方法ID排列的调用器，注册服务时整体替换
+     */
+    private volatile MethodInvoker [] invokers = new MethodInvoker[0];
+    private final Map<String/*service name*/, MethodIdTable> methodIdTables = new HashMap<>();
+    private Collection<ServiceDispatcher> prebuiltDispatchers = null;
+    private final ServiceExecutors serviceExecutors = new ServiceExecutors();
 
+    /**
+     * 同步等待{@link #handleAsync(Command)}的结果
+     */
     @Override
     public Command handle(Command requestCommand) {
+        return handleAsync(requestCommand).join();
+    }
+
+    @Override
+    public CompletableFuture<Command> handleAsync(Command requestCommand) {
+        return dispatch(requestCommand).handle();
+    }
+
+    /**
+     * 在IO线程上解析请求，查找请求的服务方法，按照注册服务时指定的方式执行。
+     * 解析出的RpcRequest和服务方法直接交给{@link #handleAsync(Command, RpcRequest, MethodInvoker)}
+     */
+    @Override
+    public Dispatch dispatch(Command requestCommand) {
+        Header header = requestCommand.getHeader();
+        RpcRequest rpcRequest;
+        MethodInvoker methodInvoker;
+        try {
+            // 从payload中反序列化RpcRequest，调用参数引用payload的切片
+            rpcRequest = SerializeSupport.parse(requestCommand.getPayloadBuffer().duplicate());
+            // 在分发表中查找rpcRequest中需要的服务方法
+            methodInvoker = findMethodInvoker(rpcRequest);
+        } catch (Throwable t) {
+            // 解析失败的请求直接在IO线程上处理，返回UNKNOWN_ERROR错误响应
+            logger.warn("Exception: ", t);
+            return new Dispatch(null, () -> CompletableFuture.completedFuture(errorResponse(header, Code.UNKNOWN_ERROR, t.getMessage())));
+        }
+        return new Dispatch(null == methodInvoker ? null : methodInvoker.getExecutor(),
+                () -> handleAsync(requestCommand, rpcRequest, methodInvoker));
+    }
+
+    private CompletableFuture<Command> handleAsync(Command requestCommand, RpcRequest rpcRequest, MethodInvoker methodInvoker) {
         Header header = requestCommand.getHeader();
-        // 从payload中反序列化RpcRequest
-        RpcRequest rpcRequest = SerializeSupport.parse(requestCommand.getPayload());
         try {
-            // 查找所有已注册的服务提供方，寻找rpcRequest中需要的服务
-            Object serviceProvider = serviceProviders.get(rpcRequest.getInterfaceName());
-            if(serviceProvider != null) {
-                // 找到服务提供者，利用Java反射机制调用服务的对应方法
-                String arg = SerializeSupport.parse(rpcRequest.getSerializedArguments());
-                Method method = serviceProvider.getClass().getMethod(rpcRequest.getMethodName(), String.class);
-                String result = (String ) method.invoke(serviceProvider, arg);
-                // 把结果封装成响应命令并返回
-                return new Command(new ResponseHeader(type(), header.getVersion(), header.getRequestId()), SerializeSupport.serialize(result));
+            if(methodInvoker != null && header.hasFlag(Header.FLAG_ONE_WAY)) {
+                // 单向请求：只调用服务方法，不构建响应
+                methodInvoker.invokeOneWay(argumentsOf(rpcRequest));
+                return CompletableFuture.completedFuture(null);
+            }
+            if(methodInvoker != null && methodInvoker.isBidiStream()) {
+                // 双向流方法：服务方法从传输层的接收队列中读取客户端的消息
+                if (!(requestCommand instanceof StreamRequest)) {
+                    return CompletableFuture.completedFuture(
+                            errorResponse(header, Code.UNKNOWN_ERROR, "Bidirectional stream method requires a stream request!"));
+                }
+                ResponseHeader responseHeader = new ResponseHeader(type(), header.getVersion(), header.getRequestId());
+                return CompletableFuture.completedFuture(new StreamResponse(responseHeader,
+                        methodInvoker.invokeBidiStream(((StreamRequest) requestCommand).getInbound())));
+            }
+            if(methodInvoker != null && methodInvoker.isStream()) {
+                // 流式方法：返回数据源，由传输层按照客户端的信用逐个发送元素
+                ResponseHeader responseHeader = new ResponseHeader(type(), header.getVersion(), header.getRequestId());
+                return CompletableFuture.completedFuture(
+                        new StreamResponse(responseHeader, methodInvoker.invokeStream(argumentsOf(rpcRequest))));
             }
-            // 如果没找到，返回NO_PROVIDER错误响应。
-            logger.warn("No service Provider of {}#{}(String)!", rpcRequest.getInterfaceName(), rpcRequest.getMethodName());
-            return new Command(new ResponseHeader(type(), header.getVersion(), header.getRequestId(), Code.NO_PROVIDER.getCode(), "No provider!"), new byte[0]);
+            if(methodInvoker != null) {
+                // 找到服务提供者，调用服务的对应方法，返回值是CompletableFuture的方法在完成时才返回响应
+                return methodInvoker.invoke(argumentsOf(rpcRequest)).handle((result, t) -> {
+                    if (null == t) {
+                        // 把结果封装成响应命令并返回
+                        return new Command(new ResponseHeader(type(), header.getVersion(), header.getRequestId()), result);
+                    }
+                    Throwable cause = t instanceof CompletionException && null != t.getCause() ? t.getCause() : t;
+                    logger.warn("Exception: ", cause);
+                    return errorResponse(header, Code.UNKNOWN_ERROR, cause.getMessage());
+                });
+            }
+            if (rpcRequest.getMethodId() >= 0) {
+                // 不认识的方法ID，客户端收到这个错误后会用服务名和方法名重新调用
+                return CompletableFuture.completedFuture(errorResponse(header, Code.UNKNOWN_METHOD_ID, "Unknown method id!"));
+            }
+            // 如果没找到，返回NO_PROVIDER错误响应。方法名为空的请求是客户端在探测服务端的版本，不记录日志
+            if (!rpcRequest.getMethodName().isEmpty()) {
+                logger.warn("No service Provider of {}#{}!", rpcRequest.getInterfaceName(), rpcRequest.getMethodName());
+            }
+            return CompletableFuture.completedFuture(errorResponse(header, Code.NO_PROVIDER, "No provider!"));
         } catch (Throwable t) {
             // 发生异常，返回UNKNOWN_ERROR错误响应。
             logger.warn("Exception: ", t);
-            return new Command(new ResponseHeader(type(), header.getVersion(), header.getRequestId(), Code.UNKNOWN_ERROR.getCode(), t.getMessage()), new byte[0]);
+            return CompletableFuture.completedFuture(errorResponse(header, Code.UNKNOWN_ERROR, t.getMessage()));
         }
     }
 
+    private Command errorResponse(Header header, Code code, String error) {
+        return new Command(new ResponseHeader(type(), header.getVersion(), header.getRequestId(), code.getCode(), error), new byte[0]);
+    }
+
+    private MethodInvoker findMethodInvoker(RpcRequest rpcRequest) {
+        if (rpcRequest.getMethodId() >= 0) {
+            MethodInvoker [] invokers = this.invokers;
+            if (rpcRequest.getMethodId() >= invokers.length) {
+                return null;
+            }
+            MethodInvoker methodInvoker = invokers[rpcRequest.getMethodId()];
+            // 签名不一致说明方法ID是和另一个服务端进程（比如重启之前）协商的，指向的已经是别的方法。
+            // 旧版本的客户端不发送签名，只能信任它的方法ID
+            if (0 != rpcRequest.getMethodSignature() &&
+                    rpcRequest.getMethodSignature() != methodInvoker.getRpcMethod().getSignature()) {
+                return null;
+            }
+            return methodInvoker;
+        }
+        Map<String, MethodInvoker> methodInvokers = dispatchTable.get(rpcRequest.getInterfaceName());
+        return null == methodInvokers ? null : methodInvokers.get(rpcRequest.getMethodName());
+    }
+
+    private static ByteBuf argumentsOf(RpcRequest rpcRequest) {
+        ByteBuf argumentsBuffer = rpcRequest.getArgumentsBuffer();
+        return null != argumentsBuffer ? argumentsBuffer : Unpooled.wrappedBuffer(rpcRequest.getSerializedArguments());
+    }
+
+    /**
+     * 返回服务的所有方法ID，服务不存在时返回空表。客户端用方法ID调用时需要同时携带方法签名
+     */
+    synchronized MethodIdTable getMethodIdTable(String serviceName) {
+        MethodIdTable methodIdTable = new MethodIdTable();
+        methodIdTable.setSignatureRequired(true);
+        if (methodIdTables.containsKey(serviceName)) {
+            methodIdTable.putAll(methodIdTables.get(serviceName));
+        }
+        return methodIdTable;
+    }
+
     @Override
     public int type() {
         return ServiceTypes.TYPE_RPC_REQUEST;
     }
 
     @Override
-    public synchronized <T> void addServiceProvider(Class<? extends T> serviceClass, T serviceProvider) {
-        serviceProviders.put(serviceClass.getCanonicalName(), serviceProvider);
-        logger.info("Add service: {}, provider: {}.",
+    public synchronized <T> void addServiceProvider(Class<? extends T> serviceClass, T serviceProvider, ExecutorConfig executorConfig) {
+        Executor executor = serviceExecutors.of(executorConfig);
+        ServiceDispatcher dispatcher = findPrebuiltDispatcher(serviceClass);
+        if (null != dispatcher) {
+            logger.info("Use prebuilt dispatcher: {}.", dispatcher.getClass().getCanonicalName());
+        }
+        Map<String, MethodInvoker> methodInvokers = new HashMap<>();
+        MethodIdTable methodIdTable = methodIdTables.computeIfAbsent(serviceClass.getCanonicalName(), k -> new MethodIdTable());
+        List<MethodInvoker> invokers = new ArrayList<>(Arrays.asList(this.invokers));
+        for (RpcMethod rpcMethod : RpcMethod.methodsOf(serviceClass)) {
+            MethodInvoker methodInvoker;
+            try {
+                methodInvoker = MethodInvoker.of(rpcMethod, serviceProvider, dispatcher, executor);
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException(e);
+            }
+            methodInvokers.put(rpcMethod.getName(), methodInvoker);
+            // 重复注册同一个服务时沿用之前分配的方法ID
+            Integer methodId = methodIdTable.get(rpcMethod.getName());
+            if (null == methodId) {
+                methodIdTable.put(rpcMethod.getName(), invokers.size());
+                invokers.add(methodInvoker);
+            } else {
+                invokers.set(methodId, methodInvoker);
+            }
+        }
+        dispatchTable.put(serviceClass.getCanonicalName(), methodInvokers);
+        this.invokers = invokers.toArray(new MethodInvoker[0]);
+        logger.info("Add service: {}, provider: {}, executor: {}.",
                 serviceClass.getCanonicalName(),
-                serviceProvider.getClass().getCanonicalName());
+                serviceProvider.getClass().getCanonicalName(),
+                executorConfig.getMode());
+    }
+
+    private ServiceDispatcher findPrebuiltDispatcher(Class<?> serviceClass) {
+        if (null == prebuiltDispatchers) {
+            prebuiltDispatchers = ServiceSupport.loadAll(ServiceDispatcher.class);
+        }
+        for (ServiceDispatcher dispatcher : prebuiltDispatchers) {
+            if (dispatcher.getServiceClass() == serviceClass) {
+                return dispatcher;
+            }
+        }
+        return null;
     }
 }
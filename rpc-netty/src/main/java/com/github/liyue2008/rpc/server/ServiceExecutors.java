@@ -0,0 +1,84 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.server;
+
+import com.github.liyue2008.rpc.ExecutorConfig;
+
+import java.lang.reflect.Method;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 根据{@link ExecutorConfig}创建执行服务方法的线程池，同一个配置实例只创建一次。
+ * 线程池满时抛出{@link java.util.concurrent.RejectedExecutionException}，由调用方返回服务端繁忙的错误响应。
+ * @author LiYue
+ * Date: 2019/10/15
+ */
+class ServiceExecutors {
+    private final Map<ExecutorConfig, Executor> executors = new IdentityHashMap<>();
+    private final AtomicInteger poolIndex = new AtomicInteger(0);
+
+    /**
+     * @return 执行服务方法的线程池，直接在IO线程上执行时返回null
+     */
+    synchronized Executor of(ExecutorConfig executorConfig) {
+        if (executorConfig.getMode() == ExecutorConfig.Mode.DIRECT) {
+            return null;
+        }
+        return executors.computeIfAbsent(executorConfig, this::newExecutor);
+    }
+
+    private Executor newExecutor(ExecutorConfig executorConfig) {
+        if (executorConfig.getMode() == ExecutorConfig.Mode.VIRTUAL_THREAD) {
+            return newVirtualThreadExecutor();
+        }
+        BlockingQueue<Runnable> queue = executorConfig.getQueueCapacity() > 0 ?
+                new ArrayBlockingQueue<>(executorConfig.getQueueCapacity()) : new SynchronousQueue<>();
+        String namePrefix = "rpc-service-executor-" + poolIndex.incrementAndGet() + "-";
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                executorConfig.getThreads(), executorConfig.getThreads(),
+                60L, TimeUnit.SECONDS, queue,
+                r -> {
+                    Thread thread = new Thread(r, namePrefix + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * 项目按照Java 8编译，通过反射调用JDK 21的Executors.newVirtualThreadPerTaskExecutor()
+     */
+    private static Executor newVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) method.invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Virtual thread executor requires JDK 21 or later!");
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
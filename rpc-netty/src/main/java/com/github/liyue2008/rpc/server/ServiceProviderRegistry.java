@@ -13,10 +13,19 @@
  */
 package com.github.liyue2008.rpc.server;
 
+import com.github.liyue2008.rpc.ExecutorConfig;
+
 /**
  * @author LiYue
  * Date: 2019/9/29
  */
 public interface ServiceProviderRegistry {
-    <T> void addServiceProvider(Class<? extends T> serviceClass, T serviceProvider);
+    default <T> void addServiceProvider(Class<? extends T> serviceClass, T serviceProvider) {
+        addServiceProvider(serviceClass, serviceProvider, ExecutorConfig.defaultConfig());
+    }
+
+    /**
+     * @param executorConfig 执行这个服务的方法的方式
+     */
+    <T> void addServiceProvider(Class<? extends T> serviceClass, T serviceProvider, ExecutorConfig executorConfig);
 }
@@ -0,0 +1,63 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 客户端一个正在接收的流，绑定在发送请求的那个连接上。
+ * 服务端最多只发送客户端授予的信用数量个元素，客户端每消费一部分元素后再授予新的信用，
+ * 这样接收不过来的元素不会堆积在任何一端的缓冲区中。
+ * 双向流反过来也一样：客户端只在有服务端授予的信用时才发送消息。
+ * @author LiYue
+ * Date: 2019/10/18
+ */
+public interface ClientStream {
+    /**
+     * 授予服务端信用，服务端可以再发送credits个元素
+     */
+    void grant(int credits);
+
+    /**
+     * 取消这个流，服务端停止发送，之后收到的响应都会被丢弃
+     */
+    void cancel();
+
+    /**
+     * 在双向流中向服务端发送一条消息，没有信用时阻塞等待，最多等待{@link #timeoutMillis()}。
+     * 消息写出之后由编码器释放，没有发送时在这个方法中释放。
+     * @param message 序列化之后的消息
+     * @return 流已经结束或者被取消时返回false，消息没有发送
+     * @throws TimeoutException 超时之前服务端一直没有授予信用
+     * @throws IllegalStateException 不是双向流，或者已经调用过{@link #halfClose()}
+     */
+    boolean send(ByteBuf message) throws InterruptedException, TimeoutException;
+
+    /**
+     * 双向流的客户端消息发送完毕，之后仍然可以继续接收服务端的响应
+     */
+    void halfClose();
+
+    /**
+     * 流控窗口的大小，发送请求时已经授予了这么多信用
+     */
+    int window();
+
+    /**
+     * 等待下一个元素的超时时间
+     */
+    long timeoutMillis();
+}
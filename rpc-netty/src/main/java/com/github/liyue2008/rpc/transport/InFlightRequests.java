@@ -13,60 +13,212 @@
  */
 package com.github.liyue2008.rpc.transport;
 
+import com.github.liyue2008.rpc.ClientConfig;
+import com.github.liyue2008.rpc.transport.command.Command;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
 import java.io.Closeable;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
 
 /**
+ * 一个连接上的在途请求，同时负责为这个连接上的请求分配ID。
+ * 请求ID只需要在连接内唯一，ID回绕之后跳过仍然在途的ID。
+ * 连接断开时调用{@link #close()}，所有在途请求立即失败。
+ * 每个请求在放入时向时间轮注册超时任务，收到响应时取消，取消的时间复杂度是O(1)；
+ * 超时的请求立即以{@link TimeoutException}失败，不用等待扫描。
+ * 请求按照ID分段存放在以int为键的哈希表中，避免装箱，也减少了锁竞争。
  * @author LiYue
  * Date: 2019/9/20
  */
 public class InFlightRequests implements Closeable {
-    private final static long TIMEOUT_SEC = 10L;
-    private final Semaphore semaphore = new Semaphore(10);
-    private final Map<Integer, ResponseFuture> futureMap = new ConcurrentHashMap<>();
-    private final ScheduledExecutorService scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
-    private final ScheduledFuture scheduledFuture;
+    private final static int SEGMENT_COUNT = 16;
+    /**
+     * 所有在途请求共用一个时间轮，每10毫秒一格
+     */
+    private final static Timer TIMER = new HashedWheelTimer(
+            new DefaultThreadFactory("rpc-request-timeout", true), 10L, TimeUnit.MILLISECONDS, 512);
+    private final int maxInFlightRequests;
+    private final Semaphore semaphore;
+    private final long timeoutMillis;
+    private final long waitMillis;
+    private final int streamWindow;
+    private final IntObjectHashMap<ResponseFuture> [] segments;
+    private final AtomicInteger nextRequestId = new AtomicInteger(0);
+    private volatile boolean closed = false;
+
     public InFlightRequests() {
-        scheduledFuture = scheduledExecutorService.scheduleAtFixedRate(this::removeTimeoutFutures, TIMEOUT_SEC, TIMEOUT_SEC, TimeUnit.SECONDS);
+        this(new ClientConfig());
     }
 
-    public void put(ResponseFuture responseFuture) throws InterruptedException, TimeoutException {
-        if(semaphore.tryAcquire(TIMEOUT_SEC, TimeUnit.SECONDS)) {
-            futureMap.put(responseFuture.getRequestId(), responseFuture);
-        } else {
-            throw new TimeoutException();
+    public InFlightRequests(ClientConfig clientConfig) {
+        this.maxInFlightRequests = clientConfig.getMaxInFlightRequests();
+        this.semaphore = new Semaphore(maxInFlightRequests);
+        this.timeoutMillis = clientConfig.getRequestTimeoutMillis();
+        this.waitMillis = clientConfig.getInFlightWaitMillis();
+        this.streamWindow = clientConfig.getStreamWindow();
+        this.segments = newSegments(SEGMENT_COUNT);
+    }
+
+    /**
+     * Java不能直接创建泛型数组，只能创建原始类型的数组再转换，数组中的元素都是新创建的同一类型的Map
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static IntObjectHashMap<ResponseFuture> [] newSegments(int count) {
+        IntObjectHashMap<ResponseFuture> [] segments = new IntObjectHashMap[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new IntObjectHashMap<>();
         }
+        return segments;
+    }
+
+    /**
+     * 分配请求ID，放入在途请求
+     * @param future 收到响应时完成的Future
+     * @return 分配的请求ID
+     */
+    public int put(CompletableFuture<Command> future) throws InterruptedException, TimeoutException {
+        ResponseFuture responseFuture = register(requestId -> new ResponseFuture(requestId, future));
+        int requestId = responseFuture.getRequestId();
+        responseFuture.setTimeout(TIMER.newTimeout(timeout -> {
+            ResponseFuture timeoutFuture = remove(requestId);
+            if (null != timeoutFuture) {
+                timeoutFuture.getFuture().completeExceptionally(
+                        new TimeoutException(String.format("Request %d timed out after %d ms!", requestId, timeoutMillis)));
+            }
+        }, timeoutMillis, TimeUnit.MILLISECONDS));
+        checkClosed();
+        return requestId;
+    }
+
+    /**
+     * 在在途请求共用的时间轮上注册一个超时任务，给不经过网络的请求使用
+     */
+    static Timeout newTimeout(Runnable task, long timeoutMillis) {
+        return TIMER.newTimeout(timeout -> task.run(), timeoutMillis, TimeUnit.MILLISECONDS);
     }
 
-    private void removeTimeoutFutures() {
-        futureMap.entrySet().removeIf(entry -> {
-            if( System.nanoTime() - entry.getValue().getTimestamp() > TIMEOUT_SEC * 1000000000L) {
-                semaphore.release();
-                return true;
-            } else {
-                return false;
+    /**
+     * 分配请求ID，放入一个流式请求。流式请求没有整体的超时时间，直到流结束或者被取消时才移除，
+     * 在这期间占用一个在途请求的名额。
+     * @param listener 接收响应
+     * @return 分配的请求ID
+     */
+    public int putStream(StreamListener listener) throws InterruptedException, TimeoutException {
+        int requestId = register(id -> new ResponseFuture(id, listener)).getRequestId();
+        checkClosed();
+        return requestId;
+    }
+
+    private ResponseFuture register(IntFunction<ResponseFuture> responseFutureFactory) throws InterruptedException, TimeoutException {
+        if (closed) {
+            throw new IllegalStateException("Connection closed!");
+        }
+        boolean acquired = waitMillis > 0 ? semaphore.tryAcquire(waitMillis, TimeUnit.MILLISECONDS) : semaphore.tryAcquire();
+        if (!acquired) {
+            throw new TimeoutException("Too many in-flight requests!");
+        }
+        ResponseFuture responseFuture = null;
+        while (null == responseFuture) {
+            int requestId = nextRequestId.getAndIncrement();
+            IntObjectHashMap<ResponseFuture> segment = segmentOf(requestId);
+            synchronized (segment) {
+                // ID回绕之后，这个ID的请求可能仍然在途
+                if (!segment.containsKey(requestId)) {
+                    responseFuture = responseFutureFactory.apply(requestId);
+                    segment.put(requestId, responseFuture);
+                }
             }
-        });
+        }
+        return responseFuture;
+    }
+
+    private void checkClosed() {
+        if (closed) {
+            // 放入的同时连接断开了，close()可能没有看到这个请求
+            failAll();
+        }
+    }
+
+    /**
+     * 查找在途请求，不移除
+     */
+    public ResponseFuture get(int requestId) {
+        IntObjectHashMap<ResponseFuture> segment = segmentOf(requestId);
+        synchronized (segment) {
+            return segment.get(requestId);
+        }
     }
 
     public ResponseFuture remove(int requestId) {
-        ResponseFuture future = futureMap.remove(requestId);
+        IntObjectHashMap<ResponseFuture> segment = segmentOf(requestId);
+        ResponseFuture future;
+        synchronized (segment) {
+            future = segment.remove(requestId);
+        }
         if(null != future) {
+            future.cancelTimeout();
             semaphore.release();
         }
         return future;
     }
 
+    /**
+     * 普通请求的超时时间，也是流式请求等待下一个元素的超时时间
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * 流式请求的流控窗口大小
+     */
+    public int getStreamWindow() {
+        return streamWindow;
+    }
+
+    /**
+     * 在途请求数
+     */
+    public int size() {
+        return maxInFlightRequests - semaphore.availablePermits();
+    }
+
+    private IntObjectHashMap<ResponseFuture> segmentOf(int requestId) {
+        return segments[requestId & (SEGMENT_COUNT - 1)];
+    }
+
+    /**
+     * 连接断开或者客户端关闭时调用，让所有在途请求立即失败，之后不能再放入请求
+     */
     @Override
     public void close() {
-        scheduledFuture.cancel(true);
-        scheduledExecutorService.shutdown();
+        closed = true;
+        failAll();
+    }
+
+    private void failAll() {
+        List<ResponseFuture> futures = new ArrayList<>();
+        for (IntObjectHashMap<ResponseFuture> segment : segments) {
+            synchronized (segment) {
+                futures.addAll(segment.values());
+            }
+        }
+        for (ResponseFuture future : futures) {
+            if (null != remove(future.getRequestId())) {
+                future.fail(new ClosedChannelException());
+            }
+        }
     }
 }
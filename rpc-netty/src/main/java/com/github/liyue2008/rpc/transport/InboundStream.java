@@ -0,0 +1,39 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.Closeable;
+
+/**
+ * 服务端收到的双向流中客户端发来的消息。
+ * 服务端最多缓存一个窗口的消息，每消费一部分消息后再授予客户端同样数量的信用，
+ * 所以{@link #take()}只能在处理请求的线程池中调用，不能在网络IO线程上阻塞。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+public interface InboundStream extends Closeable {
+    /**
+     * 阻塞等待下一条消息，由调用方负责释放
+     * @return 客户端消息发送完毕，或者流被取消时返回null
+     */
+    ByteBuf take() throws InterruptedException;
+
+    /**
+     * 不再读取消息，释放还没有读取的消息
+     */
+    @Override
+    void close();
+}
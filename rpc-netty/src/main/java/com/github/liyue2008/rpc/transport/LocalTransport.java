@@ -0,0 +1,157 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport;
+
+import com.github.liyue2008.rpc.transport.command.Code;
+import com.github.liyue2008.rpc.transport.command.Command;
+import com.github.liyue2008.rpc.transport.command.Header;
+import com.github.liyue2008.rpc.transport.command.ResponseHeader;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * 进程内的传输：服务提供者注册在同一个RpcAccessPoint中时，请求不经过编码、网络和解码，
+ * 直接交给本地的请求处理器，在处理器指定的线程池中执行。
+ * 请求和响应仍然是序列化之后的命令，调用双方不会共享参数和返回值对象。
+ * 流式请求依赖连接上的流控，仍然通过网络发送。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+public class LocalTransport implements Transport {
+    private static final Logger logger = LoggerFactory.getLogger(LocalTransport.class);
+    private final RequestHandlerRegistry requestHandlerRegistry;
+    private final Transport streamTransport;
+    private final long timeoutMillis;
+
+    /**
+     * @param requestHandlerRegistry 本地的请求处理器
+     * @param streamTransport 发送流式请求的网络传输
+     * @param timeoutMillis 请求的超时时间，和远程调用一样
+     */
+    public LocalTransport(RequestHandlerRegistry requestHandlerRegistry, Transport streamTransport, long timeoutMillis) {
+        this.requestHandlerRegistry = requestHandlerRegistry;
+        this.streamTransport = streamTransport;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    @Override
+    public CompletableFuture<Command> send(Command request) {
+        CompletableFuture<Command> future = new CompletableFuture<>();
+        Header header = request.getHeader();
+        Timeout timeout = InFlightRequests.newTimeout(() -> future.completeExceptionally(new TimeoutException(
+                String.format("Request %d timed out after %d ms!", header.getRequestId(), timeoutMillis))), timeoutMillis);
+        dispatch(request, response -> {
+            timeout.cancel();
+            Command result = null != response ? response : errorResponse(header, Code.UNKNOWN_ERROR, "Response is null!");
+            // 已经超时的请求，响应没有人接收
+            if (!future.complete(result)) {
+                ReferenceCountUtil.release(result);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public void sendOneWay(Command request) {
+        Header header = request.getHeader();
+        header.setFlags(header.getFlags() | Header.FLAG_ONE_WAY);
+        dispatch(request, response -> {
+            if (null != response) {
+                ResponseHeader responseHeader = (ResponseHeader) response.getHeader();
+                if (responseHeader.getCode() != Code.SUCCESS.getCode()) {
+                    logger.warn("Handle one-way request failed, code: {}, error: {}.",
+                            responseHeader.getCode(), responseHeader.getError());
+                }
+                response.release();
+            }
+        });
+    }
+
+    /**
+     * 服务端就在这个进程中，版本总是相同的
+     */
+    @Override
+    public int peerVersion() {
+        return Header.CURRENT_VERSION;
+    }
+
+    @Override
+    public ClientStream sendStream(Command request, StreamListener listener) throws InterruptedException, TimeoutException {
+        return streamTransport.sendStream(request, listener);
+    }
+
+    /**
+     * 和服务端的RequestInvocation一样：在处理器的线程池中执行，没有线程池时在调用线程中执行，
+     * 处理失败和线程池满时给出错误响应，单向请求的错误响应只记录日志
+     */
+    private void dispatch(Command request, Consumer<Command> onResponse) {
+        Header header = request.getHeader();
+        RequestHandler handler = requestHandlerRegistry.get(header.getType());
+        if (null == handler) {
+            ReferenceCountUtil.release(request);
+            onResponse.accept(errorResponse(header, Code.UNKNOWN_ERROR,
+                    String.format("No handler for request with type: %d!", header.getType())));
+            return;
+        }
+        RequestHandler.Dispatch dispatch = handler.dispatch(request);
+        Runnable task = () -> handle(dispatch, request, onResponse);
+        Executor executor = dispatch.getExecutor();
+        if (null == executor) {
+            task.run();
+            return;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            ReferenceCountUtil.release(request);
+            onResponse.accept(errorResponse(header, Code.SERVER_BUSY, "Server busy!"));
+        }
+    }
+
+    private static void handle(RequestHandler.Dispatch dispatch, Command request, Consumer<Command> onResponse) {
+        Header header = request.getHeader();
+        CompletableFuture<Command> future;
+        try {
+            future = dispatch.handle();
+        } catch (Throwable t) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(t);
+        } finally {
+            // 参数在handleAsync返回之前就已经读取完毕
+            ReferenceCountUtil.release(request);
+        }
+        future.whenComplete((response, throwable) -> {
+            if (null != throwable) {
+                logger.warn("Handle request failed!", throwable);
+                onResponse.accept(errorResponse(header, Code.UNKNOWN_ERROR, throwable.getMessage()));
+            } else {
+                onResponse.accept(response);
+            }
+        });
+    }
+
+    private static Command errorResponse(Header header, Code code, String error) {
+        return new Command(
+                new ResponseHeader(header.getType(), header.getVersion(), header.getRequestId(), code.getCode(), error),
+                new byte[0]);
+    }
+}
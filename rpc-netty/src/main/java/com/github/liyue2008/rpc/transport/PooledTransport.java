@@ -0,0 +1,244 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport;
+
+import com.github.liyue2008.rpc.ClientConfig;
+import com.github.liyue2008.rpc.Writability;
+import com.github.liyue2008.rpc.transport.command.Command;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 到同一个服务地址的一组连接，对外表现为一个{@link Transport}。
+ * 连接在第一次被选中时才创建，选中的连接已经断开时自动重新创建。
+ * @author LiYue
+ * Date: 2019/10/17
+ */
+public class PooledTransport implements Transport {
+    private final AtomicReferenceArray<Transport> transports;
+    private final Object [] locks;
+    private final ClientConfig.ConnectionSelector connectionSelector;
+    private final Connector connector;
+    private final AtomicInteger nextIndex = new AtomicInteger(0);
+    private final List<Writability.Listener> writabilityListeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean writable = new AtomicBoolean(true);
+
+    /**
+     * @param size 最多建立多少个连接
+     * @param connectionSelector 选择连接的方式
+     * @param connector 创建连接
+     */
+    public PooledTransport(int size, ClientConfig.ConnectionSelector connectionSelector, Connector connector) {
+        if (size <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid connection pool size: %d!", size));
+        }
+        this.transports = new AtomicReferenceArray<>(size);
+        this.locks = new Object[size];
+        for (int i = 0; i < size; i++) {
+            locks[i] = new Object();
+        }
+        this.connectionSelector = connectionSelector;
+        this.connector = connector;
+    }
+
+    @Override
+    public CompletableFuture<Command> send(Command request) {
+        Transport transport;
+        try {
+            transport = select();
+        } catch (Throwable t) {
+            // 没有可用的连接，命令没有写出，需要在这里释放
+            ReferenceCountUtil.release(request);
+            CompletableFuture<Command> future = new CompletableFuture<>();
+            future.completeExceptionally(t);
+            return future;
+        }
+        return transport.send(request);
+    }
+
+    @Override
+    public ClientStream sendStream(Command request, StreamListener listener) throws InterruptedException, TimeoutException {
+        Transport transport;
+        try {
+            transport = select();
+        } catch (Throwable t) {
+            ReferenceCountUtil.release(request);
+            throw t;
+        }
+        return transport.sendStream(request, listener);
+    }
+
+    @Override
+    public void sendOneWay(Command request) throws InterruptedException, TimeoutException {
+        Transport transport;
+        try {
+            transport = select();
+        } catch (Throwable t) {
+            ReferenceCountUtil.release(request);
+            throw t;
+        }
+        transport.sendOneWay(request);
+    }
+
+    @Override
+    public Transport connection() throws InterruptedException, TimeoutException {
+        return select();
+    }
+
+    private Transport select() throws InterruptedException, TimeoutException {
+        if (connectionSelector == ClientConfig.ConnectionSelector.LEAST_OUTSTANDING) {
+            return selectLeastOutstanding();
+        }
+        if (connectionSelector == ClientConfig.ConnectionSelector.EVENT_LOOP) {
+            return selectEventLoop();
+        }
+        return get((nextIndex.getAndIncrement() & Integer.MAX_VALUE) % transports.length());
+    }
+
+    /**
+     * 优先使用空闲的连接；所有已经建立的连接上都有在途请求时，如果还有空位就新建一个连接
+     */
+    private Transport selectLeastOutstanding() throws InterruptedException, TimeoutException {
+        Transport selected = null;
+        int minPendingRequests = Integer.MAX_VALUE;
+        int emptyIndex = -1;
+        for (int i = 0; i < transports.length(); i++) {
+            Transport transport = transports.get(i);
+            if (null == transport || !transport.isActive()) {
+                if (emptyIndex < 0) {
+                    emptyIndex = i;
+                }
+                continue;
+            }
+            int pendingRequests = transport.pendingRequests();
+            if (pendingRequests < minPendingRequests) {
+                selected = transport;
+                minPendingRequests = pendingRequests;
+            }
+        }
+        if (null != selected && (minPendingRequests == 0 || emptyIndex < 0)) {
+            return selected;
+        }
+        return get(emptyIndex);
+    }
+
+    /**
+     * 优先使用建立在调用线程上的连接；没有时如果还有空位就新建一个，调用线程是IO线程时新连接就建立在这个线程上
+     */
+    private Transport selectEventLoop() throws InterruptedException, TimeoutException {
+        int emptyIndex = -1;
+        for (int i = 0; i < transports.length(); i++) {
+            Transport transport = transports.get(i);
+            if (null == transport || !transport.isActive()) {
+                if (emptyIndex < 0) {
+                    emptyIndex = i;
+                }
+                continue;
+            }
+            if (transport.inEventLoop()) {
+                return transport;
+            }
+        }
+        if (emptyIndex >= 0) {
+            return get(emptyIndex);
+        }
+        return get((nextIndex.getAndIncrement() & Integer.MAX_VALUE) % transports.length());
+    }
+
+    private Transport get(int index) throws InterruptedException, TimeoutException {
+        Transport transport = transports.get(index);
+        if (null != transport && transport.isActive()) {
+            return transport;
+        }
+        synchronized (locks[index]) {
+            transport = transports.get(index);
+            if (null == transport || !transport.isActive()) {
+                transport = connector.connect();
+                transport.addWritabilityListener(this::onWritabilityChanged);
+                transports.set(index, transport);
+            }
+            return transport;
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+        for (int i = 0; i < transports.length(); i++) {
+            Transport transport = transports.get(i);
+            if (null != transport && transport.isActive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 还有可写的连接，或者还能新建连接时可写
+     */
+    @Override
+    public boolean isWritable() {
+        for (int i = 0; i < transports.length(); i++) {
+            Transport transport = transports.get(i);
+            if (null == transport || !transport.isActive() || transport.isWritable()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void addWritabilityListener(Writability.Listener listener) {
+        writabilityListeners.add(listener);
+    }
+
+    @Override
+    public void removeWritabilityListener(Writability.Listener listener) {
+        writabilityListeners.remove(listener);
+    }
+
+    /**
+     * 某个连接的可写状态变化时，只在整个连接池的可写状态也变化时通知监听器
+     */
+    private void onWritabilityChanged(boolean connectionWritable) {
+        boolean writable = isWritable();
+        if (this.writable.compareAndSet(!writable, writable)) {
+            for (Writability.Listener listener : writabilityListeners) {
+                listener.onWritabilityChanged(writable);
+            }
+        }
+    }
+
+    @Override
+    public int pendingRequests() {
+        int pendingRequests = 0;
+        for (int i = 0; i < transports.length(); i++) {
+            Transport transport = transports.get(i);
+            if (null != transport) {
+                pendingRequests += transport.pendingRequests();
+            }
+        }
+        return pendingRequests;
+    }
+
+    public interface Connector {
+        Transport connect() throws InterruptedException, TimeoutException;
+    }
+}
@@ -15,6 +15,10 @@ package com.github.liyue2008.rpc.transport;
 
 import com.github.liyue2008.rpc.transport.command.Command;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
 /**
  * 请求处理器
  * @author LiYue
@@ -28,8 +32,57 @@ public interface RequestHandler {
      */
     Command handle(Command requestCommand);
 
+    /**
+     * 异步处理请求，返回的CompletableFuture完成时写出响应。
+     * 请求命令在这个方法返回后就会被释放，需要的数据要在返回之前从请求命令中读出来。
+     * 默认实现同步调用{@link #handle(Command)}。
+     * @param requestCommand 请求命令
+     * @return 响应命令
+     */
+    default CompletableFuture<Command> handleAsync(Command requestCommand) {
+        return CompletableFuture.completedFuture(handle(requestCommand));
+    }
+
+    /**
+     * 在IO线程上解析请求，决定由哪个线程池执行，需要很快返回。
+     * 解析的结果保存在返回的{@link Dispatch}中，执行时不需要再解析一次。
+     * 默认实现在IO线程上调用{@link #handleAsync(Command)}。
+     * @param requestCommand 请求命令
+     * @return 解析好的请求
+     */
+    default Dispatch dispatch(Command requestCommand) {
+        return new Dispatch(null, () -> handleAsync(requestCommand));
+    }
+
     /**
      * 支持的请求类型
      */
     int type();
+
+    /**
+     * 解析好的请求：执行它的线程池和处理它的任务
+     */
+    class Dispatch {
+        private final Executor executor;
+        private final Supplier<CompletableFuture<Command>> task;
+
+        public Dispatch(Executor executor, Supplier<CompletableFuture<Command>> task) {
+            this.executor = executor;
+            this.task = task;
+        }
+
+        /**
+         * 执行请求的线程池，返回null时直接在IO线程上执行
+         */
+        public Executor getExecutor() {
+            return executor;
+        }
+
+        /**
+         * 处理请求，返回的CompletableFuture完成时写出响应。请求命令在这个方法返回后就会被释放。
+         */
+        public CompletableFuture<Command> handle() {
+            return task.get();
+        }
+    }
 }
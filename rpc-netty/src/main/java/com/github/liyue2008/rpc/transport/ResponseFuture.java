@@ -14,33 +14,74 @@
 package com.github.liyue2008.rpc.transport;
 
 import com.github.liyue2008.rpc.transport.command.Command;
+import io.netty.util.Timeout;
 
 import java.util.concurrent.CompletableFuture;
 
 /**
+ * 一个在途请求：普通请求收到响应时完成future；流式请求的响应交给listener，直到流结束。
  * @author LiYue
  * Date: 2019/9/20
  */
 public class ResponseFuture {
     private final int requestId;
     private final CompletableFuture<Command> future;
-    private final long timestamp;
+    private final StreamListener listener;
+    private volatile Timeout timeout;
 
     public ResponseFuture(int requestId, CompletableFuture<Command> future) {
         this.requestId = requestId;
         this.future = future;
-        timestamp = System.nanoTime();
+        this.listener = null;
+    }
+
+    public ResponseFuture(int requestId, StreamListener listener) {
+        this.requestId = requestId;
+        this.future = null;
+        this.listener = listener;
     }
 
     public int getRequestId() {
         return requestId;
     }
 
+    /**
+     * 普通请求的Future，流式请求返回null
+     */
     public CompletableFuture<Command> getFuture() {
         return future;
     }
 
-    long getTimestamp() {
-        return timestamp;
+    /**
+     * 流式请求的响应接收者，普通请求返回null
+     */
+    public StreamListener getListener() {
+        return listener;
+    }
+
+    public boolean isStream() {
+        return null != listener;
+    }
+
+    /**
+     * 请求异常结束
+     */
+    public void fail(Throwable throwable) {
+        if (isStream()) {
+            listener.onError(throwable);
+        } else {
+            future.completeExceptionally(throwable);
+        }
+    }
+
+    void setTimeout(Timeout timeout) {
+        this.timeout = timeout;
+    }
+
+    void cancelTimeout() {
+        Timeout timeout = this.timeout;
+        if (null != timeout) {
+            timeout.cancel();
+        }
     }
 }
@@ -0,0 +1,38 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.Closeable;
+
+/**
+ * 服务端一个流式响应的数据源，每个元素作为一个响应帧发送。
+ * 只在一个线程中被顺序调用：处理请求的线程池，没有线程池时是网络IO线程。
+ * @author LiYue
+ * Date: 2019/10/18
+ */
+public interface ResponseStream extends Closeable {
+    /**
+     * 下一个元素序列化之后的payload，由调用方负责释放。可以阻塞等待数据。
+     * @return 流结束时返回null
+     */
+    ByteBuf next() throws Exception;
+
+    /**
+     * 流结束、出错或者被客户端取消时调用，释放数据源占用的资源
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,45 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport;
+
+import com.github.liyue2008.rpc.transport.command.Command;
+
+/**
+ * 接收流式请求的响应，所有方法都在网络IO线程上调用，不能有阻塞操作。
+ * 响应命令在方法返回后被释放，需要保留的话要自己增加引用。
+ * @author LiYue
+ * Date: 2019/10/18
+ */
+public interface StreamListener {
+    /**
+     * 收到流中的一个元素
+     */
+    void onNext(Command response);
+
+    /**
+     * 收到流的最后一个响应：正常结束，或者是一个失败的响应
+     */
+    void onComplete(Command response);
+
+    /**
+     * 连接断开，流异常结束
+     */
+    void onError(Throwable throwable);
+
+    /**
+     * 双向流中服务端授予了信用，客户端可以再发送credits条消息
+     */
+    default void onCredit(int credits) {
+    }
+}
@@ -13,9 +13,12 @@
  */
 package com.github.liyue2008.rpc.transport;
 
+import com.github.liyue2008.rpc.Writability;
 import com.github.liyue2008.rpc.transport.command.Command;
+import com.github.liyue2008.rpc.transport.command.Header;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author LiYue
@@ -23,9 +26,76 @@ import java.util.concurrent.CompletableFuture;
  */
 public interface Transport {
     /**
-     * 发送请求命令
+     * 发送请求命令，请求ID在发送时分配，会覆盖请求头中的请求ID
      * @param request 请求命令
      * @return 返回值是一个Future，Future
      */
     CompletableFuture<Command> send(Command request);
+
+    /**
+     * 发送流式请求，服务端返回的响应依次交给listener，直到流结束。
+     * 请求ID在发送时分配，请求发出时已经授予服务端{@link ClientStream#window()}个信用。
+     * @param request 请求命令
+     * @param listener 接收响应
+     * @return 这个流的句柄
+     */
+    ClientStream sendStream(Command request, StreamListener listener) throws InterruptedException, TimeoutException;
+
+    /**
+     * 发送单向请求，不登记在途请求，服务端也不会回复。命令交给网络层之后立即返回，
+     * 写出失败只记录日志。
+     * @param request 请求命令，发送时会加上{@link com.github.liyue2008.rpc.transport.command.Header#FLAG_ONE_WAY}
+     */
+    void sendOneWay(Command request) throws InterruptedException, TimeoutException;
+
+    /**
+     * 下一个请求实际使用的连接，连接池返回选中的连接，其它实现返回自己。
+     * 和连接有关的状态，比如协商好的方法ID，要跟着这里返回的连接走：连接重建之后需要重新协商。
+     */
+    default Transport connection() throws InterruptedException, TimeoutException {
+        return this;
+    }
+
+    /**
+     * 这个连接上可以使用的最高协议版本，还没有收到对端的响应、不知道对端的版本时返回0。
+     * 只有返回{@link Header#VERSION_2}或更高时才能使用方法ID、流和单向请求这些新功能
+     */
+    default int peerVersion() {
+        return Header.VERSION_1;
+    }
+
+    /**
+     * 连接是否可用，不可用的连接不能再发送请求
+     */
+    default boolean isActive() {
+        return true;
+    }
+
+    /**
+     * 正在等待响应的请求数
+     */
+    default int pendingRequests() {
+        return 0;
+    }
+
+    /**
+     * 连接是否可以写出请求，积压了太多没有写出的请求时不可写
+     */
+    default boolean isWritable() {
+        return true;
+    }
+
+    /**
+     * 注册一个监听器，连接的可写状态变化时在网络IO线程上调用
+     */
+    default void addWritabilityListener(Writability.Listener listener) {}
+
+    default void removeWritabilityListener(Writability.Listener listener) {}
+
+    /**
+     * 当前线程是不是负责这个连接的网络IO线程
+     */
+    default boolean inEventLoop() {
+        return false;
+    }
 }
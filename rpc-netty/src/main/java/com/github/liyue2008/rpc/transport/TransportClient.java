@@ -13,10 +13,13 @@
  */
 package com.github.liyue2008.rpc.transport;
 
-import com.github.liyue2008.rpc.transport.Transport;
+import com.github.liyue2008.rpc.ClientConfig;
 
 import java.io.Closeable;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.URI;
+import java.util.Collection;
 import java.util.concurrent.TimeoutException;
 
 /**
@@ -25,6 +28,23 @@ import java.util.concurrent.TimeoutException;
  */
 public interface TransportClient extends Closeable {
     Transport createTransport(SocketAddress address, long connectionTimeout) throws InterruptedException, TimeoutException;
+
+    /**
+     * 服务地址URI中支持的scheme
+     */
+    Collection<String> supportedSchemes();
+
+    /**
+     * 把服务地址URI转换成连接的地址，默认是URI中的主机和端口
+     */
+    default SocketAddress addressOf(URI uri) {
+        return new InetSocketAddress(uri.getHost(), uri.getPort());
+    }
+
+    /**
+     * 设置客户端配置，只对之后创建的连接生效
+     */
+    default void setClientConfig(ClientConfig clientConfig) {}
     @Override
     void close();
 }
@@ -13,11 +13,44 @@
  */
 package com.github.liyue2008.rpc.transport;
 
+import com.github.liyue2008.rpc.ServerConfig;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Collection;
+
 /**
  * @author LiYue
  * Date: 2019/9/25
  */
 public interface TransportServer {
-    void start(RequestHandlerRegistry requestHandlerRegistry, int port) throws Exception;
+    /**
+     * 在所有网卡的port端口上监听
+     */
+    default void start(RequestHandlerRegistry requestHandlerRegistry, int port) throws Exception {
+        start(requestHandlerRegistry, new InetSocketAddress(port));
+    }
+
+    /**
+     * 在指定的地址上监听，地址的类型由实现决定
+     */
+    void start(RequestHandlerRegistry requestHandlerRegistry, SocketAddress address) throws Exception;
+
+    /**
+     * 实际监听的地址，监听TCP端口0时其中是系统分配的端口。没有启动时返回null。
+     */
+    default SocketAddress localAddress() {
+        return null;
+    }
+
+    /**
+     * 服务地址URI中支持的scheme
+     */
+    Collection<String> supportedSchemes();
+
+    /**
+     * 设置服务端配置，需要在{@link #start(RequestHandlerRegistry, int)}之前调用
+     */
+    default void setServerConfig(ServerConfig serverConfig) {}
     void stop();
 }
@@ -24,6 +24,8 @@ public enum Code {
 
     SUCCESS(0, "SUCCESS"),
     NO_PROVIDER(-2, "NO_PROVIDER"),
+    UNKNOWN_METHOD_ID(-3, "UNKNOWN_METHOD_ID"),
+    SERVER_BUSY(-4, "SERVER_BUSY"),
     UNKNOWN_ERROR(-1, "UNKNOWN_ERROR");
 
     private static Map<Integer, Code> codes = new HashMap<>();
@@ -13,18 +13,34 @@
  */
 package com.github.liyue2008.rpc.transport.command;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.util.ReferenceCounted;
+
 /**
+ * 命令的payload有两种形式：
+ * 1. 字节数组，由调用方自己构建；
+ * 2. ByteBuf，解码时直接引用入站缓冲区的切片，避免复制。这种情况下命令持有ByteBuf的一个引用，
+ *    使用完毕后需要调用{@link #release()}释放。
  * @author LiYue
  * Date: 2019/9/20
  */
-public class Command {
+public class Command implements ReferenceCounted {
     protected Header header;
     private byte [] payload;
+    private ByteBuf payloadBuffer;
 
     public Command(Header header, byte [] payload) {
         this.header = header;
         this.payload = payload;
     }
+
+    public Command(Header header, ByteBuf payloadBuffer) {
+        this.header = header;
+        this.payloadBuffer = payloadBuffer;
+    }
+
     public Header getHeader() {
         return header;
     }
@@ -33,11 +49,85 @@ public class Command {
         this.header = header;
     }
 
+    /**
+     * 以字节数组的形式返回payload。如果payload是ByteBuf，这里会复制一次。
+     */
     public byte [] getPayload() {
+        if (null == payload && null != payloadBuffer) {
+            payload = ByteBufUtil.getBytes(payloadBuffer);
+        }
         return payload;
     }
 
     public void setPayload(byte [] payload) {
         this.payload = payload;
     }
+
+    /**
+     * 以ByteBuf的形式返回payload，不复制数据。返回的ByteBuf仍然属于这个命令，调用方不要释放它。
+     */
+    public ByteBuf getPayloadBuffer() {
+        if (null == payloadBuffer) {
+            payloadBuffer = null == payload ? Unpooled.EMPTY_BUFFER : Unpooled.wrappedBuffer(payload);
+        }
+        return payloadBuffer;
+    }
+
+    public boolean hasPayloadBuffer() {
+        return null != payloadBuffer;
+    }
+
+    public int payloadLength() {
+        if (null != payloadBuffer) {
+            return payloadBuffer.readableBytes();
+        }
+        return null == payload ? 0 : payload.length;
+    }
+
+    @Override
+    public int refCnt() {
+        return null == payloadBuffer ? 1 : payloadBuffer.refCnt();
+    }
+
+    @Override
+    public Command retain() {
+        if (null != payloadBuffer) {
+            payloadBuffer.retain();
+        }
+        return this;
+    }
+
+    @Override
+    public Command retain(int increment) {
+        if (null != payloadBuffer) {
+            payloadBuffer.retain(increment);
+        }
+        return this;
+    }
+
+    @Override
+    public Command touch() {
+        if (null != payloadBuffer) {
+            payloadBuffer.touch();
+        }
+        return this;
+    }
+
+    @Override
+    public Command touch(Object hint) {
+        if (null != payloadBuffer) {
+            payloadBuffer.touch(hint);
+        }
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return null != payloadBuffer && payloadBuffer.release();
+    }
+
+    @Override
+    public boolean release(int decrement) {
+        return null != payloadBuffer && payloadBuffer.release(decrement);
+    }
 }
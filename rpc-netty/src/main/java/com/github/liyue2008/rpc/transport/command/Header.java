@@ -18,11 +18,67 @@ package com.github.liyue2008.rpc.transport.command;
  * Date: 2019/9/20
  */
 public class Header {
+    /**
+     * 固定长度的int头部：长度、类型、版本、请求ID
+     */
+    public static final int VERSION_1 = 1;
+    /**
+     * 紧凑头部：长度、类型、标志位和请求ID都使用varint编码，
+     * 错误信息只在响应失败时才写入
+     */
+    public static final int VERSION_2 = 2;
+    public static final int CURRENT_VERSION = VERSION_2;
+    /**
+     * 响应带有错误码和错误信息，只用于{@link #VERSION_2}的编解码
+     */
+    public static final int FLAG_ERROR = 0x01;
+    /**
+     * payload的压缩算法，为0时没有压缩，见{@link com.github.liyue2008.rpc.transport.compress.PayloadCompressor}
+     */
+    public static final int FLAG_COMPRESSION_MASK = 0x06;
+    /**
+     * 请求方可以解压响应的payload，服务端只对带有这个标志的连接压缩响应
+     */
+    public static final int FLAG_ACCEPT_COMPRESSION = 0x08;
+    /**
+     * 请求中表示客户端要以流的形式接收响应；响应中表示这是流中的一个元素，后面还有响应
+     */
+    public static final int FLAG_STREAM = 0x10;
+    /**
+     * 响应中表示流正常结束；流控帧中表示客户端取消了这个流
+     */
+    public static final int FLAG_END_OF_STREAM = 0x20;
+    /**
+     * 客户端发给服务端的流控帧，payload是一个int，表示服务端还可以再发送多少个元素，服务端不回复
+     */
+    public static final int FLAG_STREAM_CREDIT = 0x40;
+    /**
+     * 双向流中客户端发给服务端的消息，和{@link #FLAG_END_OF_STREAM}一起表示客户端的消息发送完毕；
+     * 和{@link #FLAG_STREAM}一起出现在请求中时，表示打开一个双向流
+     */
+    public static final int FLAG_STREAM_MESSAGE = 0x80;
+    /**
+     * 单向请求，服务端不发送响应
+     */
+    public static final int FLAG_ONE_WAY = 0x100;
+
     private int requestId;
     private int version;
     private int type;
+    /**
+     * 可选特性的标志位，只有{@link #VERSION_2}及以上的版本会传输。
+     * 按varint编码，小于0x80的标志只占一个字节，以后可以继续增加标志位
+     */
+    private int flags;
 
     public Header() {}
+
+    /**
+     * 请求的请求ID在发送时由{@link com.github.liyue2008.rpc.transport.Transport}分配
+     */
+    public Header(int type, int version) {
+        this(type, version, 0);
+    }
     public Header(int type, int version, int requestId) {
         this.requestId = requestId;
         this.type = type;
@@ -48,6 +104,21 @@ public class Header {
         return type;
     }
 
+    public int getFlags() {
+        return flags;
+    }
+
+    public void setFlags(int flags) {
+        this.flags = flags;
+    }
+
+    public boolean hasFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    /**
+     * {@link #VERSION_1}编码后的头部长度
+     */
     public int length() {
         return Integer.BYTES + Integer.BYTES + Integer.BYTES;
     }
@@ -22,6 +22,7 @@ import java.nio.charset.StandardCharsets;
 public class ResponseHeader extends Header {
     private int code;
     private String error;
+    private byte [] errorBytes;
 
     public ResponseHeader(int type, int version, int requestId,  Throwable throwable) {
         this(type, version, requestId, Code.UNKNOWN_ERROR.getCode(), throwable.getMessage());
@@ -42,8 +43,17 @@ public class ResponseHeader extends Header {
     @Override
     public int length() {
         return Integer.BYTES + Integer.BYTES + Integer.BYTES + Integer.BYTES +
-                Integer.BYTES +
-                (error == null ? 0 : error.getBytes(StandardCharsets.UTF_8).length);
+                Integer.BYTES + getErrorBytes().length;
+    }
+
+    /**
+     * UTF-8编码后的错误信息，编码结果会缓存下来，计算长度和写入时不必重复编码
+     */
+    public byte [] getErrorBytes() {
+        if (errorBytes == null) {
+            errorBytes = error == null ? new byte[0] : error.getBytes(StandardCharsets.UTF_8);
+        }
+        return errorBytes;
     }
 
     public int getCode() {
@@ -60,6 +70,7 @@ public class ResponseHeader extends Header {
 
     public void setError(String error) {
         this.error = error;
+        this.errorBytes = null;
     }
 
 
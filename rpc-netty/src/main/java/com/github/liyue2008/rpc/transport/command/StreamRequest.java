@@ -0,0 +1,35 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.command;
+
+import com.github.liyue2008.rpc.transport.InboundStream;
+
+/**
+ * 打开双向流的请求，和原始请求命令共用同一个payload和引用计数，
+ * 请求处理器从inbound中读取客户端随后发来的消息。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+public class StreamRequest extends Command {
+    private final InboundStream inbound;
+
+    public StreamRequest(Command request, InboundStream inbound) {
+        super(request.getHeader(), request.getPayloadBuffer());
+        this.inbound = inbound;
+    }
+
+    public InboundStream getInbound() {
+        return inbound;
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.command;
+
+import com.github.liyue2008.rpc.transport.ResponseStream;
+
+/**
+ * 请求处理器返回的流式响应，本身不会被写出，传输层从stream中逐个取出元素，
+ * 按照客户端授予的信用发送。
+ * @author LiYue
+ * Date: 2019/10/18
+ */
+public class StreamResponse extends Command {
+    private final ResponseStream stream;
+
+    public StreamResponse(ResponseHeader header, ResponseStream stream) {
+        super(header, new byte[0]);
+        this.stream = stream;
+    }
+
+    public ResponseStream getStream() {
+        return stream;
+    }
+}
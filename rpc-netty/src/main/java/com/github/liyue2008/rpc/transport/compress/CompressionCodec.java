@@ -0,0 +1,39 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.compress;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 压缩算法
+ * @author LiYue
+ * Date: 2019/10/17
+ */
+public interface CompressionCodec {
+    /**
+     * 在{@link com.github.liyue2008.rpc.transport.command.Header#FLAG_COMPRESSION_MASK}中代表这个算法的标志位
+     */
+    int flag();
+
+    /**
+     * 压缩in中所有可读的数据，写入out
+     */
+    void compress(ByteBuf in, ByteBuf out);
+
+    /**
+     * 解压in中所有可读的数据，写入out
+     * @param length 解压后的长度，数据和这个长度不符时抛出异常
+     */
+    void decompress(ByteBuf in, ByteBuf out, int length);
+}
@@ -0,0 +1,98 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.compress;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.handler.codec.compression.DecompressionException;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 使用JDK的Deflater，不带zlib的头部和校验和
+ * @author LiYue
+ * Date: 2019/10/17
+ */
+public class DeflateCodec implements CompressionCodec {
+    public static final int FLAG = 0x04;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    @Override
+    public int flag() {
+        return FLAG;
+    }
+
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        try {
+            setInput(in, deflater::setInput);
+            deflater.finish();
+            byte [] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.writeBytes(buffer, 0, n);
+            }
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public void decompress(ByteBuf in, ByteBuf out, int length) {
+        Inflater inflater = new Inflater(true);
+        try {
+            setInput(in, inflater::setInput);
+            out.ensureWritable(length);
+            byte [] buffer = new byte[Math.min(BUFFER_SIZE, Math.max(length, 1))];
+            int remaining = length;
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DecompressionException("Truncated deflate data!");
+                }
+                if (n > remaining) {
+                    throw new DecompressionException("Decompressed data is longer than: " + length + "!");
+                }
+                out.writeBytes(buffer, 0, n);
+                remaining -= n;
+            }
+            if (remaining != 0) {
+                throw new DecompressionException("Decompressed length mismatch, expected: " + length +
+                        ", actual: " + (length - remaining) + "!");
+            }
+        } catch (DataFormatException e) {
+            throw new DecompressionException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private interface InputSetter {
+        void setInput(byte [] bytes, int offset, int length);
+    }
+
+    // 堆内存的缓冲区直接使用底层数组，避免复制
+    private static void setInput(ByteBuf in, InputSetter setter) {
+        int length = in.readableBytes();
+        if (in.hasArray()) {
+            setter.setInput(in.array(), in.arrayOffset() + in.readerIndex(), length);
+        } else {
+            setter.setInput(ByteBufUtil.getBytes(in), 0, length);
+        }
+        in.skipBytes(length);
+    }
+}
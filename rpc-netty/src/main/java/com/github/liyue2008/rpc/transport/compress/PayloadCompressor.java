@@ -0,0 +1,145 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.compress;
+
+import com.github.liyue2008.rpc.Compression;
+import com.github.liyue2008.rpc.transport.command.Header;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.compression.DecompressionException;
+
+/**
+ * 压缩后的payload：[int 原长度][压缩算法输出的数据]，
+ * 使用的算法记录在{@link Header#FLAG_COMPRESSION_MASK}中。
+ *
+ * 每个连接的编码器持有一个实例，只在连接的IO线程中使用，不是线程安全的。
+ * @author LiYue
+ * Date: 2019/10/17
+ */
+public class PayloadCompressor {
+    /**
+     * 压缩后的长度超过原长度的这个比例时认为压缩效果差
+     */
+    private static final double POOR_RATIO = 0.9;
+    /**
+     * 自适应模式下暂停压缩后，每隔多少个payload重新尝试一次
+     */
+    private static final int PROBE_INTERVAL = 64;
+    private static final CompressionCodec SNAPPY = new SnappyCodec();
+    private static final CompressionCodec DEFLATE = new DeflateCodec();
+
+    private final CompressionCodec codec;
+    private final int threshold;
+    private final boolean adaptive;
+    // 压缩率的指数移动平均，小于0表示还没有样本
+    private double ratio = -1;
+    private int skipped = 0;
+
+    public PayloadCompressor(CompressionCodec codec, int threshold, boolean adaptive) {
+        this.codec = codec;
+        this.threshold = threshold;
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * @return 不压缩时返回null
+     */
+    public static PayloadCompressor of(Compression compression, int threshold, boolean adaptive) {
+        CompressionCodec codec = codecOf(compression);
+        return codec == null ? null : new PayloadCompressor(codec, threshold, adaptive);
+    }
+
+    public int flag() {
+        return codec.flag();
+    }
+
+    /**
+     * 压缩payload，不改变payload的读写指针。
+     * @return 压缩后的payload；payload太小、压缩效果不好或者自适应模式暂停了压缩时返回null
+     */
+    public ByteBuf compress(ByteBufAllocator allocator, ByteBuf payload) {
+        int length = payload.readableBytes();
+        if (length < threshold) {
+            return null;
+        }
+        if (adaptive && ratio > POOR_RATIO && ++skipped < PROBE_INTERVAL) {
+            return null;
+        }
+        skipped = 0;
+        ByteBuf compressed = allocator.buffer(Integer.BYTES + length / 2);
+        try {
+            compressed.writeInt(length);
+            codec.compress(payload.duplicate(), compressed);
+        } catch (Throwable t) {
+            compressed.release();
+            throw t;
+        }
+        double current = (double) compressed.readableBytes() / length;
+        ratio = ratio < 0 ? current : ratio * 0.75 + current * 0.25;
+        if (compressed.readableBytes() >= length) {
+            compressed.release();
+            return null;
+        }
+        return compressed;
+    }
+
+    /**
+     * 解压payload，不释放传入的payload
+     * @param flags 帧头部中的标志位
+     * @param maxLength 解压后的最大长度，原始长度来自对端，申请缓冲区之前必须检查
+     */
+    public static ByteBuf decompress(ByteBufAllocator allocator, int flags, ByteBuf payload, int maxLength) {
+        CompressionCodec codec = codecOf(flags & Header.FLAG_COMPRESSION_MASK);
+        int length = payload.readInt();
+        if (length < 0) {
+            throw new DecompressionException("Invalid decompressed length: " + length + "!");
+        }
+        if (length > maxLength) {
+            throw new DecompressionException(String.format("Decompressed length %d exceeds the max frame length %d!", length, maxLength));
+        }
+        // 最大容量也是length，解码器按对端给出的长度扩容时直接失败
+        ByteBuf decompressed = allocator.buffer(length, length);
+        try {
+            codec.decompress(payload, decompressed, length);
+        } catch (IndexOutOfBoundsException e) {
+            decompressed.release();
+            throw new DecompressionException("Decompressed data is longer than: " + length + "!", e);
+        } catch (Throwable t) {
+            decompressed.release();
+            throw t;
+        }
+        return decompressed;
+    }
+
+    private static CompressionCodec codecOf(Compression compression) {
+        switch (compression) {
+            case SNAPPY:
+                return SNAPPY;
+            case DEFLATE:
+                return DEFLATE;
+            default:
+                return null;
+        }
+    }
+
+    private static CompressionCodec codecOf(int flag) {
+        if (flag == SNAPPY.flag()) {
+            return SNAPPY;
+        }
+        if (flag == DEFLATE.flag()) {
+            return DEFLATE;
+        }
+        throw new DecompressionException("Unknown compression flag: " + flag + "!");
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.compress;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.compression.DecompressionException;
+import io.netty.handler.codec.compression.Snappy;
+
+/**
+ * 使用Netty自带的Snappy实现。Snappy的编码只支持有限的回溯距离，
+ * 所以数据按块压缩，每块前面是这块压缩后的长度。
+ * @author LiYue
+ * Date: 2019/10/17
+ */
+public class SnappyCodec implements CompressionCodec {
+    public static final int FLAG = 0x02;
+    private static final int BLOCK_SIZE = 32 * 1024;
+
+    @Override
+    public int flag() {
+        return FLAG;
+    }
+
+    @Override
+    public void compress(ByteBuf in, ByteBuf out) {
+        Snappy snappy = new Snappy();
+        while (in.isReadable()) {
+            int blockLength = Math.min(in.readableBytes(), BLOCK_SIZE);
+            int lengthIndex = out.writerIndex();
+            out.writeInt(0);
+            snappy.encode(in.readSlice(blockLength), out, blockLength);
+            out.setInt(lengthIndex, out.writerIndex() - lengthIndex - Integer.BYTES);
+            snappy.reset();
+        }
+    }
+
+    @Override
+    public void decompress(ByteBuf in, ByteBuf out, int length) {
+        Snappy snappy = new Snappy();
+        int start = out.writerIndex();
+        while (in.isReadable()) {
+            int blockLength = in.readInt();
+            if (blockLength < 0 || blockLength > in.readableBytes()) {
+                throw new DecompressionException("Invalid snappy block length: " + blockLength + "!");
+            }
+            snappy.decode(in.readSlice(blockLength), out);
+            snappy.reset();
+            if (out.writerIndex() - start > length) {
+                break;
+            }
+        }
+        if (out.writerIndex() - start != length) {
+            throw new DecompressionException("Decompressed length mismatch, expected: " + length +
+                    ", actual: " + (out.writerIndex() - start) + "!");
+        }
+    }
+}
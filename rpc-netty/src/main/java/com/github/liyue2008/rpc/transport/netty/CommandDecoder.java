@@ -15,37 +15,99 @@ package com.github.liyue2008.rpc.transport.netty;
 
 import com.github.liyue2008.rpc.transport.command.Command;
 import com.github.liyue2008.rpc.transport.command.Header;
+import com.github.liyue2008.rpc.transport.compress.PayloadCompressor;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
 
 import java.util.List;
 
 /**
+ * 同时支持{@link Header#VERSION_1}和{@link Header#VERSION_2}两种帧格式，
+ * 每一帧都按第一个字节的最高位判断格式，帧格式见{@link CommandEncoder}。
+ * 压缩过的payload在这里解压，之后的处理器看到的都是原始的payload。
  * @author LiYue
  * Date: 2019/9/23
  */
 public abstract class CommandDecoder extends ByteToMessageDecoder {
     private static final int LENGTH_FIELD_LENGTH = Integer.BYTES;
+    static final int DEFAULT_MAX_FRAME_LENGTH = 64 * 1024 * 1024;
+    private final int maxFrameLength;
+
+    protected CommandDecoder() {
+        this(DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    /**
+     * @param maxFrameLength 一帧的最大长度，也是解压后payload的最大长度
+     */
+    protected CommandDecoder(int maxFrameLength) {
+        this.maxFrameLength = maxFrameLength;
+    }
+
     @Override
     protected void decode(ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf, List<Object> list) {
-        if (!byteBuf.isReadable(LENGTH_FIELD_LENGTH)) {
+        if (!byteBuf.isReadable()) {
             return;
         }
         byteBuf.markReaderIndex();
-        int length = byteBuf.readInt() - LENGTH_FIELD_LENGTH;
+        int marker = byteBuf.getUnsignedByte(byteBuf.readerIndex());
+        boolean compact = (marker & 0x80) != 0;
+        int length;
+        if (compact) {
+            byteBuf.skipBytes(1);
+            long frameLength = VarintSupport.tryReadVarint(byteBuf);
+            if (frameLength < 0) {
+                byteBuf.resetReaderIndex();
+                return;
+            }
+            if (frameLength > maxFrameLength) {
+                throw new TooLongFrameException("Invalid frame length: " + frameLength + "!");
+            }
+            length = (int) frameLength;
+        } else {
+            if (!byteBuf.isReadable(LENGTH_FIELD_LENGTH)) {
+                return;
+            }
+            length = byteBuf.readInt() - LENGTH_FIELD_LENGTH;
+            if (length < 0 || length > maxFrameLength) {
+                throw new TooLongFrameException("Invalid frame length: " + (length + LENGTH_FIELD_LENGTH) + "!");
+            }
+        }
 
         if (byteBuf.readableBytes() < length) {
             byteBuf.resetReaderIndex();
             return;
         }
 
-        Header header = decodeHeader(channelHandlerContext, byteBuf);
-        int payloadLength  = length - header.length();
-        byte [] payload = new byte[payloadLength];
-        byteBuf.readBytes(payload);
+        int headerStart = byteBuf.readerIndex();
+        Header header = compact ?
+                decodeHeaderV2(channelHandlerContext, marker & 0x7F, byteBuf) :
+                decodeHeader(channelHandlerContext, byteBuf);
+        int payloadLength  = length - (byteBuf.readerIndex() - headerStart);
+        if (payloadLength < 0) {
+            throw new CorruptedFrameException("Header is longer than the frame!");
+        }
+        // 直接引用入站缓冲区的切片，不复制数据，由命令的使用者负责释放
+        ByteBuf payload = byteBuf.readRetainedSlice(payloadLength);
+        if (header.hasFlag(Header.FLAG_COMPRESSION_MASK)) {
+            ByteBuf compressed = payload;
+            try {
+                payload = PayloadCompressor.decompress(channelHandlerContext.alloc(), header.getFlags(), compressed, maxFrameLength);
+            } finally {
+                compressed.release();
+            }
+            header.setFlags(header.getFlags() & ~Header.FLAG_COMPRESSION_MASK);
+        }
         list.add(new Command(header, payload));
     }
 
     protected abstract Header decodeHeader(ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf) ;
+
+    /**
+     * 解码{@link Header#VERSION_2}的头部，版本号已经从帧的第一个字节中取出
+     */
+    protected abstract Header decodeHeaderV2(ChannelHandlerContext channelHandlerContext, int version, ByteBuf byteBuf) ;
 }
@@ -15,28 +15,116 @@ package com.github.liyue2008.rpc.transport.netty;
 
 import com.github.liyue2008.rpc.transport.command.Command;
 import com.github.liyue2008.rpc.transport.command.Header;
+import com.github.liyue2008.rpc.transport.compress.PayloadCompressor;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.handler.codec.MessageToMessageEncoder;
+
+import java.util.List;
 
 /**
+ * 只把长度和Header写入新申请的缓冲区，payload不再复制，
+ * 而是和Header一起组合成一个CompositeByteBuf写出去。
+ *
+ * 按Header中的版本选择帧格式：
+ * <pre>
+ * VERSION_1: [int 帧长度][int type][int version][int requestId][扩展头部][payload]
+ * VERSION_2: [byte 0x80|version][varint 后续长度][varint type][varint flags][varint requestId][扩展头部][payload]
+ * </pre>
+ * VERSION_1的帧长度总是正数，第一个字节的最高位一定是0，解码器据此区分两种格式。
+ * 客户端从版本1开始，服务端在版本1的响应中声明支持VERSION_2之后才切换，见{@link RequestEncoder}。
+ * VERSION_2的payload可以压缩，见{@link PayloadCompressor}。
  * @author LiYue
  * Date: 2019/9/23
  */
-public abstract class CommandEncoder extends MessageToByteEncoder {
+public abstract class CommandEncoder extends MessageToMessageEncoder<Command> {
+    private final PayloadCompressor compressor;
+
+    protected CommandEncoder() {
+        this(null);
+    }
+
+    /**
+     * @param compressor 为null时不压缩
+     */
+    protected CommandEncoder(PayloadCompressor compressor) {
+        this.compressor = compressor;
+    }
 
     @Override
-    protected void encode(ChannelHandlerContext channelHandlerContext, Object o, ByteBuf byteBuf) throws Exception {
-        if(!(o instanceof Command)) {
-            throw new Exception(String.format("Unknown type: %s!", o.getClass().getCanonicalName()));
+    protected void encode(ChannelHandlerContext channelHandlerContext, Command command, List<Object> out) throws Exception {
+        Header header = command.getHeader();
+        header.setFlags(header.getFlags() & ~Header.FLAG_COMPRESSION_MASK);
+        if (command.payloadLength() == 0) {
+            out.add(encodeHeader(channelHandlerContext, header, 0));
+            return;
         }
+        // 编码完成后MessageToMessageEncoder会释放command，所以这里需要为payload增加一个引用
+        ByteBuf payloadBuffer = command.hasPayloadBuffer() ?
+                command.getPayloadBuffer().retainedSlice() : Unpooled.wrappedBuffer(command.getPayload());
+        ByteBuf headerBuffer;
+        try {
+            if (compressor != null && header.getVersion() >= Header.VERSION_2 && canCompress(channelHandlerContext)) {
+                ByteBuf compressed = compressor.compress(channelHandlerContext.alloc(), payloadBuffer);
+                if (compressed != null) {
+                    payloadBuffer.release();
+                    payloadBuffer = compressed;
+                    header.setFlags(header.getFlags() | compressor.flag());
+                }
+            }
+            headerBuffer = encodeHeader(channelHandlerContext, header, payloadBuffer.readableBytes());
+        } catch (Throwable t) {
+            payloadBuffer.release();
+            throw t;
+        }
+        out.add(channelHandlerContext.alloc().compositeBuffer(2)
+                .addComponents(true, headerBuffer, payloadBuffer));
+    }
 
-        Command command = (Command) o;
-        byteBuf.writeInt(Integer.BYTES + command.getHeader().length() + command.getPayload().length);
-        encodeHeader(channelHandlerContext, command.getHeader(), byteBuf);
-        byteBuf.writeBytes(command.getPayload());
+    /**
+     * 对端能否解压这个连接上的payload
+     */
+    protected boolean canCompress(ChannelHandlerContext channelHandlerContext) {
+        return true;
+    }
 
+    private ByteBuf encodeHeader(ChannelHandlerContext channelHandlerContext, Header header, int payloadLength) throws Exception {
+        return header.getVersion() >= Header.VERSION_2 ?
+                encodeV2(channelHandlerContext, header, payloadLength) :
+                encodeV1(channelHandlerContext, header, payloadLength);
+    }
 
+    private ByteBuf encodeV1(ChannelHandlerContext channelHandlerContext, Header header, int payloadLength) throws Exception {
+        int headerLength = header.length();
+        ByteBuf headerBuffer = channelHandlerContext.alloc().buffer(Integer.BYTES + headerLength);
+        try {
+            headerBuffer.writeInt(Integer.BYTES + headerLength + payloadLength);
+            encodeHeader(channelHandlerContext, header, headerBuffer);
+        } catch (Throwable t) {
+            headerBuffer.release();
+            throw t;
+        }
+        return headerBuffer;
+    }
+
+    private ByteBuf encodeV2(ChannelHandlerContext channelHandlerContext, Header header, int payloadLength) throws Exception {
+        if (header.getVersion() > 0x7F) {
+            throw new Exception(String.format("Unsupported version: %d!", header.getVersion()));
+        }
+        int headerLength = headerLengthV2(header);
+        int frameLength = headerLength + payloadLength;
+        ByteBuf headerBuffer = channelHandlerContext.alloc().buffer(
+                1 + VarintSupport.varintLength(frameLength) + headerLength);
+        try {
+            headerBuffer.writeByte(0x80 | header.getVersion());
+            VarintSupport.writeVarint(headerBuffer, frameLength);
+            encodeHeaderV2(channelHandlerContext, header, headerBuffer);
+        } catch (Throwable t) {
+            headerBuffer.release();
+            throw t;
+        }
+        return headerBuffer;
     }
 
     protected void encodeHeader(ChannelHandlerContext channelHandlerContext, Header header, ByteBuf byteBuf) throws Exception {
@@ -44,4 +132,25 @@ public abstract class CommandEncoder extends MessageToByteEncoder {
         byteBuf.writeInt(header.getVersion());
         byteBuf.writeInt(header.getRequestId());
     }
+
+    /**
+     * {@link Header#VERSION_2}的头部长度，子类扩展了头部时需要同时覆盖这个方法和{@link #encodeHeaderV2}
+     */
+    protected int headerLengthV2(Header header) throws Exception {
+        return VarintSupport.varintLength(header.getType()) + VarintSupport.varintLength(flagsV2(header)) +
+                VarintSupport.varintLength(header.getRequestId());
+    }
+
+    protected void encodeHeaderV2(ChannelHandlerContext channelHandlerContext, Header header, ByteBuf byteBuf) throws Exception {
+        VarintSupport.writeVarint(byteBuf, header.getType());
+        VarintSupport.writeVarint(byteBuf, flagsV2(header));
+        VarintSupport.writeVarint(byteBuf, header.getRequestId());
+    }
+
+    /**
+     * 写入帧的标志位，子类可以加上由编码器自己维护的标志
+     */
+    protected int flagsV2(Header header) {
+        return header.getFlags();
+    }
 }
@@ -0,0 +1,65 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty;
+
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollDomainSocketChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.unix.DomainSocketAddress;
+
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * 通过Unix domain socket连接同一台机器上的服务端，服务地址是unix:///path，只支持epoll。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+public class DomainSocketClient extends NettyClient {
+    static final String SCHEME = "unix";
+
+    @Override
+    public Collection<String> supportedSchemes() {
+        return Collections.singleton(SCHEME);
+    }
+
+    @Override
+    public SocketAddress addressOf(URI uri) {
+        if (null == uri.getPath() || uri.getPath().isEmpty()) {
+            throw new IllegalArgumentException(String.format("No socket file path in uri: %s!", uri));
+        }
+        return new DomainSocketAddress(uri.getPath());
+    }
+
+    @Override
+    protected Class<? extends EventLoopGroup> eventLoopGroupType() {
+        checkAvailable();
+        return EpollEventLoopGroup.class;
+    }
+
+    @Override
+    protected Class<? extends Channel> channelClass() {
+        return EpollDomainSocketChannel.class;
+    }
+
+    static void checkAvailable() {
+        if (!Epoll.isAvailable()) {
+            throw new IllegalStateException("Unix domain socket transport requires epoll!", Epoll.unavailabilityCause());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty;
+
+import com.github.liyue2008.rpc.ServerConfig;
+import com.github.liyue2008.rpc.transport.RequestHandlerRegistry;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerDomainSocketChannel;
+import io.netty.channel.unix.DomainSocketAddress;
+import io.netty.channel.unix.Errors;
+import io.netty.channel.unix.Socket;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.ConnectException;
+import java.net.SocketAddress;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * 在Unix domain socket文件上监听的服务端，同一台机器上的客户端通过unix:///path访问，
+ * 不经过TCP协议栈。帧格式和处理流程与TCP的服务端完全相同，只支持epoll。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+public class DomainSocketServer extends NettyServer {
+    private static final int S_IFMT = 0170000;
+    private static final int S_IFSOCK = 0140000;
+    private File socketFile = null;
+
+    @Override
+    public Collection<String> supportedSchemes() {
+        return Collections.singleton(DomainSocketClient.SCHEME);
+    }
+
+    @Override
+    public void start(RequestHandlerRegistry requestHandlerRegistry, SocketAddress address) throws Exception {
+        if (!(address instanceof DomainSocketAddress)) {
+            throw new IllegalArgumentException(String.format("Not a domain socket address: %s!", address));
+        }
+        DomainSocketClient.checkAvailable();
+        File socketFile = new File(((DomainSocketAddress) address).path());
+        if (socketFile.exists() || Files.isSymbolicLink(socketFile.toPath())) {
+            removeStaleSocket((DomainSocketAddress) address, socketFile);
+        }
+        super.start(requestHandlerRegistry, address);
+        this.socketFile = socketFile;
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        if (null != socketFile) {
+            socketFile.delete();
+        }
+    }
+
+    /**
+     * 上次没有正常退出时留下的socket文件会导致绑定失败。
+     * 只有确认这个文件是socket，并且连接它被拒绝（没有进程在上面监听）时才删除，
+     * 其它情况都认为地址正在被使用，不能删掉别人的文件。
+     */
+    private static void removeStaleSocket(DomainSocketAddress address, File socketFile) throws IOException {
+        if (!isSocket(socketFile)) {
+            throw new BindException(String.format("Address already in use, not a socket: %s!", socketFile));
+        }
+        boolean stale = false;
+        Socket socket = Socket.newSocketDomain();
+        try {
+            socket.connect(address);
+        } catch (FileNotFoundException e) {
+            // 文件已经被别人删掉了
+            return;
+        } catch (ConnectException e) {
+            // 所有connect失败都是ConnectException，只有连接被拒绝才说明上面没有进程在监听
+            String refused = Errors.newIOException("connect", Errors.ERROR_ECONNREFUSED_NEGATIVE).getMessage();
+            if (null == e.getMessage() || !e.getMessage().endsWith(refused)) {
+                throw addressInUse(socketFile, e);
+            }
+            stale = true;
+        } catch (IOException e) {
+            throw addressInUse(socketFile, e);
+        } finally {
+            socket.close();
+        }
+        if (!stale) {
+            throw addressInUse(socketFile, null);
+        }
+        if (!socketFile.delete()) {
+            throw new IllegalStateException(String.format("Can not delete stale socket file: %s!", socketFile));
+        }
+    }
+
+    private static BindException addressInUse(File socketFile, Throwable cause) {
+        BindException bindException = new BindException(String.format("Address already in use: %s!", socketFile));
+        if (null != cause) {
+            bindException.initCause(cause);
+        }
+        return bindException;
+    }
+
+    private static boolean isSocket(File file) throws IOException {
+        int mode = (Integer) Files.getAttribute(file.toPath(), "unix:mode", LinkOption.NOFOLLOW_LINKS);
+        return (mode & S_IFMT) == S_IFSOCK;
+    }
+
+    @Override
+    protected Class<? extends EventLoopGroup> eventLoopGroupType() {
+        DomainSocketClient.checkAvailable();
+        return EpollEventLoopGroup.class;
+    }
+
+    @Override
+    protected void configureOptions(ServerBootstrap serverBootstrap, ServerConfig serverConfig) {
+        // 没有TCP的参数，只设置队列长度和缓冲区大小
+        if (serverConfig.getBacklog() > 0) {
+            serverBootstrap.option(ChannelOption.SO_BACKLOG, serverConfig.getBacklog());
+        }
+        if (serverConfig.getReceiveBufferSize() > 0) {
+            serverBootstrap.childOption(ChannelOption.SO_RCVBUF, serverConfig.getReceiveBufferSize());
+        }
+        if (serverConfig.getSendBufferSize() > 0) {
+            serverBootstrap.childOption(ChannelOption.SO_SNDBUF, serverConfig.getSendBufferSize());
+        }
+    }
+
+    @Override
+    protected Class<? extends ServerChannel> serverChannelClass() {
+        return EpollServerDomainSocketChannel.class;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty;
+
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 创建网络IO线程组，同时管理进程内共享的线程组。
+ * 共享的线程组每种类型只有一个，所有的客户端和服务端都可以借用，用引用计数管理生命周期：
+ * 第一次借用时创建，线程数由第一个借用者决定；所有借用者都归还之后才关闭。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+public class EventLoopGroups {
+    private static final Map<Class<? extends EventLoopGroup>, SharedGroup> sharedGroups = new HashMap<>();
+
+    private EventLoopGroups() {}
+
+    /**
+     * 支持epoll时使用epoll，否则使用NIO
+     */
+    public static Class<? extends EventLoopGroup> defaultType() {
+        return Epoll.isAvailable() ? EpollEventLoopGroup.class : NioEventLoopGroup.class;
+    }
+
+    /**
+     * 创建一个独占的线程组
+     * @param nThreads 线程数，为0时使用Netty的默认值：CPU核数的2倍
+     */
+    public static EventLoopGroup newGroup(Class<? extends EventLoopGroup> type, int nThreads) {
+        if (type == EpollEventLoopGroup.class) {
+            return new EpollEventLoopGroup(nThreads);
+        }
+        if (type == NioEventLoopGroup.class) {
+            return new NioEventLoopGroup(nThreads);
+        }
+        if (type == DefaultEventLoopGroup.class) {
+            return new DefaultEventLoopGroup(nThreads);
+        }
+        throw new IllegalArgumentException(String.format("Unsupported event loop group: %s!", type.getName()));
+    }
+
+    /**
+     * 借用共享的线程组，用完之后需要调用{@link #release(EventLoopGroup)}归还
+     * @param nThreads 线程组还没有创建时使用的线程数
+     */
+    public static synchronized EventLoopGroup acquireShared(Class<? extends EventLoopGroup> type, int nThreads) {
+        SharedGroup sharedGroup = sharedGroups.get(type);
+        if (null == sharedGroup) {
+            sharedGroup = new SharedGroup(newGroup(type, nThreads));
+            sharedGroups.put(type, sharedGroup);
+        }
+        sharedGroup.references++;
+        return sharedGroup.group;
+    }
+
+    /**
+     * 归还共享的线程组，最后一个借用者归还时关闭；独占的线程组直接关闭
+     */
+    public static synchronized void release(EventLoopGroup group) {
+        for (Map.Entry<Class<? extends EventLoopGroup>, SharedGroup> entry : sharedGroups.entrySet()) {
+            SharedGroup sharedGroup = entry.getValue();
+            if (sharedGroup.group == group) {
+                if (--sharedGroup.references == 0) {
+                    sharedGroups.remove(entry.getKey());
+                    group.shutdownGracefully();
+                }
+                return;
+            }
+        }
+        group.shutdownGracefully();
+    }
+
+    /**
+     * 当前线程是不是这个线程组中的一个线程
+     * @return 当前线程对应的EventLoop，不是时返回null
+     */
+    static EventLoop currentEventLoop(EventLoopGroup group) {
+        for (EventExecutor executor : group) {
+            if (executor.inEventLoop()) {
+                return (EventLoop) executor;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 从线程组中选一个不是current的线程
+     * @return 线程组中只有current一个线程时返回null
+     */
+    static EventLoop otherEventLoop(EventLoopGroup group, EventLoop current) {
+        for (EventExecutor executor : group) {
+            if (executor != current) {
+                return (EventLoop) executor;
+            }
+        }
+        return null;
+    }
+
+    private static class SharedGroup {
+        private final EventLoopGroup group;
+        private int references = 0;
+
+        private SharedGroup(EventLoopGroup group) {
+            this.group = group;
+        }
+    }
+}
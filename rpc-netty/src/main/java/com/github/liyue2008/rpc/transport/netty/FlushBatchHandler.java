@@ -0,0 +1,136 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * 合并刷新，减少write系统调用。放在pipeline的最前面，看到的是编码后的ByteBuf。
+ * 1. 读取过程中请求的刷新推迟到channelReadComplete，一批请求的响应一起刷新；
+ * 2. 其它线程写出的消息，在事件循环中排队的任务执行完之后刷新一次；
+ * 3. 积累的消息数或者字节数达到阈值时立即刷新。
+ * 所有方法都在连接的事件循环中执行，不需要同步。
+ * @author LiYue
+ * Date: 2019/10/17
+ */
+public class FlushBatchHandler extends ChannelDuplexHandler {
+    private final int maxPendingMessages;
+    private final long maxPendingBytes;
+    private int pendingMessages = 0;
+    private long pendingBytes = 0L;
+    private boolean flushRequested = false;
+    private boolean readInProgress = false;
+    private boolean flushScheduled = false;
+    private ChannelHandlerContext ctx;
+    private final Runnable flushTask = () -> {
+        flushScheduled = false;
+        flushIfRequested();
+    };
+
+    /**
+     * @param maxPendingMessages 积累了多少个消息立即刷新
+     * @param maxPendingBytes 积累了多少字节立即刷新
+     */
+    public FlushBatchHandler(int maxPendingMessages, long maxPendingBytes) {
+        this.maxPendingMessages = maxPendingMessages;
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        pendingMessages++;
+        pendingBytes += sizeOf(msg);
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        flushRequested = true;
+        if (pendingMessages >= maxPendingMessages || pendingBytes >= maxPendingBytes) {
+            flushIfRequested();
+        } else if (!readInProgress && !flushScheduled) {
+            flushScheduled = true;
+            ctx.channel().eventLoop().execute(flushTask);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        readInProgress = true;
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void channelReadComplete(ChannelHandlerContext ctx) {
+        readInProgress = false;
+        flushIfRequested();
+        ctx.fireChannelReadComplete();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        if (!ctx.channel().isWritable()) {
+            // 不可写时尽快把已经写出的数据刷新出去
+            flushIfRequested();
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        readInProgress = false;
+        flushIfRequested();
+        ctx.fireExceptionCaught(cause);
+    }
+
+    @Override
+    public void close(ChannelHandlerContext ctx, ChannelPromise promise) {
+        readInProgress = false;
+        flushIfRequested();
+        ctx.close(promise);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        flushIfRequested();
+    }
+
+    private void flushIfRequested() {
+        if (flushRequested) {
+            flushRequested = false;
+            pendingMessages = 0;
+            pendingBytes = 0L;
+            ctx.flush();
+        }
+    }
+
+    private static long sizeOf(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return ((ByteBuf) msg).readableBytes();
+        }
+        if (msg instanceof ByteBufHolder) {
+            return ((ByteBufHolder) msg).content().readableBytes();
+        }
+        return 0L;
+    }
+}
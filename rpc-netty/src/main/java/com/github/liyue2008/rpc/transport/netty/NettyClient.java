@@ -13,9 +13,12 @@
  */
 package com.github.liyue2008.rpc.transport.netty;
 
+import com.github.liyue2008.rpc.ClientConfig;
+import com.github.liyue2008.rpc.FlushMode;
 import com.github.liyue2008.rpc.transport.InFlightRequests;
 import com.github.liyue2008.rpc.transport.Transport;
 import com.github.liyue2008.rpc.transport.TransportClient;
+import com.github.liyue2008.rpc.transport.compress.PayloadCompressor;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
@@ -23,14 +26,17 @@ import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.epoll.Epoll;
-import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.epoll.EpollSocketChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioSocketChannel;
 
 import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.TimeoutException;
@@ -42,82 +48,143 @@ import java.util.concurrent.TimeoutException;
 public class NettyClient implements TransportClient {
     private EventLoopGroup ioEventGroup;
     private Bootstrap bootstrap;
-    private final InFlightRequests inFlightRequests;
+    private volatile ClientConfig clientConfig = new ClientConfig();
     private List<Channel> channels = new LinkedList<>();
+    private boolean closed = false;
 
-    public NettyClient() {
-        inFlightRequests = new InFlightRequests();
+    @Override
+    public synchronized void setClientConfig(ClientConfig clientConfig) {
+        this.clientConfig = clientConfig;
     }
 
     private Bootstrap newBootstrap(ChannelHandler channelHandler, EventLoopGroup ioEventGroup) {
         Bootstrap bootstrap = new Bootstrap();
-        bootstrap.channel(Epoll.isAvailable() ? EpollSocketChannel.class : NioSocketChannel.class)
+        bootstrap.channel(channelClass())
                 .group(ioEventGroup)
                 .handler(channelHandler)
                 .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
         return bootstrap;
     }
 
+    @Override
+    public Collection<String> supportedSchemes() {
+        return Collections.singleton("rpc");
+    }
+
+    /**
+     * 连接的Channel类型，子类可以替换成其它的传输方式
+     */
+    protected Class<? extends Channel> channelClass() {
+        return Epoll.isAvailable() ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
     @Override
     public Transport createTransport(SocketAddress address, long connectionTimeout) throws InterruptedException, TimeoutException {
-        return new NettyTransport(createChannel(address, connectionTimeout), inFlightRequests);
+        return new NettyTransport(createChannel(address, connectionTimeout));
     }
 
-    private synchronized Channel createChannel(SocketAddress address, long connectionTimeout) throws InterruptedException, TimeoutException {
+    private Channel createChannel(SocketAddress address, long connectionTimeout) throws InterruptedException, TimeoutException {
         if (address == null) {
             throw new IllegalArgumentException("address must not be null!");
         }
-        if (ioEventGroup == null) {
-            ioEventGroup = newIoEventGroup();
-        }
-        if (bootstrap == null){
-            ChannelHandler channelHandlerPipeline = newChannelHandlerPipeline();
-            bootstrap = newBootstrap(channelHandlerPipeline, ioEventGroup);
-        }
-            ChannelFuture channelFuture;
-            Channel channel;
-            channelFuture = bootstrap.connect(address);
-            if (!channelFuture.await(connectionTimeout)) {
-                throw new TimeoutException();
+        ChannelFuture channelFuture;
+        boolean inCurrentEventLoop;
+        synchronized (this) {
+            // 关闭之后连接池重连时不能再创建新的IO线程组，否则它不会再被释放
+            if (closed) {
+                throw new IllegalStateException("Client closed!");
+            }
+            if (ioEventGroup == null) {
+                ioEventGroup = clientConfig.isSharedEventLoop() ?
+                        EventLoopGroups.acquireShared(eventLoopGroupType(), 0) :
+                        EventLoopGroups.newGroup(eventLoopGroupType(), 0);
+            }
+            if (bootstrap == null) {
+                ChannelHandler channelHandlerPipeline = newChannelHandlerPipeline();
+                bootstrap = newBootstrap(channelHandlerPipeline, ioEventGroup);
             }
-            channel = channelFuture.channel();
-            if (channel == null || !channel.isActive()) {
-                throw new IllegalStateException();
+            EventLoop currentEventLoop = EventLoopGroups.currentEventLoop(ioEventGroup);
+            EventLoop eventLoop = currentEventLoop;
+            if (null != currentEventLoop && clientConfig.getConnectionSelector() != ClientConfig.ConnectionSelector.EVENT_LOOP) {
+                // 调用线程是IO线程，但是调用方可能同步等待响应：连接不能建立在调用线程上，否则响应永远不会被处理。
+                // 线程组中只有这一个线程时没有办法，同步调用会立即失败
+                EventLoop otherEventLoop = EventLoopGroups.otherEventLoop(ioEventGroup, currentEventLoop);
+                if (null != otherEventLoop) {
+                    eventLoop = otherEventLoop;
+                }
             }
+            // 调用线程就是这个客户端的IO线程，并且按照IO线程选择连接时（比如共享IO线程组时在服务端的IO线程上调用远程服务），
+            // 直接在调用线程上建立连接，之后这个连接上的读写都不需要切换线程
+            inCurrentEventLoop = null != currentEventLoop && eventLoop == currentEventLoop;
+            channelFuture = null == eventLoop ? bootstrap.connect(address) :
+                    bootstrap.clone(eventLoop)
+                            .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) Math.min(connectionTimeout, Integer.MAX_VALUE))
+                            .connect(address);
+            Channel channel = channelFuture.channel();
             channels.add(channel);
+            // 连接池会替换断开的连接，这里不再持有它
+            channel.closeFuture().addListener(future -> removeChannel(channel));
+        }
+        Channel channel = channelFuture.channel();
+        if (inCurrentEventLoop) {
+            // 不能在IO线程上等待连接建立，建立之前写出的请求由PendingConnectHandler缓存
             return channel;
+        }
+        // 在锁外面等待，连接需要的IO线程可能正在等待这个锁
+        if (!channelFuture.await(connectionTimeout)) {
+            channel.close();
+            throw new TimeoutException();
+        }
+        if (!channel.isActive()) {
+            throw new IllegalStateException(channelFuture.cause());
+        }
+        return channel;
     }
+
+    private synchronized void removeChannel(Channel channel) {
+        channels.remove(channel);
+    }
+
     private ChannelHandler newChannelHandlerPipeline() {
         return new ChannelInitializer<Channel>() {
             @Override
             protected void initChannel(Channel channel) {
+                ClientConfig clientConfig = NettyClient.this.clientConfig;
+                channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(
+                        clientConfig.getWriteBufferLowWaterMark(), clientConfig.getWriteBufferHighWaterMark()));
+                channel.pipeline().addLast(new PendingConnectHandler());
+                if (clientConfig.getFlushMode() == FlushMode.BATCH) {
+                    channel.pipeline().addLast(new FlushBatchHandler(clientConfig.getFlushMaxMessages(), clientConfig.getFlushMaxBytes()));
+                }
                 channel.pipeline()
-                        .addLast(new ResponseDecoder())
-                        .addLast(new RequestEncoder())
-                        .addLast(new ResponseInvocation(inFlightRequests));
+                        .addLast(new ResponseDecoder(clientConfig.getMaxFrameLength()))
+                        .addLast(new RequestEncoder(clientConfig.getProtocolVersion(), PayloadCompressor.of(clientConfig.getCompression(),
+                                clientConfig.getCompressionThreshold(), clientConfig.isAdaptiveCompression())))
+                        .addLast(new OutboundBackpressure(clientConfig))
+                        .addLast(new ResponseInvocation(new InFlightRequests(clientConfig)));
             }
         };
     }
 
-    private EventLoopGroup newIoEventGroup() {
-
-        if (Epoll.isAvailable()) {
-            return new EpollEventLoopGroup();
-        } else {
-            return new NioEventLoopGroup();
-        }
+    /**
+     * IO线程组的类型，要和{@link #channelClass()}匹配。同一类型的共享线程组在所有客户端和服务端之间共用
+     */
+    protected Class<? extends EventLoopGroup> eventLoopGroupType() {
+        return EventLoopGroups.defaultType();
     }
 
     @Override
-    public void close() {
-        for (Channel channel : channels) {
+    public synchronized void close() {
+        closed = true;
+        for (Channel channel : new ArrayList<>(channels)) {
             if(null != channel) {
                 channel.close();
             }
         }
         if (ioEventGroup != null) {
-            ioEventGroup.shutdownGracefully();
+            EventLoopGroups.release(ioEventGroup);
+            ioEventGroup = null;
+            bootstrap = null;
         }
-        inFlightRequests.close();
     }
 }
@@ -13,98 +13,202 @@
  */
 package com.github.liyue2008.rpc.transport.netty;
 
+import com.github.liyue2008.rpc.FlushMode;
+import com.github.liyue2008.rpc.ServerConfig;
 import com.github.liyue2008.rpc.transport.RequestHandlerRegistry;
 import com.github.liyue2008.rpc.transport.TransportServer;
+import com.github.liyue2008.rpc.transport.compress.PayloadCompressor;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.epoll.Epoll;
-import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.epoll.EpollServerSocketChannel;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.GlobalEventExecutor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * @author LiYue
  * Date: 2019/9/20
  */
 public class NettyServer implements TransportServer {
     private static final Logger logger = LoggerFactory.getLogger(NettyServer.class);
-    private int port;
+    private SocketAddress address;
     private EventLoopGroup acceptEventGroup;
     private EventLoopGroup ioEventGroup;
-    private Channel channel;
+    private volatile List<Channel> channels = Collections.emptyList();
+    private final ChannelGroup childChannels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
     private RequestHandlerRegistry requestHandlerRegistry;
+    private ServerConfig serverConfig = new ServerConfig();
 
     @Override
-    public void start(RequestHandlerRegistry requestHandlerRegistry, int port) throws Exception {
-        this.port = port;
-        this.requestHandlerRegistry = requestHandlerRegistry;
-        EventLoopGroup acceptEventGroup = newEventLoopGroup();
-        EventLoopGroup ioEventGroup = newEventLoopGroup();
-        ChannelHandler channelHandlerPipeline = newChannelHandlerPipeline();
-        ServerBootstrap serverBootstrap = newBootstrap(channelHandlerPipeline, acceptEventGroup, ioEventGroup);
-        Channel channel = doBind(serverBootstrap);
+    public void setServerConfig(ServerConfig serverConfig) {
+        this.serverConfig = serverConfig;
+    }
+
+    @Override
+    public Collection<String> supportedSchemes() {
+        return Collections.singleton("rpc");
+    }
 
+    @Override
+    public void start(RequestHandlerRegistry requestHandlerRegistry, SocketAddress address) throws Exception {
+        this.address = address;
+        this.requestHandlerRegistry = requestHandlerRegistry;
+        boolean reusePort = serverConfig.isReusePort() && isReusePortSupported();
+        EventLoopGroup acceptEventGroup;
+        EventLoopGroup ioEventGroup;
+        if (serverConfig.isSharedEventLoop()) {
+            // 共享的线程组同时用来接受连接和网络IO
+            ioEventGroup = EventLoopGroups.acquireShared(eventLoopGroupType(), serverConfig.getIoThreads());
+            acceptEventGroup = reusePort ? null : ioEventGroup;
+        } else {
+            ioEventGroup = EventLoopGroups.newGroup(eventLoopGroupType(), serverConfig.getIoThreads());
+            // 使用SO_REUSEPORT时每个IO线程自己接受连接，不需要单独的接受连接线程
+            acceptEventGroup = reusePort ? null : EventLoopGroups.newGroup(eventLoopGroupType(), serverConfig.getAcceptThreads());
+        }
         this.acceptEventGroup = acceptEventGroup;
         this.ioEventGroup = ioEventGroup;
-        this.channel = channel;
+        ChannelHandler channelHandlerPipeline = newChannelHandlerPipeline();
+        List<Channel> channels = new ArrayList<>();
+        this.channels = channels;
+        try {
+            if (reusePort) {
+                SocketAddress bindAddress = address;
+                for (EventExecutor executor : ioEventGroup) {
+                    EventLoop eventLoop = (EventLoop) executor;
+                    ServerBootstrap serverBootstrap = newBootstrap(channelHandlerPipeline, eventLoop, eventLoop)
+                            .option(EpollChannelOption.SO_REUSEPORT, true);
+                    Channel channel = doBind(serverBootstrap, bindAddress);
+                    channels.add(channel);
+                    // 端口为0时，之后的监听都使用第一个监听分配到的端口
+                    bindAddress = channel.localAddress();
+                }
+                logger.info("Listening on {} with {} SO_REUSEPORT acceptors.", channels.get(0).localAddress(), channels.size());
+            } else {
+                channels.add(doBind(newBootstrap(channelHandlerPipeline, acceptEventGroup, ioEventGroup), address));
+            }
+        } catch (Exception e) {
+            stop();
+            throw e;
+        }
+    }
 
+    private boolean isReusePortSupported() {
+        if (Epoll.isAvailable() && serverChannelClass() == EpollServerSocketChannel.class) {
+            return true;
+        }
+        logger.warn("SO_REUSEPORT requires epoll TCP transport, fall back to a single acceptor.");
+        return false;
+    }
+
+    @Override
+    public SocketAddress localAddress() {
+        List<Channel> channels = this.channels;
+        return channels.isEmpty() ? null : channels.get(0).localAddress();
     }
 
     @Override
     public void stop() {
-        if (acceptEventGroup != null) {
-            acceptEventGroup.shutdownGracefully();
+        // 先关闭监听的Channel，再停止EventLoop，stop返回时已经不再接受新的连接
+        for (Channel channel : channels) {
+            channel.close().awaitUninterruptibly();
         }
-        if (ioEventGroup != null) {
-            ioEventGroup.shutdownGracefully();
+        channels = Collections.emptyList();
+        // 共享的线程组不会随着这个服务端关闭，需要自己关闭接受的连接
+        childChannels.close().awaitUninterruptibly();
+        if (acceptEventGroup != null && acceptEventGroup != ioEventGroup) {
+            EventLoopGroups.release(acceptEventGroup);
         }
-        if (channel != null) {
-            channel.close();
+        if (ioEventGroup != null) {
+            EventLoopGroups.release(ioEventGroup);
         }
+        acceptEventGroup = null;
+        ioEventGroup = null;
     }
 
-    private Channel doBind(ServerBootstrap serverBootstrap) throws Exception {
-        return serverBootstrap.bind(port)
+    private Channel doBind(ServerBootstrap serverBootstrap, SocketAddress address) throws Exception {
+        return serverBootstrap.bind(address)
                 .sync()
                 .channel();
     }
 
-    private EventLoopGroup newEventLoopGroup() {
-        if (Epoll.isAvailable()) {
-            return new EpollEventLoopGroup();
-        } else {
-            return new NioEventLoopGroup();
-        }
+    /**
+     * IO线程组的类型，要和{@link #serverChannelClass()}匹配。同一类型的共享线程组在所有客户端和服务端之间共用
+     */
+    protected Class<? extends EventLoopGroup> eventLoopGroupType() {
+        return EventLoopGroups.defaultType();
     }
 
     private ChannelHandler newChannelHandlerPipeline() {
         return new ChannelInitializer<Channel>() {
             @Override
             protected void initChannel(Channel channel) {
+                childChannels.add(channel);
+                if (serverConfig.getFlushMode() == FlushMode.BATCH) {
+                    channel.pipeline().addLast(new FlushBatchHandler(serverConfig.getFlushMaxMessages(), serverConfig.getFlushMaxBytes()));
+                }
                 channel.pipeline()
-                        .addLast(new RequestDecoder())
-                        .addLast(new ResponseEncoder())
-                        .addLast(new RequestInvocation(requestHandlerRegistry));
+                        .addLast(new RequestDecoder(serverConfig.getMaxFrameLength()))
+                        .addLast(new ResponseEncoder(PayloadCompressor.of(serverConfig.getCompression(),
+                                serverConfig.getCompressionThreshold(), serverConfig.isAdaptiveCompression())))
+                        .addLast(new RequestInvocation(requestHandlerRegistry, serverConfig.getStreamWindow()));
             }
         };
     }
 
     private ServerBootstrap newBootstrap(ChannelHandler channelHandler, EventLoopGroup acceptEventGroup, EventLoopGroup ioEventGroup) {
         ServerBootstrap serverBootstrap = new ServerBootstrap();
-        serverBootstrap.channel(Epoll.isAvailable() ? EpollServerSocketChannel.class : NioServerSocketChannel.class)
+        serverBootstrap.channel(serverChannelClass())
                 .group(acceptEventGroup, ioEventGroup)
                 .childHandler(channelHandler)
-                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
+                        serverConfig.getWriteBufferLowWaterMark(), serverConfig.getWriteBufferHighWaterMark()));
+        configureOptions(serverBootstrap, serverConfig);
         return serverBootstrap;
     }
 
+    /**
+     * 设置监听和连接的Socket参数，子类可以换成适合自己传输方式的参数
+     */
+    protected void configureOptions(ServerBootstrap serverBootstrap, ServerConfig serverConfig) {
+        if (serverConfig.getBacklog() > 0) {
+            serverBootstrap.option(ChannelOption.SO_BACKLOG, serverConfig.getBacklog());
+        }
+        if (serverConfig.getReceiveBufferSize() > 0) {
+            // 接受的连接继承监听Socket的接收缓冲区，TCP窗口扩大选项在握手时就按照它协商
+            serverBootstrap.option(ChannelOption.SO_RCVBUF, serverConfig.getReceiveBufferSize())
+                    .childOption(ChannelOption.SO_RCVBUF, serverConfig.getReceiveBufferSize());
+        }
+        if (serverConfig.getSendBufferSize() > 0) {
+            serverBootstrap.childOption(ChannelOption.SO_SNDBUF, serverConfig.getSendBufferSize());
+        }
+        serverBootstrap.childOption(ChannelOption.TCP_NODELAY, serverConfig.isTcpNoDelay());
+    }
 
+    /**
+     * 监听的Channel类型，子类可以替换成其它的传输方式
+     */
+    protected Class<? extends ServerChannel> serverChannelClass() {
+        return Epoll.isAvailable() ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
 }
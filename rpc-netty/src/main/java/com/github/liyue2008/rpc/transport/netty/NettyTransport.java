@@ -13,26 +13,41 @@
  */
 package com.github.liyue2008.rpc.transport.netty;
 
+import com.github.liyue2008.rpc.Writability;
+import com.github.liyue2008.rpc.transport.ClientStream;
 import com.github.liyue2008.rpc.transport.InFlightRequests;
 import com.github.liyue2008.rpc.transport.ResponseFuture;
+import com.github.liyue2008.rpc.transport.StreamListener;
 import com.github.liyue2008.rpc.transport.Transport;
 import com.github.liyue2008.rpc.transport.command.Command;
+import com.github.liyue2008.rpc.transport.command.Header;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author LiYue
  * Date: 2019/9/20
  */
 public class NettyTransport implements Transport {
+    private static final Logger logger = LoggerFactory.getLogger(NettyTransport.class);
     private final Channel channel;
     private final InFlightRequests inFlightRequests;
+    private final OutboundBackpressure backpressure;
 
-    NettyTransport(Channel channel, InFlightRequests inFlightRequests) {
+    NettyTransport(Channel channel) {
         this.channel = channel;
-        this.inFlightRequests = inFlightRequests;
+        this.inFlightRequests = channel.pipeline().get(ResponseInvocation.class).getInFlightRequests();
+        this.backpressure = channel.pipeline().get(OutboundBackpressure.class);
     }
 
 
@@ -42,24 +57,270 @@ public class NettyTransport implements Transport {
     public  CompletableFuture<Command> send(Command request) {
         // 构建返回值
         CompletableFuture<Command> completableFuture = new CompletableFuture<>();
+        int bytes = request.payloadLength();
         try {
-            // 将在途请求放到inFlightRequests中
-            inFlightRequests.put(new ResponseFuture(request.getHeader().getRequestId(), completableFuture));
-            // 发送命令
-            channel.writeAndFlush(request).addListener((ChannelFutureListener) channelFuture -> {
-                // 处理发送失败的情况
-                if (!channelFuture.isSuccess()) {
-                    completableFuture.completeExceptionally(channelFuture.cause());
-                    channel.close();
-                }
-            });
+            // 连接积压了太多没有写出的请求时，按照配置等待、失败或者排队
+            backpressure.acquire(bytes);
+        } catch (Throwable t) {
+            ReferenceCountUtil.release(request);
+            completableFuture.completeExceptionally(t);
+            return completableFuture;
+        }
+        try {
+            // 将在途请求放到这个连接的inFlightRequests中，同时分配请求ID
+            request.getHeader().setRequestId(inFlightRequests.put(completableFuture));
         } catch (Throwable t) {
-            // 处理发送异常
-            inFlightRequests.remove(request.getHeader().getRequestId());
+            // 处理发送异常，命令没有写出，需要在这里释放
+            backpressure.release(bytes);
+            ReferenceCountUtil.release(request);
             completableFuture.completeExceptionally(t);
+            return completableFuture;
         }
+        // 发送命令，写出之后由编码器释放命令
+        channel.writeAndFlush(request).addListener((ChannelFutureListener) channelFuture -> {
+            backpressure.release(bytes);
+            // 处理发送失败的情况
+            if (!channelFuture.isSuccess()) {
+                inFlightRequests.remove(request.getHeader().getRequestId());
+                completableFuture.completeExceptionally(channelFuture.cause());
+                channel.close();
+            }
+        });
         return completableFuture;
     }
 
+    @Override
+    public ClientStream sendStream(Command request, StreamListener listener) throws InterruptedException, TimeoutException {
+        Header header = request.getHeader();
+        NettyClientStream stream = new NettyClientStream(header, listener);
+        int bytes = request.payloadLength();
+        try {
+            backpressure.acquire(bytes);
+        } catch (Throwable t) {
+            ReferenceCountUtil.release(request);
+            throw t;
+        }
+        try {
+            stream.requestId = inFlightRequests.putStream(stream);
+        } catch (Throwable t) {
+            backpressure.release(bytes);
+            ReferenceCountUtil.release(request);
+            throw t;
+        }
+        header.setRequestId(stream.requestId);
+        header.setFlags(header.getFlags() | Header.FLAG_STREAM);
+        channel.write(request)
+                .addListener(releaseListener(bytes))
+                .addListener(writeFailureListener(stream.requestId));
+        // 请求和初始的信用一起发出，服务端收到请求时就可以开始发送
+        stream.grant(stream.window());
+        return stream;
+    }
+
+    @Override
+    public void sendOneWay(Command request) throws InterruptedException, TimeoutException {
+        Header header = request.getHeader();
+        header.setRequestId(0);
+        header.setFlags(header.getFlags() | Header.FLAG_ONE_WAY);
+        int bytes = request.payloadLength();
+        try {
+            backpressure.acquire(bytes);
+        } catch (Throwable t) {
+            ReferenceCountUtil.release(request);
+            throw t;
+        }
+        // 不登记在途请求，不占用在途请求的信号量
+        channel.writeAndFlush(request).addListener((ChannelFutureListener) channelFuture -> {
+            backpressure.release(bytes);
+            if (!channelFuture.isSuccess()) {
+                logger.warn("Send one-way request failed!", channelFuture.cause());
+                channel.close();
+            }
+        });
+    }
+
+    private ChannelFutureListener releaseListener(int bytes) {
+        return channelFuture -> backpressure.release(bytes);
+    }
+
+    private ChannelFutureListener writeFailureListener(int requestId) {
+        return channelFuture -> {
+            if (!channelFuture.isSuccess()) {
+                ResponseFuture future = inFlightRequests.remove(requestId);
+                if (null != future) {
+                    future.fail(channelFuture.cause());
+                }
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * 客户端的一个流，登记在在途请求中，把响应转交给调用方的listener。
+     * 双向流中服务端授予的信用记在sendCredits中，没有信用时{@link #send(ByteBuf)}阻塞等待。
+     */
+    private class NettyClientStream implements ClientStream, StreamListener {
+        private final int type;
+        private final int version;
+        private final boolean bidirectional;
+        private final StreamListener listener;
+        private final Semaphore sendCredits = new Semaphore(0);
+        private final AtomicBoolean halfClosed = new AtomicBoolean(false);
+        private volatile boolean closed = false;
+        private int requestId;
+
+        private NettyClientStream(Header header, StreamListener listener) {
+            this.type = header.getType();
+            this.version = header.getVersion();
+            this.bidirectional = header.hasFlag(Header.FLAG_STREAM_MESSAGE);
+            this.listener = listener;
+        }
+
+        @Override
+        public void grant(int credits) {
+            ByteBuf payload = channel.alloc().buffer(Integer.BYTES).writeInt(credits);
+            channel.writeAndFlush(new Command(controlHeader(Header.FLAG_STREAM_CREDIT), payload))
+                    .addListener(writeFailureListener(requestId));
+        }
 
+        @Override
+        public void cancel() {
+            if (null != inFlightRequests.remove(requestId)) {
+                close();
+                channel.writeAndFlush(new Command(controlHeader(Header.FLAG_STREAM_CREDIT | Header.FLAG_END_OF_STREAM), new byte[0]));
+            }
+        }
+
+        @Override
+        public boolean send(ByteBuf message) throws InterruptedException, TimeoutException {
+            try {
+                if (!bidirectional || halfClosed.get()) {
+                    throw new IllegalStateException("Stream is not open for sending!");
+                }
+                if (!sendCredits.tryAcquire(timeoutMillis(), TimeUnit.MILLISECONDS)) {
+                    throw new TimeoutException(String.format("No stream credit granted in %d ms!", timeoutMillis()));
+                }
+            } catch (Throwable t) {
+                message.release();
+                throw t;
+            }
+            if (closed) {
+                // 把唤醒传递给其它等待发送的线程
+                sendCredits.release();
+                message.release();
+                return false;
+            }
+            int bytes = message.readableBytes();
+            try {
+                backpressure.acquire(bytes);
+            } catch (Throwable t) {
+                message.release();
+                throw t;
+            }
+            channel.writeAndFlush(new Command(controlHeader(Header.FLAG_STREAM_MESSAGE), message))
+                    .addListener(releaseListener(bytes))
+                    .addListener(writeFailureListener(requestId));
+            return true;
+        }
+
+        @Override
+        public void halfClose() {
+            if (bidirectional && !closed && halfClosed.compareAndSet(false, true)) {
+                channel.writeAndFlush(new Command(controlHeader(Header.FLAG_STREAM_MESSAGE | Header.FLAG_END_OF_STREAM), new byte[0]))
+                        .addListener(writeFailureListener(requestId));
+            }
+        }
+
+        private Header controlHeader(int flags) {
+            Header header = new Header(type, version, requestId);
+            header.setFlags(flags);
+            return header;
+        }
+
+        @Override
+        public int window() {
+            return inFlightRequests.getStreamWindow();
+        }
+
+        @Override
+        public long timeoutMillis() {
+            return inFlightRequests.getTimeoutMillis();
+        }
+
+        @Override
+        public void onNext(Command response) {
+            listener.onNext(response);
+        }
+
+        @Override
+        public void onComplete(Command response) {
+            close();
+            listener.onComplete(response);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            close();
+            listener.onError(throwable);
+        }
+
+        @Override
+        public void onCredit(int credits) {
+            if (!closed && credits > 0) {
+                sendCredits.release(credits);
+            }
+        }
+
+        /**
+         * 流已经结束，唤醒等待信用的发送线程
+         */
+        private void close() {
+            closed = true;
+            sendCredits.release();
+        }
+    }
+
+    @Override
+    public boolean isActive() {
+        // 在IO线程上建立的连接返回时可能还在连接中，这时已经可以写出请求
+        return channel.isOpen();
+    }
+
+    @Override
+    public int pendingRequests() {
+        return inFlightRequests.size();
+    }
+
+    @Override
+    public boolean isWritable() {
+        return backpressure.isWritable();
+    }
+
+    @Override
+    public void addWritabilityListener(Writability.Listener listener) {
+        backpressure.addListener(listener);
+    }
+
+    @Override
+    public void removeWritabilityListener(Writability.Listener listener) {
+        backpressure.removeListener(listener);
+    }
+
+    /**
+     * 服务端的版本由{@link ResponseDecoder}根据服务端的响应设置，不超过客户端配置的协议版本
+     */
+    @Override
+    public int peerVersion() {
+        Integer peerVersion = channel.attr(RequestEncoder.PEER_VERSION).get();
+        if (null == peerVersion) {
+            return 0;
+        }
+        RequestEncoder encoder = channel.pipeline().get(RequestEncoder.class);
+        return null == encoder ? peerVersion : encoder.maxVersion(peerVersion);
+    }
+
+    @Override
+    public boolean inEventLoop() {
+        return channel.eventLoop().inEventLoop();
+    }
 }
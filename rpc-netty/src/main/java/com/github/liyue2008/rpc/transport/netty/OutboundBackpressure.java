@@ -0,0 +1,149 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty;
+
+import com.github.liyue2008.rpc.ClientConfig;
+import com.github.liyue2008.rpc.Writability;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 客户端连接的写出背压。Netty的出站缓冲区没有上限，服务提供者变慢时继续写出的请求会一直堆积在堆外内存中。
+ * 发送请求之前调用{@link #acquire(int)}，按照{@link ClientConfig.BackpressureMode}等待、立即失败或者在字节数预算内排队，
+ * 请求写出之后调用{@link #release(int)}。连接的可写状态变化时通知注册的监听器。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+class OutboundBackpressure extends ChannelInboundHandlerAdapter {
+    private static final Logger logger = LoggerFactory.getLogger(OutboundBackpressure.class);
+    private final ClientConfig.BackpressureMode backpressureMode;
+    private final long waitMillis;
+    private final long queueBytes;
+    private final AtomicLong queuedBytes = new AtomicLong(0L);
+    private final List<Writability.Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Channel channel;
+
+    OutboundBackpressure(ClientConfig clientConfig) {
+        this.backpressureMode = clientConfig.getBackpressureMode();
+        this.waitMillis = clientConfig.getWriteWaitMillis();
+        this.queueBytes = clientConfig.getWriteQueueBytes();
+    }
+
+    /**
+     * 占用写出的额度，失败时请求不能写出
+     * @param bytes 请求的字节数
+     */
+    void acquire(int bytes) throws InterruptedException, TimeoutException {
+        switch (backpressureMode) {
+            case WAIT:
+                awaitWritable();
+                break;
+            case FAIL:
+                if (!channel.isWritable()) {
+                    throw new TimeoutException("Connection not writable!");
+                }
+                break;
+            default:
+                long queued = queuedBytes.addAndGet(bytes);
+                // 只有一个请求时，即使超过了预算也允许写出
+                if (queued > queueBytes && queued > bytes) {
+                    queuedBytes.addAndGet(-bytes);
+                    throw new TimeoutException(String.format("Too many bytes queued for writing: %d!", queued - bytes));
+                }
+                return;
+        }
+        queuedBytes.addAndGet(bytes);
+    }
+
+    /**
+     * 请求已经写出或者写出失败，归还额度
+     */
+    void release(int bytes) {
+        queuedBytes.addAndGet(-bytes);
+    }
+
+    private void awaitWritable() throws InterruptedException, TimeoutException {
+        Channel channel = this.channel;
+        if (channel.isWritable() || !channel.isOpen()) {
+            return;
+        }
+        if (channel.eventLoop().inEventLoop()) {
+            // 在IO线程上等待会阻塞住让连接恢复可写的写出
+            throw new TimeoutException("Connection not writable!");
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        synchronized (this) {
+            while (!channel.isWritable() && channel.isOpen()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    throw new TimeoutException(String.format("Connection not writable in %d ms!", waitMillis));
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+    }
+
+    boolean isWritable() {
+        return channel.isWritable();
+    }
+
+    void addListener(Writability.Listener listener) {
+        listeners.add(listener);
+    }
+
+    void removeListener(Writability.Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        channel = ctx.channel();
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        boolean writable = ctx.channel().isWritable();
+        if (writable) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+        for (Writability.Listener listener : listeners) {
+            try {
+                listener.onWritabilityChanged(writable);
+            } catch (Throwable t) {
+                logger.warn("Writability listener failed!", t);
+            }
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 唤醒等待的发送线程，它们写出时会因为连接已经关闭而失败
+        synchronized (this) {
+            notifyAll();
+        }
+        super.channelInactive(ctx);
+    }
+}
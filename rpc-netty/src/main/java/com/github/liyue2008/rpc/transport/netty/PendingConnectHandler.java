@@ -0,0 +1,73 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.PendingWriteQueue;
+
+import java.nio.channels.ClosedChannelException;
+
+/**
+ * 在IO线程上建立连接时不能阻塞等待连接完成，连接建立之前写出的消息先缓存在这里，
+ * 连接建立之后按顺序写出，然后把自己从ChannelPipeline中移除。连接失败时缓存的消息全部失败。
+ * 放在ChannelPipeline的最前面，缓存的是已经编码好的字节。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+class PendingConnectHandler extends ChannelDuplexHandler {
+    private PendingWriteQueue pendingWrites;
+    private boolean flushPending = false;
+
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        pendingWrites = new PendingWriteQueue(ctx);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+        if (ctx.channel().isActive()) {
+            ctx.write(msg, promise);
+        } else {
+            pendingWrites.add(msg, promise);
+        }
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) {
+        if (ctx.channel().isActive()) {
+            ctx.flush();
+        } else {
+            flushPending = true;
+        }
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) {
+        pendingWrites.removeAndWriteAll();
+        if (flushPending) {
+            ctx.flush();
+        }
+        ctx.pipeline().remove(this);
+        ctx.fireChannelActive();
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        if (!pendingWrites.isEmpty()) {
+            pendingWrites.removeAndFailAll(new ClosedChannelException());
+        }
+    }
+}
@@ -22,6 +22,16 @@ import io.netty.channel.ChannelHandlerContext;
  * Date: 2019/9/20
  */
 public class RequestDecoder extends CommandDecoder {
+    public RequestDecoder() {
+        super();
+    }
+
+    /**
+     * @param maxFrameLength 一帧的最大长度，也是解压后payload的最大长度
+     */
+    public RequestDecoder(int maxFrameLength) {
+        super(maxFrameLength);
+    }
 
     @Override
     protected Header decodeHeader(ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf) {
@@ -31,4 +41,17 @@ public class RequestDecoder extends CommandDecoder {
                 byteBuf.readInt()
         );
     }
+
+    @Override
+    protected Header decodeHeaderV2(ChannelHandlerContext channelHandlerContext, int version, ByteBuf byteBuf) {
+        int type = VarintSupport.readVarint(byteBuf);
+        int flags = VarintSupport.readVarint(byteBuf);
+        int requestId = VarintSupport.readVarint(byteBuf);
+        if ((flags & Header.FLAG_ACCEPT_COMPRESSION) != 0 && !channelHandlerContext.channel().hasAttr(ResponseEncoder.ACCEPT_COMPRESSION)) {
+            channelHandlerContext.channel().attr(ResponseEncoder.ACCEPT_COMPRESSION).set(Boolean.TRUE);
+        }
+        Header header = new Header(type, version, requestId);
+        header.setFlags(flags);
+        return header;
+    }
 }
@@ -13,17 +13,68 @@
  */
 package com.github.liyue2008.rpc.transport.netty;
 
+import com.github.liyue2008.rpc.transport.command.Command;
 import com.github.liyue2008.rpc.transport.command.Header;
-import io.netty.buffer.ByteBuf;
+import com.github.liyue2008.rpc.transport.compress.PayloadCompressor;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
+import io.netty.util.AttributeKey;
+
+import java.util.List;
 
 /**
  * @author LiYue
  * Date: 2019/9/20
  */
 public class RequestEncoder extends CommandEncoder {
+    /**
+     * 服务端支持的最高协议版本，由{@link ResponseDecoder}在收到响应时设置，没有设置时只能使用版本1
+     */
+    static final AttributeKey<Integer> PEER_VERSION = AttributeKey.valueOf("peerVersion");
+    private final int protocolVersion;
+
+    public RequestEncoder() {
+        this(0, null);
+    }
+
+    /**
+     * @param protocolVersion 请求最高使用的协议版本，为0时使用请求头中的版本。
+     *                        服务端总是用请求的版本回复响应，所以这里决定了整个连接使用的帧格式。
+     *                        连接建立后先使用版本1，收到服务端支持更高版本的响应之后才升级，避免旧服务端把新的帧头当成长度。
+     * @param compressor 压缩请求的payload，为null时不压缩
+     */
+    public RequestEncoder(int protocolVersion, PayloadCompressor compressor) {
+        super(compressor);
+        this.protocolVersion = protocolVersion;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext channelHandlerContext, Command command, List<Object> out) throws Exception {
+        Header header = command.getHeader();
+        if (protocolVersion > 0) {
+            Integer peerVersion = channelHandlerContext.channel().attr(PEER_VERSION).get();
+            header.setVersion(maxVersion(null == peerVersion ? Header.VERSION_1 : peerVersion));
+        }
+        // 流式请求、流控帧和单向请求依赖版本2的标志位，调用方应该先检查Transport#peerVersion()
+        if (header.getVersion() < Header.VERSION_2 &&
+                header.hasFlag(Header.FLAG_STREAM | Header.FLAG_STREAM_CREDIT | Header.FLAG_STREAM_MESSAGE | Header.FLAG_ONE_WAY)) {
+            throw new EncoderException("Stream and one-way requests require protocol version " + Header.VERSION_2 + "!");
+        }
+        super.encode(channelHandlerContext, command, out);
+    }
+
+    /**
+     * 对端支持peerVersion时，这个连接上实际使用的协议版本
+     */
+    int maxVersion(int peerVersion) {
+        return protocolVersion > 0 ? Math.min(protocolVersion, peerVersion) : peerVersion;
+    }
+
+    /**
+     * 客户端总是可以解压响应，告诉服务端这个连接上的响应可以压缩
+     */
     @Override
-    protected void encodeHeader(ChannelHandlerContext channelHandlerContext, Header header, ByteBuf byteBuf) throws Exception {
-        super.encodeHeader(channelHandlerContext, header, byteBuf);
+    protected int flagsV2(Header header) {
+        return super.flagsV2(header) | Header.FLAG_ACCEPT_COMPRESSION;
     }
 }
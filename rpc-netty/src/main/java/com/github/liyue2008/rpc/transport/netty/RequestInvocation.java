@@ -15,48 +15,244 @@ package com.github.liyue2008.rpc.transport.netty;
 
 import com.github.liyue2008.rpc.transport.RequestHandler;
 import com.github.liyue2008.rpc.transport.RequestHandlerRegistry;
+import com.github.liyue2008.rpc.transport.command.Code;
 import com.github.liyue2008.rpc.transport.command.Command;
+import com.github.liyue2008.rpc.transport.command.Header;
+import com.github.liyue2008.rpc.transport.command.ResponseHeader;
+import com.github.liyue2008.rpc.transport.command.StreamRequest;
+import com.github.liyue2008.rpc.transport.command.StreamResponse;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
-import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
 /**
+ * 每个连接一个实例，同时维护这个连接上正在发送的流式响应和正在接收的双向流。
  * @author LiYue
  * Date: 2019/9/20
  */
-@ChannelHandler.Sharable
 public class RequestInvocation extends SimpleChannelInboundHandler<Command> {
     private static final Logger logger = LoggerFactory.getLogger(RequestInvocation.class);
     private final RequestHandlerRegistry requestHandlerRegistry;
+    private final int streamWindow;
+    private final Map<Integer/*request id*/, ServerStream> streams = new ConcurrentHashMap<>();
 
-    RequestInvocation(RequestHandlerRegistry requestHandlerRegistry) {
+    /**
+     * @param streamWindow 双向流中授予客户端的信用窗口
+     */
+    RequestInvocation(RequestHandlerRegistry requestHandlerRegistry, int streamWindow) {
         this.requestHandlerRegistry = requestHandlerRegistry;
+        this.streamWindow = streamWindow;
     }
 
     @Override
     protected void channelRead0(ChannelHandlerContext channelHandlerContext, Command request) throws Exception {
-        RequestHandler handler = requestHandlerRegistry.get(request.getHeader().getType());
+        Header header = request.getHeader();
+        if (header.hasFlag(Header.FLAG_STREAM_CREDIT)) {
+            onStreamCredit(request);
+            return;
+        }
+        if (header.hasFlag(Header.FLAG_STREAM_MESSAGE) && !header.hasFlag(Header.FLAG_STREAM)) {
+            onStreamMessage(request);
+            return;
+        }
+        RequestHandler handler = requestHandlerRegistry.get(header.getType());
         if(null != handler) {
-            Command response = handler.handle(request);
-            if(null != response) {
-                channelHandlerContext.writeAndFlush(response).addListener((ChannelFutureListener) channelFuture -> {
-                    if (!channelFuture.isSuccess()) {
-                        logger.warn("Write response failed!", channelFuture.cause());
-                        channelHandlerContext.channel().close();
-                    }
-                });
-            } else {
-                logger.warn("Response is null!");
+            if (header.hasFlag(Header.FLAG_STREAM)) {
+                // 在IO线程上登记流，之后到达的信用和客户端消息都能找到它
+                int requestId = header.getRequestId();
+                ServerInboundStream inbound = header.hasFlag(Header.FLAG_STREAM_MESSAGE) ?
+                        new ServerInboundStream(channelHandlerContext, header, streamWindow) : null;
+                streams.put(requestId, new ServerStream(channelHandlerContext, header, inbound, () -> streams.remove(requestId)));
+                if (null != inbound) {
+                    // 和原始请求共用payload，由SimpleChannelInboundHandler一起释放
+                    request = new StreamRequest(request, inbound);
+                }
             }
+            dispatch(channelHandlerContext, handler, request);
         } else {
             throw new Exception(String.format("No handler for request with type: %d!", request.getHeader().getType()));
         }
     }
 
+    private void dispatch(ChannelHandlerContext channelHandlerContext, RequestHandler handler, Command request) {
+        Header header = request.getHeader();
+        RequestHandler.Dispatch dispatch = handler.dispatch(request);
+        Executor executor = dispatch.getExecutor();
+        if (null == executor) {
+            // 请求命令在channelRead0返回后由SimpleChannelInboundHandler自动释放
+            handle(channelHandlerContext, dispatch, header, channelHandlerContext.channel().eventLoop());
+            return;
+        }
+        // 交给线程池执行，handleAsync返回之前请求命令不能释放
+        request.retain();
+        try {
+            executor.execute(() -> {
+                try {
+                    handle(channelHandlerContext, dispatch, header, executor);
+                } finally {
+                    request.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            request.release();
+            if (header.hasFlag(Header.FLAG_ONE_WAY)) {
+                // 单向请求无法通知客户端重试，也不能在IO线程上执行服务方法，只能丢弃
+                logger.warn("Server busy, drop one-way request: {}.", header.getRequestId());
+                return;
+            }
+            cancelStream(header.getRequestId());
+            writeResponse(channelHandlerContext, errorResponse(header, Code.SERVER_BUSY, "Server busy!"));
+        }
+    }
+
+    /**
+     * 流控帧：增加流的信用，或者取消流
+     */
+    private void onStreamCredit(Command request) {
+        Header header = request.getHeader();
+        if (header.hasFlag(Header.FLAG_END_OF_STREAM)) {
+            cancelStream(header.getRequestId());
+            return;
+        }
+        ServerStream stream = streams.get(header.getRequestId());
+        ByteBuf payload = request.getPayloadBuffer();
+        if (null != stream && payload.readableBytes() >= Integer.BYTES) {
+            stream.grant(payload.getInt(payload.readerIndex()));
+        }
+    }
+
+    /**
+     * 双向流中客户端的消息，放入流的接收队列；客户端消息发送完毕时结束接收队列
+     */
+    private void onStreamMessage(Command request) {
+        Header header = request.getHeader();
+        ServerStream stream = streams.get(header.getRequestId());
+        ServerInboundStream inbound = null == stream ? null : stream.getInbound();
+        if (null == inbound) {
+            // 流已经结束或者被取消
+            logger.debug("Drop stream message: {}", header.getRequestId());
+        } else if (header.hasFlag(Header.FLAG_END_OF_STREAM)) {
+            inbound.end();
+        } else {
+            inbound.offer(request.getPayloadBuffer().retain());
+        }
+    }
+
+    private void cancelStream(int requestId) {
+        ServerStream stream = streams.remove(requestId);
+        if (null != stream) {
+            stream.cancel();
+        }
+    }
+
+    /**
+     * 处理解析好的请求，响应在{@link RequestHandler.Dispatch#handle()}返回的CompletableFuture完成时写出；
+     * 流式响应在数据源就绪后按照信用逐个发送
+     * @param executor 执行请求的线程池，流式响应也在这个线程池中取元素
+     */
+    private void handle(ChannelHandlerContext channelHandlerContext, RequestHandler.Dispatch dispatch, Header header, Executor executor) {
+        CompletableFuture<Command> future;
+        try {
+            future = dispatch.handle();
+        } catch (Throwable t) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(t);
+        }
+        if (header.hasFlag(Header.FLAG_ONE_WAY)) {
+            future.whenComplete((response, throwable) -> dropResponse(response, throwable));
+            return;
+        }
+        future.whenComplete((response, throwable) -> {
+            if (null != throwable) {
+                logger.warn("Handle request failed!", throwable);
+                cancelStream(header.getRequestId());
+                writeResponse(channelHandlerContext, errorResponse(header, Code.UNKNOWN_ERROR, throwable.getMessage()));
+            } else if (response instanceof StreamResponse) {
+                startStream(channelHandlerContext, header, (StreamResponse) response, executor);
+            } else {
+                cancelStream(header.getRequestId());
+                writeResponse(channelHandlerContext, response);
+            }
+        });
+    }
+
+    /**
+     * 单向请求不发送响应，失败只记录日志
+     */
+    private static void dropResponse(Command response, Throwable throwable) {
+        if (null != throwable) {
+            logger.warn("Handle one-way request failed!", throwable);
+        } else if (null != response) {
+            ResponseHeader header = (ResponseHeader) response.getHeader();
+            if (header.getCode() != Code.SUCCESS.getCode()) {
+                logger.warn("Handle one-way request failed, code: {}, error: {}.", header.getCode(), header.getError());
+            }
+            response.release();
+        }
+    }
+
+    private void startStream(ChannelHandlerContext channelHandlerContext, Header header, StreamResponse response, Executor executor) {
+        ServerStream stream = header.hasFlag(Header.FLAG_STREAM) ? streams.get(header.getRequestId()) : null;
+        if (null != stream) {
+            stream.start(response.getStream(), executor);
+            return;
+        }
+        // 流已经被取消，或者客户端没有按照流式请求发送
+        response.getStream().close();
+        if (!header.hasFlag(Header.FLAG_STREAM)) {
+            writeResponse(channelHandlerContext, errorResponse(header, Code.UNKNOWN_ERROR, "Stream response requires a stream request!"));
+        }
+    }
+
+    private static Command errorResponse(Header header, Code code, String error) {
+        return new Command(
+                new ResponseHeader(header.getType(), header.getVersion(), header.getRequestId(), code.getCode(), error),
+                new byte[0]);
+    }
+
+    private void writeResponse(ChannelHandlerContext channelHandlerContext, Command response) {
+        if(null != response) {
+            channelHandlerContext.writeAndFlush(response).addListener((ChannelFutureListener) channelFuture -> {
+                if (!channelFuture.isSuccess()) {
+                    logger.warn("Write response failed!", channelFuture.cause());
+                    channelHandlerContext.channel().close();
+                }
+            });
+        } else {
+            logger.warn("Response is null!");
+        }
+    }
+
+    /**
+     * 响应写不出去时停止读取这个连接上的请求，不再为它执行服务方法和积压响应，恢复可写之后继续读取
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        Channel channel = ctx.channel();
+        channel.config().setAutoRead(channel.isWritable());
+        super.channelWritabilityChanged(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 连接断开，停止所有正在发送的流
+        for (ServerStream stream : streams.values()) {
+            stream.cancel();
+        }
+        streams.clear();
+        super.channelInactive(ctx);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         logger.warn("Exception: ", cause);
@@ -13,20 +13,30 @@
  */
 package com.github.liyue2008.rpc.transport.netty;
 
+import com.github.liyue2008.rpc.transport.command.Code;
 import com.github.liyue2008.rpc.transport.command.Header;
 import com.github.liyue2008.rpc.transport.command.ResponseHeader;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
 
 import java.nio.charset.StandardCharsets;
-import java.util.List;
 
 /**
  * @author LiYue
  * Date: 2019/9/20
  */
 public class ResponseDecoder extends CommandDecoder {
+    public ResponseDecoder() {
+        super();
+    }
+
+    /**
+     * @param maxFrameLength 一帧的最大长度，也是解压后payload的最大长度
+     */
+    public ResponseDecoder(int maxFrameLength) {
+        super(maxFrameLength);
+    }
 
     @Override
     protected Header decodeHeader(ChannelHandlerContext channelHandlerContext, ByteBuf byteBuf) {
@@ -38,8 +48,34 @@ public class ResponseDecoder extends CommandDecoder {
         byte [] errorBytes = new byte[errorLength];
         byteBuf.readBytes(errorBytes);
         String error = new String(errorBytes, StandardCharsets.UTF_8);
+        // 版本1的响应中带有服务端支持的最高版本，见ResponseEncoder。旧版本的服务端总是回复版本1
+        channelHandlerContext.channel().attr(RequestEncoder.PEER_VERSION).set(version);
         return new ResponseHeader(
                 type, version, requestId, code, error
         );
     }
+
+    @Override
+    protected Header decodeHeaderV2(ChannelHandlerContext channelHandlerContext, int version, ByteBuf byteBuf) {
+        int type = VarintSupport.readVarint(byteBuf);
+        int flags = VarintSupport.readVarint(byteBuf);
+        int requestId = VarintSupport.readVarint(byteBuf);
+        int code = Code.SUCCESS.getCode();
+        String error = null;
+        // 只有失败的响应才带有错误码和错误信息
+        if ((flags & Header.FLAG_ERROR) != 0) {
+            code = VarintSupport.unzigzag(VarintSupport.readVarint(byteBuf));
+            int errorLength = VarintSupport.readVarint(byteBuf);
+            if (errorLength < 0 || errorLength > byteBuf.readableBytes()) {
+                throw new CorruptedFrameException("Invalid error length: " + errorLength + "!");
+            }
+            if (errorLength > 0) {
+                error = byteBuf.readCharSequence(errorLength, StandardCharsets.UTF_8).toString();
+            }
+        }
+        channelHandlerContext.channel().attr(RequestEncoder.PEER_VERSION).set(version);
+        ResponseHeader header = new ResponseHeader(type, version, requestId, code, error);
+        header.setFlags(flags);
+        return header;
+    }
 }
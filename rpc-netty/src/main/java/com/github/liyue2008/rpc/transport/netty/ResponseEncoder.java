@@ -13,31 +13,102 @@
  */
 package com.github.liyue2008.rpc.transport.netty;
 
+import com.github.liyue2008.rpc.transport.command.Code;
 import com.github.liyue2008.rpc.transport.command.Header;
 import com.github.liyue2008.rpc.transport.command.ResponseHeader;
+import com.github.liyue2008.rpc.transport.compress.PayloadCompressor;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
-
-import java.nio.charset.StandardCharsets;
+import io.netty.util.AttributeKey;
 
 /**
  * @author LiYue
  * Date: 2019/9/20
  */
 public class ResponseEncoder extends CommandEncoder {
+    /**
+     * 对端在请求中声明了可以解压响应，由{@link RequestDecoder}设置
+     */
+    static final AttributeKey<Boolean> ACCEPT_COMPRESSION = AttributeKey.valueOf("acceptCompression");
+
+    public ResponseEncoder() {
+        this(null);
+    }
+
+    /**
+     * @param compressor 压缩响应的payload，为null时不压缩
+     */
+    public ResponseEncoder(PayloadCompressor compressor) {
+        super(compressor);
+    }
+
+    @Override
+    protected boolean canCompress(ChannelHandlerContext channelHandlerContext) {
+        return channelHandlerContext.channel().hasAttr(ACCEPT_COMPRESSION);
+    }
+
+    /**
+     * 版本1的响应在version字段中写入服务端支持的最高版本，旧版本的客户端不读取这个字段，
+     * 新版本的客户端据此把连接上之后的请求升级到新的帧格式
+     */
     @Override
     protected void encodeHeader(ChannelHandlerContext channelHandlerContext, Header header, ByteBuf byteBuf) throws Exception {
-        super.encodeHeader(channelHandlerContext, header, byteBuf);
+        byteBuf.writeInt(header.getType());
+        byteBuf.writeInt(Header.CURRENT_VERSION);
+        byteBuf.writeInt(header.getRequestId());
         if(header instanceof ResponseHeader) {
             ResponseHeader responseHeader = (ResponseHeader) header;
+            byte [] errorBytes = responseHeader.getErrorBytes();
             byteBuf.writeInt(responseHeader.getCode());
-            int errorLength = header.length() - (Integer.BYTES + Integer.BYTES + Integer.BYTES + Integer.BYTES +
-                    Integer.BYTES);
-            byteBuf.writeInt(errorLength);
-            byteBuf.writeBytes(responseHeader.getError() == null ? new byte[0]: responseHeader.getError().getBytes(StandardCharsets.UTF_8));
+            byteBuf.writeInt(errorBytes.length);
+            byteBuf.writeBytes(errorBytes);
         } else {
             throw new Exception(String.format("Invalid header type: %s!", header.getClass().getCanonicalName()));
         }
     }
+
+    @Override
+    protected int headerLengthV2(Header header) throws Exception {
+        ResponseHeader responseHeader = toResponseHeader(header);
+        int length = super.headerLengthV2(header);
+        if (isError(responseHeader)) {
+            int errorLength = responseHeader.getErrorBytes().length;
+            length += VarintSupport.varintLength(VarintSupport.zigzag(responseHeader.getCode())) +
+                    VarintSupport.varintLength(errorLength) + errorLength;
+        }
+        return length;
+    }
+
+    @Override
+    protected void encodeHeaderV2(ChannelHandlerContext channelHandlerContext, Header header, ByteBuf byteBuf) throws Exception {
+        super.encodeHeaderV2(channelHandlerContext, header, byteBuf);
+        ResponseHeader responseHeader = toResponseHeader(header);
+        // 成功的响应不写错误码和错误信息
+        if (isError(responseHeader)) {
+            byte [] errorBytes = responseHeader.getErrorBytes();
+            VarintSupport.writeVarint(byteBuf, VarintSupport.zigzag(responseHeader.getCode()));
+            VarintSupport.writeVarint(byteBuf, errorBytes.length);
+            byteBuf.writeBytes(errorBytes);
+        }
+    }
+
+    @Override
+    protected int flagsV2(Header header) {
+        int flags = super.flagsV2(header) & ~Header.FLAG_ERROR;
+        if (header instanceof ResponseHeader && isError((ResponseHeader) header)) {
+            flags |= Header.FLAG_ERROR;
+        }
+        return flags;
+    }
+
+    private static boolean isError(ResponseHeader responseHeader) {
+        return responseHeader.getCode() != Code.SUCCESS.getCode();
+    }
+
+    private static ResponseHeader toResponseHeader(Header header) throws Exception {
+        if (header instanceof ResponseHeader) {
+            return (ResponseHeader) header;
+        }
+        throw new Exception(String.format("Invalid header type: %s!", header.getClass().getCanonicalName()));
+    }
 }
@@ -16,8 +16,9 @@ package com.github.liyue2008.rpc.transport.netty;
 import com.github.liyue2008.rpc.transport.InFlightRequests;
 import com.github.liyue2008.rpc.transport.ResponseFuture;
 import com.github.liyue2008.rpc.transport.command.Command;
+import com.github.liyue2008.rpc.transport.command.Header;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import org.slf4j.Logger;
@@ -27,25 +28,63 @@ import org.slf4j.LoggerFactory;
  * @author LiYue
  * Date: 2019/9/20
  */
-@ChannelHandler.Sharable
 public class ResponseInvocation extends SimpleChannelInboundHandler<Command> {
     private static final Logger logger = LoggerFactory.getLogger(ResponseInvocation.class);
     private final InFlightRequests inFlightRequests;
 
+    /**
+     * @param inFlightRequests 这个连接的在途请求
+     */
     ResponseInvocation(InFlightRequests inFlightRequests) {
         this.inFlightRequests = inFlightRequests;
     }
 
+    InFlightRequests getInFlightRequests() {
+        return inFlightRequests;
+    }
+
     @Override
     protected void channelRead0(ChannelHandlerContext channelHandlerContext, Command response) {
-        ResponseFuture future = inFlightRequests.remove(response.getHeader().getRequestId());
-        if(null != future) {
-            future.getFuture().complete(response);
+        Header header = response.getHeader();
+        if (header.hasFlag(Header.FLAG_STREAM_CREDIT)) {
+            // 双向流中服务端授予的信用
+            ResponseFuture future = inFlightRequests.get(header.getRequestId());
+            ByteBuf payload = response.getPayloadBuffer();
+            if (null != future && future.isStream() && payload.readableBytes() >= Integer.BYTES) {
+                future.getListener().onCredit(payload.getInt(payload.readerIndex()));
+            }
+            return;
+        }
+        if (header.hasFlag(Header.FLAG_STREAM)) {
+            // 流中的元素，流结束之前保留在途请求
+            ResponseFuture future = inFlightRequests.get(header.getRequestId());
+            if (null != future && future.isStream()) {
+                future.getListener().onNext(response);
+            } else {
+                logger.debug("Drop stream response: {}", header.getRequestId());
+            }
+            return;
+        }
+        ResponseFuture future = inFlightRequests.remove(header.getRequestId());
+        if (null != future && future.isStream()) {
+            future.getListener().onComplete(response);
+        } else if(null != future) {
+            // channelRead0返回后response会被自动释放，这里增加一个引用交给Future的使用者，由使用者负责释放
+            if(!future.getFuture().complete(response.retain())) {
+                response.release();
+            }
         } else {
             logger.warn("Drop response: {}", response);
         }
     }
 
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        // 连接断开，所有在途请求立即失败
+        inFlightRequests.close();
+        super.channelInactive(ctx);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         logger.warn("Exception: ", cause);
@@ -0,0 +1,142 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty;
+
+import com.github.liyue2008.rpc.transport.InboundStream;
+import com.github.liyue2008.rpc.transport.command.Command;
+import com.github.liyue2008.rpc.transport.command.Header;
+import com.github.liyue2008.rpc.transport.command.ResponseHeader;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.ReferenceCountUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * 服务端一个双向流的接收端。收到打开双向流的请求时创建，同时授予客户端一个窗口的信用；
+ * 消息在网络IO线程上放入队列，队列中最多有一个窗口的消息，处理请求的线程每取出半个窗口的消息，
+ * 再授予客户端同样数量的信用。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+class ServerInboundStream implements InboundStream {
+    private static final Logger logger = LoggerFactory.getLogger(ServerInboundStream.class);
+    private static final Object END = new Object();
+    private final ChannelHandlerContext channelHandlerContext;
+    private final int type;
+    private final int version;
+    private final int requestId;
+    private final int window;
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private volatile boolean cancelled = false;
+    private boolean done = false;
+    private int consumed = 0;
+
+    /**
+     * 在网络IO线程上创建
+     * @param header 打开双向流的请求头
+     * @param window 流控窗口的大小
+     */
+    ServerInboundStream(ChannelHandlerContext channelHandlerContext, Header header, int window) {
+        this.channelHandlerContext = channelHandlerContext;
+        this.type = header.getType();
+        this.version = header.getVersion();
+        this.requestId = header.getRequestId();
+        this.window = window;
+        grant(window);
+    }
+
+    /**
+     * 收到客户端的一条消息，在网络IO线程上调用
+     * @param message 消息，由这个流负责释放
+     */
+    void offer(ByteBuf message) {
+        if (cancelled) {
+            message.release();
+            return;
+        }
+        queue.add(message);
+        if (cancelled) {
+            drain();
+        }
+    }
+
+    /**
+     * 客户端的消息发送完毕
+     */
+    void end() {
+        queue.add(END);
+    }
+
+    /**
+     * 流结束、被取消或者连接断开，唤醒等待消息的线程，丢弃还没有读取的消息
+     */
+    void cancel() {
+        cancelled = true;
+        drain();
+        queue.add(END);
+    }
+
+    @Override
+    public ByteBuf take() throws InterruptedException {
+        if (channelHandlerContext.executor().inEventLoop()) {
+            throw new IllegalStateException("Can not read inbound stream in the I/O thread!");
+        }
+        if (done) {
+            return null;
+        }
+        Object message = queue.take();
+        if (message == END) {
+            done = true;
+            return null;
+        }
+        if (++consumed >= Math.max(1, window / 2)) {
+            grant(consumed);
+            consumed = 0;
+        }
+        return (ByteBuf) message;
+    }
+
+    @Override
+    public void close() {
+        done = true;
+        cancel();
+    }
+
+    private void drain() {
+        Object message;
+        while (null != (message = queue.poll())) {
+            ReferenceCountUtil.release(message);
+        }
+    }
+
+    private void grant(int credits) {
+        if (cancelled) {
+            return;
+        }
+        ResponseHeader header = new ResponseHeader(type, version, requestId);
+        header.setFlags(Header.FLAG_STREAM_CREDIT);
+        ByteBuf payload = channelHandlerContext.alloc().buffer(Integer.BYTES).writeInt(credits);
+        channelHandlerContext.writeAndFlush(new Command(header, payload)).addListener((ChannelFutureListener) channelFuture -> {
+            if (!channelFuture.isSuccess()) {
+                logger.warn("Write stream credit failed!", channelFuture.cause());
+                channelHandlerContext.channel().close();
+            }
+        });
+    }
+}
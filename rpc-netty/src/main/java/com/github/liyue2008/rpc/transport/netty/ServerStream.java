@@ -0,0 +1,182 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty;
+
+import com.github.liyue2008.rpc.transport.ResponseStream;
+import com.github.liyue2008.rpc.transport.command.Code;
+import com.github.liyue2008.rpc.transport.command.Command;
+import com.github.liyue2008.rpc.transport.command.Header;
+import com.github.liyue2008.rpc.transport.command.ResponseHeader;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务端正在发送的一个流。收到流式请求时就创建，这样在服务方法返回之前到达的信用也不会丢失；
+ * 数据源就绪之后，在有信用的时候从数据源取出元素发送，信用用完就暂停，等待客户端授予新的信用。
+ * 同一时刻最多只有一个线程在发送，所以数据源只会被顺序调用。
+ * 双向流同时持有接收客户端消息的{@link ServerInboundStream}，发送端结束或者被取消时一起关闭。
+ * @author LiYue
+ * Date: 2019/10/18
+ */
+class ServerStream {
+    private static final Logger logger = LoggerFactory.getLogger(ServerStream.class);
+    private final ChannelHandlerContext channelHandlerContext;
+    private final int type;
+    private final int version;
+    private final int requestId;
+    private final ServerInboundStream inbound;
+    private final Runnable onFinish;
+    private final AtomicInteger credits = new AtomicInteger(0);
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile ResponseStream source = null;
+    private volatile Executor executor = null;
+    private volatile boolean cancelled = false;
+    private volatile boolean finished = false;
+
+    /**
+     * @param header 请求头
+     * @param inbound 双向流的接收端，只接收服务端响应的流为null
+     * @param onFinish 流结束时调用，从连接的流表中移除这个流
+     */
+    ServerStream(ChannelHandlerContext channelHandlerContext, Header header, ServerInboundStream inbound, Runnable onFinish) {
+        this.channelHandlerContext = channelHandlerContext;
+        this.type = header.getType();
+        this.version = header.getVersion();
+        this.requestId = header.getRequestId();
+        this.inbound = inbound;
+        this.onFinish = onFinish;
+    }
+
+    /**
+     * 数据源就绪，开始发送
+     * @param executor 从数据源取元素的线程池
+     */
+    void start(ResponseStream source, Executor executor) {
+        this.executor = executor;
+        this.source = source;
+        schedule();
+    }
+
+    ServerInboundStream getInbound() {
+        return inbound;
+    }
+
+    void grant(int credits) {
+        if (credits > 0) {
+            this.credits.addAndGet(credits);
+            schedule();
+        }
+    }
+
+    /**
+     * 客户端取消或者连接断开，不再发送任何响应
+     */
+    void cancel() {
+        cancelled = true;
+        if (null != inbound) {
+            // 唤醒可能正在等待客户端消息的发送线程
+            inbound.cancel();
+        }
+        schedule();
+    }
+
+    private void schedule() {
+        if (null == source || finished || !scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(this::pump);
+        } catch (RejectedExecutionException e) {
+            // 不释放scheduled，保证不会和其它线程同时结束这个流
+            finish(errorResponse(Code.SERVER_BUSY, "Server busy!"));
+        }
+    }
+
+    private void pump() {
+        try {
+            if (!finished) {
+                pumpElements();
+            }
+        } finally {
+            scheduled.set(false);
+        }
+        // 发送过程中可能有新的信用或者取消到达
+        if (!finished && (cancelled || credits.get() > 0)) {
+            schedule();
+        }
+    }
+
+    private void pumpElements() {
+        try {
+            while (!cancelled && credits.get() > 0) {
+                ByteBuf payload = source.next();
+                if (null == payload) {
+                    ResponseHeader header = new ResponseHeader(type, version, requestId);
+                    header.setFlags(Header.FLAG_END_OF_STREAM);
+                    finish(new Command(header, Unpooled.EMPTY_BUFFER));
+                    return;
+                }
+                credits.decrementAndGet();
+                ResponseHeader header = new ResponseHeader(type, version, requestId);
+                header.setFlags(Header.FLAG_STREAM);
+                write(new Command(header, payload));
+            }
+            if (cancelled) {
+                finish(null);
+            }
+        } catch (Throwable t) {
+            logger.warn("Stream {} failed!", requestId, t);
+            finish(errorResponse(Code.UNKNOWN_ERROR, t.getMessage()));
+        }
+    }
+
+    private Command errorResponse(Code code, String error) {
+        return new Command(new ResponseHeader(type, version, requestId, code.getCode(), error), new byte[0]);
+    }
+
+    private void finish(Command lastResponse) {
+        finished = true;
+        onFinish.run();
+        if (null != inbound) {
+            inbound.cancel();
+        }
+        try {
+            source.close();
+        } catch (Throwable t) {
+            logger.warn("Close stream {} failed!", requestId, t);
+        }
+        // 被取消的流不再发送结束帧
+        if (null != lastResponse && !cancelled) {
+            write(lastResponse);
+        }
+    }
+
+    private void write(Command response) {
+        channelHandlerContext.writeAndFlush(response).addListener((ChannelFutureListener) channelFuture -> {
+            if (!channelFuture.isSuccess()) {
+                logger.warn("Write stream response failed!", channelFuture.cause());
+                channelHandlerContext.channel().close();
+            }
+        });
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.CorruptedFrameException;
+
+/**
+ * 协议{@link com.github.liyue2008.rpc.transport.command.Header#VERSION_2}使用的varint编解码：
+ * 每个字节的低7位是数据，最高位为1表示后面还有字节，小端序，一个int最多5个字节。
+ * @author LiYue
+ * Date: 2019/10/17
+ */
+class VarintSupport {
+    private static final int MAX_VARINT_LENGTH = 5;
+
+    static int varintLength(int value) {
+        if ((value & (0xFFFFFFFF << 7)) == 0) {
+            return 1;
+        }
+        if ((value & (0xFFFFFFFF << 14)) == 0) {
+            return 2;
+        }
+        if ((value & (0xFFFFFFFF << 21)) == 0) {
+            return 3;
+        }
+        if ((value & (0xFFFFFFFF << 28)) == 0) {
+            return 4;
+        }
+        return MAX_VARINT_LENGTH;
+    }
+
+    static void writeVarint(ByteBuf byteBuf, int value) {
+        while ((value & ~0x7F) != 0) {
+            byteBuf.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        byteBuf.writeByte(value);
+    }
+
+    /**
+     * 读取一个完整帧内的varint，数据不完整说明帧已经损坏
+     */
+    static int readVarint(ByteBuf byteBuf) {
+        long value = tryReadVarint(byteBuf);
+        if (value < 0) {
+            throw new CorruptedFrameException("Truncated varint!");
+        }
+        return (int) value;
+    }
+
+    /**
+     * 读取一个varint，返回值是按无符号数解释的int。
+     * 缓冲区中的数据还不够时返回-1，此时读指针的位置是不确定的，调用者需要自己重置。
+     */
+    static long tryReadVarint(ByteBuf byteBuf) {
+        int value = 0;
+        for (int i = 0; i < MAX_VARINT_LENGTH; i++) {
+            if (!byteBuf.isReadable()) {
+                return -1L;
+            }
+            byte b = byteBuf.readByte();
+            value |= (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                return value & 0xFFFFFFFFL;
+            }
+        }
+        throw new CorruptedFrameException("Varint is longer than " + MAX_VARINT_LENGTH + " bytes!");
+    }
+
+    /**
+     * 错误码可能是负数，先做zigzag转换再按varint写入
+     */
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty.shm;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 轮询线程没有读到数据时的等待方式。对端在另一个进程中，无法唤醒这个线程，只能定期检查。
+ * 一直自旋时延迟最低，但是每个轮询线程都要独占一个CPU核，CPU核不够时反而会拖慢所有线程；否则先自旋，再让出CPU，最后park，park的时间逐步加倍直到上限，
+ * 空闲的连接几乎不占用CPU，代价是空闲之后的第一个请求最多多等待一个park周期。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+class IdleStrategy {
+    private static final int SPINS = 200;
+    private static final int YIELDS = 20;
+    private static final long MIN_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long MAX_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+    private final boolean busySpin;
+    private int idles = 0;
+    private long parkNanos = MIN_PARK_NANOS;
+
+    IdleStrategy(boolean busySpin) {
+        this.busySpin = busySpin;
+    }
+
+    void idle() {
+        if (busySpin) {
+            return;
+        }
+        if (idles < SPINS) {
+            idles++;
+        } else if (idles < SPINS + YIELDS) {
+            idles++;
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(parkNanos);
+            parkNanos = Math.min(parkNanos << 1, MAX_PARK_NANOS);
+        }
+    }
+
+    /**
+     * 读到了数据，下次空闲时重新从自旋开始
+     */
+    void reset() {
+        idles = 0;
+        parkNanos = MIN_PARK_NANOS;
+    }
+}
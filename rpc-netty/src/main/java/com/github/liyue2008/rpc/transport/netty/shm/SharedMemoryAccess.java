@@ -0,0 +1,131 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty.shm;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+
+/**
+ * 按地址读写共享内存，包括volatile读写、有序写和CAS。
+ * 对端是另一个进程，只能按映射的地址访问，JDK 8没有公开的API能对任意地址做这些原子操作（VarHandle需要JDK 9，
+ * 并且也不支持裸地址），所以这里通过sun.misc.Unsafe实现。
+ * 只在这个类中通过反射取得Unsafe，编译时不引用这个内部API；绑定好的MethodHandle是常量，JIT会内联成直接调用。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+final class SharedMemoryAccess {
+    private static final MethodHandle GET_LONG;
+    private static final MethodHandle GET_LONG_VOLATILE;
+    private static final MethodHandle PUT_LONG_VOLATILE;
+    private static final MethodHandle PUT_ORDERED_LONG;
+    private static final MethodHandle GET_INT_VOLATILE;
+    private static final MethodHandle PUT_INT_VOLATILE;
+    private static final MethodHandle COMPARE_AND_SWAP_INT;
+
+    static {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            GET_LONG = lookup.findVirtual(unsafeClass, "getLong",
+                    MethodType.methodType(long.class, long.class)).bindTo(unsafe);
+            GET_LONG_VOLATILE = absolute(lookup.findVirtual(unsafeClass, "getLongVolatile",
+                    MethodType.methodType(long.class, Object.class, long.class)).bindTo(unsafe));
+            PUT_LONG_VOLATILE = absolute(lookup.findVirtual(unsafeClass, "putLongVolatile",
+                    MethodType.methodType(void.class, Object.class, long.class, long.class)).bindTo(unsafe));
+            PUT_ORDERED_LONG = absolute(lookup.findVirtual(unsafeClass, "putOrderedLong",
+                    MethodType.methodType(void.class, Object.class, long.class, long.class)).bindTo(unsafe));
+            GET_INT_VOLATILE = absolute(lookup.findVirtual(unsafeClass, "getIntVolatile",
+                    MethodType.methodType(int.class, Object.class, long.class)).bindTo(unsafe));
+            PUT_INT_VOLATILE = absolute(lookup.findVirtual(unsafeClass, "putIntVolatile",
+                    MethodType.methodType(void.class, Object.class, long.class, int.class)).bindTo(unsafe));
+            COMPARE_AND_SWAP_INT = absolute(lookup.findVirtual(unsafeClass, "compareAndSwapInt",
+                    MethodType.methodType(boolean.class, Object.class, long.class, int.class, int.class)).bindTo(unsafe));
+        } catch (Exception e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private SharedMemoryAccess() {}
+
+    /**
+     * 对象参数固定为null，偏移量就是绝对地址
+     */
+    private static MethodHandle absolute(MethodHandle methodHandle) {
+        return MethodHandles.insertArguments(methodHandle, 0, (Object) null);
+    }
+
+    static long getLong(long address) {
+        try {
+            return (long) GET_LONG.invokeExact(address);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static long getLongVolatile(long address) {
+        try {
+            return (long) GET_LONG_VOLATILE.invokeExact(address);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static void putLongVolatile(long address, long value) {
+        try {
+            PUT_LONG_VOLATILE.invokeExact(address, value);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    /**
+     * 有序写：之前的写入对读到这个值的对端都可见，但不等待这次写入对其它线程可见，比volatile写便宜
+     */
+    static void putOrderedLong(long address, long value) {
+        try {
+            PUT_ORDERED_LONG.invokeExact(address, value);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static int getIntVolatile(long address) {
+        try {
+            return (int) GET_INT_VOLATILE.invokeExact(address);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static void putIntVolatile(long address, int value) {
+        try {
+            PUT_INT_VOLATILE.invokeExact(address, value);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    static boolean compareAndSwapInt(long address, int expected, int value) {
+        try {
+            return (boolean) COMPARE_AND_SWAP_INT.invokeExact(address, expected, value);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty.shm;
+
+import java.net.SocketAddress;
+import java.util.Objects;
+
+/**
+ * 共享内存文件的地址。连接槽位数、环形缓冲区大小和等待方式只在服务端创建文件时使用，
+ * 客户端以文件头中记录的为准。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+public class SharedMemoryAddress extends SocketAddress {
+    private static final long serialVersionUID = 1L;
+    private static final int DEFAULT_CONNECTIONS = 8;
+    private static final int DEFAULT_RING_SIZE = 1024 * 1024;
+    private final String path;
+    private final int connections;
+    private final int ringSize;
+    private final boolean busySpin;
+
+    public SharedMemoryAddress(String path) {
+        this(path, DEFAULT_CONNECTIONS, DEFAULT_RING_SIZE, false);
+    }
+
+    /**
+     * @param path 文件路径
+     * @param connections 连接槽位数
+     * @param ringSize 每个方向的环形缓冲区字节数，必须是2的幂
+     * @param busySpin 轮询时是否一直自旋
+     */
+    public SharedMemoryAddress(String path, int connections, int ringSize, boolean busySpin) {
+        if (null == path || path.isEmpty()) {
+            throw new IllegalArgumentException("path must not be empty!");
+        }
+        this.path = path;
+        this.connections = connections;
+        this.ringSize = ringSize;
+        this.busySpin = busySpin;
+    }
+
+    public String path() {
+        return path;
+    }
+
+    int connections() {
+        return connections;
+    }
+
+    int ringSize() {
+        return ringSize;
+    }
+
+    boolean isBusySpin() {
+        return busySpin;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SharedMemoryAddress)) return false;
+        return path.equals(((SharedMemoryAddress) o).path);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(path);
+    }
+
+    @Override
+    public String toString() {
+        return SharedMemoryClient.SCHEME + "://" + path;
+    }
+}
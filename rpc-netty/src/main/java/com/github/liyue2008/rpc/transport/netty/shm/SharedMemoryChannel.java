@@ -0,0 +1,311 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty.shm;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.ConnectTimeoutException;
+import io.netty.channel.DefaultChannelConfig;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.net.SocketAddress;
+import java.nio.channels.AlreadyConnectedException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.UnsupportedAddressTypeException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 共享内存上的一个连接，客户端和服务端接受的连接都是这个类型。
+ * 写出的字节在EventLoop中复制到发送方向的环形缓冲区；接收方向的环形缓冲区由每个连接一个的轮询线程读取，
+ * 读到的字节交给EventLoop，由和TCP连接完全相同的ChannelPipeline处理。
+ * 轮询线程每次只读一批，等ChannelPipeline处理完、重新请求读取之后才读下一批，
+ * 关闭自动读取时对端写满环形缓冲区后就会停下来。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+public class SharedMemoryChannel extends AbstractChannel {
+    private static final Logger logger = LoggerFactory.getLogger(SharedMemoryChannel.class);
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false);
+    private static final ThreadFactory POLLER_THREAD_FACTORY = new DefaultThreadFactory("rpc-shm-poller", true);
+    private static final int MAX_READ_BYTES = 64 * 1024;
+    /**
+     * 等待服务端接受连接、等待对端腾出环形缓冲区空间时的检查间隔
+     */
+    private static final long RETRY_INTERVAL_MICROS = 20L;
+    private final ChannelConfig config = new DefaultChannelConfig(this);
+    private final boolean server;
+    private volatile SharedMemoryFile.Slot slot;
+    private volatile SharedMemoryAddress address;
+    private volatile boolean open = true;
+    private volatile boolean active = false;
+    private volatile boolean readPending = false;
+    // 以下字段只在EventLoop中访问
+    private boolean pollerStarted = false;
+    private boolean flushScheduled = false;
+
+    public SharedMemoryChannel() {
+        super(null);
+        this.server = false;
+    }
+
+    /**
+     * 服务端接受的连接
+     */
+    SharedMemoryChannel(SharedMemoryServerChannel parent, SharedMemoryFile.Slot slot, SharedMemoryAddress address) {
+        super(parent);
+        this.server = true;
+        this.slot = slot;
+        this.address = address;
+        this.active = true;
+    }
+
+    @Override
+    protected AbstractUnsafe newUnsafe() {
+        return new SharedMemoryUnsafe();
+    }
+
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        return loop instanceof DefaultEventLoop;
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        return address;
+    }
+
+    @Override
+    protected SocketAddress remoteAddress0() {
+        return address;
+    }
+
+    @Override
+    protected void doRegister() {
+        if (server) {
+            startPoller();
+        }
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected void doDisconnect() {
+        doClose();
+    }
+
+    @Override
+    protected void doClose() {
+        open = false;
+        active = false;
+        SharedMemoryFile.Slot slot = this.slot;
+        if (null != slot && !pollerStarted) {
+            // 没有轮询线程，在这里释放槽位；否则由轮询线程退出时释放
+            slot.release(ownSide());
+        }
+    }
+
+    @Override
+    protected void doBeginRead() {
+        readPending = true;
+    }
+
+    @Override
+    protected Object filterOutboundMessage(Object msg) {
+        if (msg instanceof ByteBuf) {
+            return msg;
+        }
+        throw new UnsupportedOperationException("Unsupported message type: " + msg.getClass().getName());
+    }
+
+    @Override
+    protected void doWrite(ChannelOutboundBuffer in) {
+        SharedMemoryRing outbound = server ? slot.responses() : slot.requests();
+        for (;;) {
+            Object msg = in.current();
+            if (null == msg) {
+                break;
+            }
+            ByteBuf buffer = (ByteBuf) msg;
+            int readable = buffer.readableBytes();
+            if (readable == 0) {
+                in.remove();
+                continue;
+            }
+            int written = outbound.write(buffer);
+            if (written > 0) {
+                in.removeBytes(written);
+            }
+            if (written < readable) {
+                // 环形缓冲区满了，等对端读走一部分之后再写，期间不占用EventLoop
+                scheduleFlush();
+                break;
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (!flushScheduled) {
+            flushScheduled = true;
+            eventLoop().schedule(() -> {
+                flushScheduled = false;
+                if (isActive()) {
+                    unsafe().flush();
+                }
+            }, RETRY_INTERVAL_MICROS, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private void startPoller() {
+        pollerStarted = true;
+        POLLER_THREAD_FACTORY.newThread(this::poll).start();
+    }
+
+    /**
+     * 轮询线程：读取接收方向的环形缓冲区，同时检查对端是否已经关闭了连接
+     */
+    private void poll() {
+        SharedMemoryFile.Slot slot = this.slot;
+        SharedMemoryRing inbound = server ? slot.requests() : slot.responses();
+        int peerSide = ownSide() ^ (SharedMemoryFile.CLIENT | SharedMemoryFile.SERVER);
+        IdleStrategy idleStrategy = new IdleStrategy(slot.isBusySpin());
+        boolean closing = false;
+        try {
+            while (open && !eventLoop().isTerminated()) {
+                int readable = readPending ? inbound.readableBytes() : 0;
+                if (readable > 0) {
+                    readPending = false;
+                    ByteBuf buffer = config.getAllocator().directBuffer(Math.min(readable, MAX_READ_BYTES));
+                    inbound.read(buffer, buffer.capacity());
+                    fireChannelRead(buffer);
+                    idleStrategy.reset();
+                } else if (!closing && !slot.isOpen(peerSide) && inbound.readableBytes() == 0) {
+                    // 对端已经关闭，收到的数据都处理完之后关闭这一端
+                    closing = true;
+                    eventLoop().execute(() -> unsafe().close(unsafe().voidPromise()));
+                } else {
+                    idleStrategy.idle();
+                }
+            }
+        } catch (RejectedExecutionException e) {
+            logger.debug("Event loop terminated, stop polling {}.", address);
+        } catch (Throwable t) {
+            logger.warn("Poll shared memory failed!", t);
+        } finally {
+            // 之后这一端不再读写这个槽位，两端都释放之后槽位才能分配给新的连接
+            slot.release(ownSide());
+        }
+    }
+
+    private void fireChannelRead(ByteBuf buffer) {
+        try {
+            eventLoop().execute(() -> {
+                pipeline().fireChannelRead(buffer);
+                pipeline().fireChannelReadComplete();
+            });
+        } catch (RejectedExecutionException e) {
+            buffer.release();
+            throw e;
+        }
+    }
+
+    private int ownSide() {
+        return server ? SharedMemoryFile.SERVER : SharedMemoryFile.CLIENT;
+    }
+
+    @Override
+    public ChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+
+    private class SharedMemoryUnsafe extends AbstractUnsafe {
+        @Override
+        public void connect(SocketAddress remoteAddress, SocketAddress localAddress, ChannelPromise promise) {
+            if (!promise.setUncancellable() || !ensureOpen(promise)) {
+                return;
+            }
+            if (null != slot) {
+                promise.tryFailure(new AlreadyConnectedException());
+                return;
+            }
+            if (!(remoteAddress instanceof SharedMemoryAddress)) {
+                promise.tryFailure(new UnsupportedAddressTypeException());
+                closeIfClosed();
+                return;
+            }
+            try {
+                SharedMemoryAddress sharedMemoryAddress = (SharedMemoryAddress) remoteAddress;
+                slot = SharedMemoryFile.open(new File(sharedMemoryAddress.path())).claim();
+                address = sharedMemoryAddress;
+            } catch (Throwable t) {
+                promise.tryFailure(annotateConnectException(t, remoteAddress));
+                closeIfClosed();
+                return;
+            }
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(config.getConnectTimeoutMillis());
+            awaitAccept(promise, deadline);
+        }
+
+        /**
+         * 服务端定期扫描等待中的槽位，看到服务端的标志位之后连接才建立
+         */
+        private void awaitAccept(ChannelPromise promise, long deadline) {
+            if (!open) {
+                promise.tryFailure(new ClosedChannelException());
+                return;
+            }
+            if (slot.isOpen(SharedMemoryFile.SERVER)) {
+                active = true;
+                startPoller();
+                promise.trySuccess();
+                pipeline().fireChannelActive();
+                return;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                promise.tryFailure(new ConnectTimeoutException("Connection timed out: " + address));
+                close(voidPromise());
+                return;
+            }
+            eventLoop().schedule(() -> awaitAccept(promise, deadline), RETRY_INTERVAL_MICROS, TimeUnit.MICROSECONDS);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty.shm;
+
+import com.github.liyue2008.rpc.transport.netty.NettyClient;
+import io.netty.channel.Channel;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+
+import java.net.SocketAddress;
+import java.net.URI;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * 实验性的共享内存传输：通过服务端创建的共享内存文件访问同一台机器上的服务端，服务地址是shm:///path。
+ * 帧格式和ChannelPipeline与TCP的客户端完全相同，只是字节通过内存映射文件中的环形缓冲区传递，
+ * 不经过内核的网络协议栈，也没有系统调用。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+public class SharedMemoryClient extends NettyClient {
+    public static final String SCHEME = "shm";
+
+    @Override
+    public Collection<String> supportedSchemes() {
+        return Collections.singleton(SCHEME);
+    }
+
+    @Override
+    public SocketAddress addressOf(URI uri) {
+        if (null == uri.getPath() || uri.getPath().isEmpty()) {
+            throw new IllegalArgumentException(String.format("No shared memory file path in uri: %s!", uri));
+        }
+        return new SharedMemoryAddress(uri.getPath());
+    }
+
+    @Override
+    protected Class<? extends EventLoopGroup> eventLoopGroupType() {
+        return DefaultEventLoopGroup.class;
+    }
+
+    @Override
+    protected Class<? extends Channel> channelClass() {
+        return SharedMemoryChannel.class;
+    }
+}
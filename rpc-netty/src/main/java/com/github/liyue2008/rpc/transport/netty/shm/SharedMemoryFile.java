@@ -0,0 +1,219 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty.shm;
+
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.ConnectException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 映射到内存中的共享内存文件，由服务端创建，客户端打开。
+ * <pre>
+ * [文件头 128字节][槽位0][槽位1]...
+ * 文件头：[int magic][int 布局版本][int 槽位数][int 环形缓冲区大小][int 标志位]
+ * 槽位：[int 状态][填充到128字节][请求环形缓冲区][响应环形缓冲区]
+ * </pre>
+ * 每个槽位是一个连接：客户端占用空闲的槽位，服务端接受之后双方通过槽位中的两个环形缓冲区收发字节。
+ * 槽位的状态由客户端和服务端各自的一个标志位组成，两个标志位都清除之后槽位重新变为空闲。
+ * 进程异常退出时不会清除自己的标志位，服务端重启时会重新创建文件。
+ * 映射在MappedByteBuffer被回收时才解除，避免其它线程访问已经解除映射的内存。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+class SharedMemoryFile {
+    static final int CLIENT = 1;
+    static final int SERVER = 2;
+    private static final int MAGIC = 0x52504353;
+    private static final int LAYOUT_VERSION = 1;
+    private static final int HEADER_SIZE = 128;
+    private static final int SLOT_HEADER_SIZE = 128;
+    private static final int FLAG_BUSY_SPIN = 1;
+    private static final int MIN_RING_SIZE = 4096;
+
+    // 持有映射，保证内存地址一直有效
+    private final MappedByteBuffer mapped;
+    private final boolean busySpin;
+    private final Slot[] slots;
+
+    private SharedMemoryFile(MappedByteBuffer mapped, int connections, int ringSize, boolean busySpin) {
+        this.mapped = mapped;
+        this.busySpin = busySpin;
+        long address = PlatformDependent.directBufferAddress(mapped);
+        int slotSize = slotSize(ringSize);
+        this.slots = new Slot[connections];
+        for (int i = 0; i < connections; i++) {
+            slots[i] = new Slot(mapped, address, HEADER_SIZE + i * slotSize, ringSize);
+        }
+    }
+
+    /**
+     * 服务端创建文件，已经存在的文件会被删除
+     */
+    static SharedMemoryFile create(File file, int connections, int ringSize, boolean busySpin) throws IOException {
+        checkUnsafe();
+        if (connections <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid connections: %d!", connections));
+        }
+        if (ringSize < MIN_RING_SIZE || Integer.bitCount(ringSize) != 1) {
+            throw new IllegalArgumentException(String.format("Ring size must be a power of 2 and at least %d: %d!", MIN_RING_SIZE, ringSize));
+        }
+        long fileSize = HEADER_SIZE + (long) connections * slotSize(ringSize);
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Shared memory file is too large: %d bytes!", fileSize));
+        }
+        // 上次没有正常退出时留下的文件可能还被旧的客户端映射着，删除后重新创建，不影响新的连接
+        if (file.exists() && !file.delete()) {
+            throw new IOException(String.format("Can not delete stale shared memory file: %s!", file));
+        }
+        MappedByteBuffer mapped = map(file, fileSize);
+        long address = PlatformDependent.directBufferAddress(mapped);
+        mapped.putInt(4, LAYOUT_VERSION);
+        mapped.putInt(8, connections);
+        mapped.putInt(12, ringSize);
+        mapped.putInt(16, busySpin ? FLAG_BUSY_SPIN : 0);
+        // 最后写入magic，客户端看到magic时文件头一定已经完整
+        SharedMemoryAccess.putIntVolatile(address, MAGIC);
+        return new SharedMemoryFile(mapped, connections, ringSize, busySpin);
+    }
+
+    /**
+     * 客户端打开服务端创建的文件
+     */
+    static SharedMemoryFile open(File file) throws IOException {
+        checkUnsafe();
+        if (!file.isFile() || file.length() < HEADER_SIZE) {
+            throw new ConnectException(String.format("Shared memory file not found: %s!", file));
+        }
+        MappedByteBuffer mapped = map(file, file.length());
+        long address = PlatformDependent.directBufferAddress(mapped);
+        if (SharedMemoryAccess.getIntVolatile(address) != MAGIC) {
+            throw new ConnectException(String.format("Shared memory file is not ready: %s!", file));
+        }
+        int version = mapped.getInt(4);
+        if (version != LAYOUT_VERSION) {
+            throw new IOException(String.format("Unsupported shared memory layout version: %d!", version));
+        }
+        int connections = mapped.getInt(8);
+        int ringSize = mapped.getInt(12);
+        if (HEADER_SIZE + (long) connections * slotSize(ringSize) > mapped.capacity()) {
+            throw new IOException(String.format("Corrupted shared memory file: %s!", file));
+        }
+        return new SharedMemoryFile(mapped, connections, ringSize, (mapped.getInt(16) & FLAG_BUSY_SPIN) != 0);
+    }
+
+    private static MappedByteBuffer map(File file, long size) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+             FileChannel fileChannel = randomAccessFile.getChannel()) {
+            // 关闭文件之后映射仍然有效
+            return fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static int slotSize(int ringSize) {
+        return SLOT_HEADER_SIZE + 2 * (SharedMemoryRing.HEADER_SIZE + ringSize);
+    }
+
+    private static void checkUnsafe() {
+        if (!PlatformDependent.hasUnsafe()) {
+            throw new IllegalStateException("Shared memory transport requires sun.misc.Unsafe!");
+        }
+    }
+
+    boolean isBusySpin() {
+        return busySpin;
+    }
+
+    Slot[] slots() {
+        return slots;
+    }
+
+    /**
+     * 客户端占用一个空闲的槽位
+     */
+    Slot claim() throws ConnectException {
+        for (Slot slot : slots) {
+            if (slot.claim()) {
+                return slot;
+            }
+        }
+        throw new ConnectException("No free connection slot in shared memory file!");
+    }
+
+    /**
+     * 一个连接使用的槽位
+     */
+    class Slot {
+        private final long stateAddress;
+        private final SharedMemoryRing requests;
+        private final SharedMemoryRing responses;
+
+        private Slot(MappedByteBuffer mapped, long mappedAddress, int offset, int ringSize) {
+            this.stateAddress = mappedAddress + offset;
+            this.requests = new SharedMemoryRing(mapped, mappedAddress, offset + SLOT_HEADER_SIZE, ringSize);
+            this.responses = new SharedMemoryRing(mapped, mappedAddress,
+                    offset + SLOT_HEADER_SIZE + SharedMemoryRing.HEADER_SIZE + ringSize, ringSize);
+        }
+
+        private boolean claim() {
+            return SharedMemoryAccess.compareAndSwapInt(stateAddress, 0, CLIENT);
+        }
+
+        /**
+         * 服务端接受等待中的客户端。客户端看到服务端的标志位之后才会开始写入，所以可以在这之前清空环形缓冲区。
+         * @return 这个槽位上有新的连接
+         */
+        boolean accept() {
+            if (SharedMemoryAccess.getIntVolatile(stateAddress) != CLIENT) {
+                return false;
+            }
+            requests.reset();
+            responses.reset();
+            return SharedMemoryAccess.compareAndSwapInt(stateAddress, CLIENT, CLIENT | SERVER);
+        }
+
+        /**
+         * @param side {@link #CLIENT}或者{@link #SERVER}
+         */
+        boolean isOpen(int side) {
+            return (SharedMemoryAccess.getIntVolatile(stateAddress) & side) != 0;
+        }
+
+        /**
+         * 清除一端的标志位，调用之后这一端不能再读写这个槽位
+         */
+        void release(int side) {
+            int state;
+            do {
+                state = SharedMemoryAccess.getIntVolatile(stateAddress);
+            } while ((state & side) != 0 && !SharedMemoryAccess.compareAndSwapInt(stateAddress, state, state & ~side));
+        }
+
+        SharedMemoryRing requests() {
+            return requests;
+        }
+
+        SharedMemoryRing responses() {
+            return responses;
+        }
+
+        boolean isBusySpin() {
+            return busySpin;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty.shm;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/**
+ * 共享内存中的单生产者单消费者环形缓冲区，传输的是连续的字节流，帧的边界由解码器划分。
+ * <pre>
+ * [long head，消费者已经读到的位置][填充到64字节][long tail，生产者已经写到的位置][填充到64字节][数据区]
+ * </pre>
+ * head和tail只增不减，对容量取模得到在数据区中的位置。写入数据之后才发布tail，
+ * 读出数据之后才发布head，对端看到新的位置时，数据区中对应的内容一定已经就绪。
+ * 每一端只能有一个线程写入，一个线程读出。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+class SharedMemoryRing {
+    static final int HEADER_SIZE = 128;
+    private static final int TAIL_OFFSET = 64;
+    private final long headAddress;
+    private final long tailAddress;
+    private final int capacity;
+    private final int mask;
+    private final ByteBuf data;
+
+    /**
+     * @param mapped 映射的整个文件
+     * @param mappedAddress 映射的起始内存地址
+     * @param offset 这个环形缓冲区在文件中的位置
+     * @param capacity 数据区字节数，必须是2的幂
+     */
+    SharedMemoryRing(ByteBuffer mapped, long mappedAddress, int offset, int capacity) {
+        this.headAddress = mappedAddress + offset;
+        this.tailAddress = mappedAddress + offset + TAIL_OFFSET;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        ByteBuffer region = mapped.duplicate();
+        // 转成Buffer调用，避免在JDK 9以上编译后链接到JDK 8中不存在的协变方法
+        ((Buffer) region).limit(offset + HEADER_SIZE + capacity);
+        ((Buffer) region).position(offset + HEADER_SIZE);
+        this.data = Unpooled.wrappedBuffer(region.slice());
+    }
+
+    /**
+     * 生产者调用，写入尽可能多的字节，不改变src的读指针
+     * @return 写入的字节数，缓冲区满时返回0
+     */
+    int write(ByteBuf src) {
+        long tail = SharedMemoryAccess.getLong(tailAddress);
+        long head = SharedMemoryAccess.getLongVolatile(headAddress);
+        int length = Math.min(capacity - (int) (tail - head), src.readableBytes());
+        if (length <= 0) {
+            return 0;
+        }
+        int index = (int) tail & mask;
+        int first = Math.min(length, capacity - index);
+        data.setBytes(index, src, src.readerIndex(), first);
+        if (first < length) {
+            // 回绕到数据区的开头
+            data.setBytes(0, src, src.readerIndex() + first, length - first);
+        }
+        SharedMemoryAccess.putOrderedLong(tailAddress, tail + length);
+        return length;
+    }
+
+    /**
+     * 消费者调用，可以读出的字节数
+     */
+    int readableBytes() {
+        return (int) (SharedMemoryAccess.getLongVolatile(tailAddress) - SharedMemoryAccess.getLong(headAddress));
+    }
+
+    /**
+     * 消费者调用，最多读出length个字节写入dst
+     * @return 读出的字节数
+     */
+    int read(ByteBuf dst, int length) {
+        long head = SharedMemoryAccess.getLong(headAddress);
+        long tail = SharedMemoryAccess.getLongVolatile(tailAddress);
+        length = Math.min(length, (int) (tail - head));
+        if (length <= 0) {
+            return 0;
+        }
+        int index = (int) head & mask;
+        int first = Math.min(length, capacity - index);
+        dst.writeBytes(data, index, first);
+        if (first < length) {
+            dst.writeBytes(data, 0, length - first);
+        }
+        SharedMemoryAccess.putOrderedLong(headAddress, head + length);
+        return length;
+    }
+
+    /**
+     * 清空缓冲区，只能在两端都没有读写的时候调用
+     */
+    void reset() {
+        SharedMemoryAccess.putLongVolatile(headAddress, 0L);
+        SharedMemoryAccess.putLongVolatile(tailAddress, 0L);
+    }
+}
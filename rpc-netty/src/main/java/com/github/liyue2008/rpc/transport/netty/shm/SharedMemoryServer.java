@@ -0,0 +1,71 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty.shm;
+
+import com.github.liyue2008.rpc.ServerConfig;
+import com.github.liyue2008.rpc.transport.RequestHandlerRegistry;
+import com.github.liyue2008.rpc.transport.netty.NettyServer;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+
+import java.net.SocketAddress;
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * 在共享内存文件上提供服务的服务端，文件的布局由{@link ServerConfig}中的共享内存配置决定。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+public class SharedMemoryServer extends NettyServer {
+    private ServerConfig serverConfig = new ServerConfig();
+
+    @Override
+    public void setServerConfig(ServerConfig serverConfig) {
+        super.setServerConfig(serverConfig);
+        this.serverConfig = serverConfig;
+    }
+
+    @Override
+    public Collection<String> supportedSchemes() {
+        return Collections.singleton(SharedMemoryClient.SCHEME);
+    }
+
+    @Override
+    public void start(RequestHandlerRegistry requestHandlerRegistry, SocketAddress address) throws Exception {
+        if (!(address instanceof SharedMemoryAddress)) {
+            throw new IllegalArgumentException(String.format("Not a shared memory address: %s!", address));
+        }
+        super.start(requestHandlerRegistry, new SharedMemoryAddress(((SharedMemoryAddress) address).path(),
+                serverConfig.getSharedMemoryConnections(), serverConfig.getSharedMemoryRingSize(),
+                serverConfig.isSharedMemoryBusySpin()));
+    }
+
+    @Override
+    protected Class<? extends EventLoopGroup> eventLoopGroupType() {
+        return DefaultEventLoopGroup.class;
+    }
+
+    @Override
+    protected void configureOptions(ServerBootstrap serverBootstrap, ServerConfig serverConfig) {
+        // 共享内存没有Socket参数，缓冲区大小由sharedMemoryRingSize决定
+    }
+
+    @Override
+    protected Class<? extends ServerChannel> serverChannelClass() {
+        return SharedMemoryServerChannel.class;
+    }
+}
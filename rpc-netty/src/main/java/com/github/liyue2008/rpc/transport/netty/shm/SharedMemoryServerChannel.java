@@ -0,0 +1,123 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.netty.shm;
+
+import io.netty.channel.AbstractServerChannel;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.DefaultChannelConfig;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.io.File;
+import java.net.SocketAddress;
+import java.nio.channels.UnsupportedAddressTypeException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 在共享内存文件上监听：绑定时创建文件，之后定期扫描文件中的槽位，
+ * 为每个等待中的客户端创建一个{@link SharedMemoryChannel}，交给ServerBootstrap注册和初始化。
+ * 关闭时关闭所有接受的连接，并删除文件。
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+public class SharedMemoryServerChannel extends AbstractServerChannel {
+    private static final long ACCEPT_INTERVAL_MICROS = 1000L;
+    private final ChannelConfig config = new DefaultChannelConfig(this);
+    private final Set<Channel> children = ConcurrentHashMap.newKeySet();
+    private volatile SharedMemoryAddress address;
+    private volatile File file;
+    private volatile SharedMemoryFile sharedMemoryFile;
+    private volatile boolean open = true;
+    private ScheduledFuture<?> acceptFuture;
+
+    @Override
+    protected boolean isCompatible(EventLoop loop) {
+        return loop instanceof DefaultEventLoop;
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        return address;
+    }
+
+    @Override
+    protected void doBind(SocketAddress localAddress) throws Exception {
+        if (!(localAddress instanceof SharedMemoryAddress)) {
+            throw new UnsupportedAddressTypeException();
+        }
+        SharedMemoryAddress address = (SharedMemoryAddress) localAddress;
+        File file = new File(address.path());
+        sharedMemoryFile = SharedMemoryFile.create(file, address.connections(), address.ringSize(), address.isBusySpin());
+        this.file = file;
+        this.address = address;
+    }
+
+    @Override
+    protected void doBeginRead() {
+        if (null == acceptFuture && isActive()) {
+            acceptFuture = eventLoop().scheduleWithFixedDelay(this::accept,
+                    ACCEPT_INTERVAL_MICROS, ACCEPT_INTERVAL_MICROS, TimeUnit.MICROSECONDS);
+        }
+    }
+
+    private void accept() {
+        boolean accepted = false;
+        for (SharedMemoryFile.Slot slot : sharedMemoryFile.slots()) {
+            if (slot.accept()) {
+                SharedMemoryChannel child = new SharedMemoryChannel(this, slot, address);
+                children.add(child);
+                child.closeFuture().addListener(future -> children.remove(child));
+                pipeline().fireChannelRead(child);
+                accepted = true;
+            }
+        }
+        if (accepted) {
+            pipeline().fireChannelReadComplete();
+        }
+    }
+
+    @Override
+    protected void doClose() {
+        open = false;
+        if (null != acceptFuture) {
+            acceptFuture.cancel(false);
+        }
+        for (Channel child : children) {
+            child.close();
+        }
+        if (null != file) {
+            // 已经映射了这个文件的客户端不受影响，它们会看到服务端关闭了连接
+            file.delete();
+        }
+    }
+
+    @Override
+    public ChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isActive() {
+        return open && null != sharedMemoryFile;
+    }
+}
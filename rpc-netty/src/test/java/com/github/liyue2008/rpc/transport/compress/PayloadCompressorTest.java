@@ -0,0 +1,109 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.transport.compress;
+
+import com.github.liyue2008.rpc.Compression;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.compression.DecompressionException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author LiYue
+ * Date: 2019/10/19
+ */
+public class PayloadCompressorTest {
+    private static final int MAX_LENGTH = 1024;
+    private static final ByteBufAllocator ALLOCATOR = ByteBufAllocator.DEFAULT;
+
+    @Test
+    public void roundTrip() {
+        byte [] bytes = repeat("hello, compression! ", 40);
+        for (Compression compression : new Compression[] {Compression.SNAPPY, Compression.DEFLATE}) {
+            PayloadCompressor compressor = PayloadCompressor.of(compression, 0, false);
+            ByteBuf compressed = compressor.compress(ALLOCATOR, Unpooled.wrappedBuffer(bytes));
+            ByteBuf decompressed = PayloadCompressor.decompress(ALLOCATOR, compressor.flag(), compressed, MAX_LENGTH);
+            try {
+                Assert.assertArrayEquals(bytes, toArray(decompressed));
+            } finally {
+                compressed.release();
+                decompressed.release();
+            }
+        }
+    }
+
+    @Test(expected = DecompressionException.class)
+    public void declaredLengthTooLong() {
+        ByteBuf payload = Unpooled.buffer().writeInt(MAX_LENGTH + 1).writeBytes(new byte[16]);
+        PayloadCompressor.decompress(ALLOCATOR, SnappyCodec.FLAG, payload, MAX_LENGTH);
+    }
+
+    /**
+     * Snappy块自己的前导长度声明了254MB，解码器按这个长度扩容时必须直接失败，不能真的申请这么多内存
+     */
+    @Test
+    public void maliciousSnappyPreamble() {
+        ByteBuf block = Unpooled.buffer()
+                .writeBytes(new byte [] {(byte) 0x80, (byte) 0x80, (byte) 0x80, 0x7F})
+                // 字面量，长度4
+                .writeByte(3 << 2).writeBytes(new byte [] {1, 2, 3, 4});
+        ByteBuf payload = Unpooled.buffer().writeInt(16).writeInt(block.readableBytes()).writeBytes(block);
+        try {
+            PayloadCompressor.decompress(ALLOCATOR, SnappyCodec.FLAG, payload, MAX_LENGTH);
+            Assert.fail("Malicious preamble accepted!");
+        } catch (DecompressionException e) {
+            // 扩容超过最大容量失败，而不是申请之后才发现长度不对
+            Assert.assertTrue(e.getCause() instanceof IndexOutOfBoundsException);
+        }
+    }
+
+    @Test(expected = DecompressionException.class)
+    public void shortDeflateStream() {
+        byte [] deflated = deflate(repeat("a", 100));
+        ByteBuf payload = Unpooled.buffer().writeInt(100).writeBytes(deflated, 0, deflated.length / 2);
+        PayloadCompressor.decompress(ALLOCATOR, DeflateCodec.FLAG, payload, MAX_LENGTH);
+    }
+
+    @Test(expected = DecompressionException.class)
+    public void longDeflateStream() {
+        // 实际解压出1MB，声明的长度只有16
+        byte [] deflated = deflate(new byte[1024 * 1024]);
+        ByteBuf payload = Unpooled.buffer().writeInt(16).writeBytes(deflated);
+        PayloadCompressor.decompress(ALLOCATOR, DeflateCodec.FLAG, payload, MAX_LENGTH);
+    }
+
+    private static byte [] repeat(String s, int times) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < times; i++) {
+            sb.append(s);
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte [] deflate(byte [] bytes) {
+        ByteBuf out = Unpooled.buffer();
+        new DeflateCodec().compress(Unpooled.wrappedBuffer(bytes), out);
+        return toArray(out);
+    }
+
+    private static byte [] toArray(ByteBuf buf) {
+        byte [] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,273 @@
+/**
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.liyue2008.rpc.processor;
+
+import com.github.liyue2008.rpc.RpcService;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * 为标注了{@link RpcService}的服务接口生成客户端的桩（XxxStub）和服务端的分发器（XxxDispatcher），
+ * 并把它们注册到META-INF/services中，运行时通过SPI加载。生成的类只依赖rpc-api。
+ * 方法的排序规则和序号必须与运行时的RpcMethod#methodsOf(Class)一致。
+ * @author LiYue
+ * Date: 2019/10/10
+ */
+@SupportedAnnotationTypes("com.github.liyue2008.rpc.RpcService")
+public class RpcServiceProcessor extends AbstractProcessor {
+    private final static String PREBUILT_STUB = "com.github.liyue2008.rpc.client.PrebuiltStub";
+    private final static String SERVICE_DISPATCHER = "com.github.liyue2008.rpc.server.ServiceDispatcher";
+    private final List<String> stubs = new ArrayList<>();
+    private final List<String> dispatchers = new ArrayList<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeServiceFile(PREBUILT_STUB, stubs);
+            writeServiceFile(SERVICE_DISPATCHER, dispatchers);
+            return false;
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(RpcService.class)) {
+            if (element.getKind() != ElementKind.INTERFACE) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "@RpcService can only be used on interfaces!", element);
+                continue;
+            }
+            try {
+                generate((TypeElement) element);
+            } catch (IOException e) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "Generate stub failed: " + e.getMessage(), element);
+            }
+        }
+        return true;
+    }
+
+    private void generate(TypeElement service) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(service).getQualifiedName().toString();
+        String simpleName = flatName(service, packageName);
+        List<ExecutableElement> methods = serviceMethods(service);
+
+        String stubName = simpleName + "Stub";
+        writeSource(packageName, stubName, stubSource(service, stubName, methods), service);
+        stubs.add(qualifiedName(packageName, stubName));
+
+        String dispatcherName = simpleName + "Dispatcher";
+        writeSource(packageName, dispatcherName, dispatcherSource(service, dispatcherName, methods), service);
+        dispatchers.add(qualifiedName(packageName, dispatcherName));
+    }
+
+    private String stubSource(TypeElement service, String stubName, List<ExecutableElement> methods) {
+        String serviceName = service.getQualifiedName().toString();
+        StringBuilder sb = new StringBuilder();
+        sb.append("/**\n * Generated by ").append(getClass().getName()).append(", do not edit.\n */\n");
+        // 方法签名使用擦除后的类型，返回CompletableFuture<T>等泛型类型的方法会有unchecked警告
+        sb.append("@SuppressWarnings(\"unchecked\")\n");
+        sb.append("public final class ").append(stubName).append(" extends ").append(PREBUILT_STUB)
+                .append(" implements ").append(serviceName).append(" {\n");
+        sb.append("    public ").append(stubName).append("() {\n");
+        sb.append("        super(").append(serviceName).append(".class);\n");
+        sb.append("    }\n");
+        for (int i = 0; i < methods.size(); i++) {
+            ExecutableElement method = methods.get(i);
+            TypeMirror returnType = method.getReturnType();
+            List<? extends VariableElement> parameters = method.getParameters();
+            sb.append("\n    @Override\n");
+            sb.append("    public ").append(sourceType(returnType)).append(' ').append(method.getSimpleName()).append('(');
+            for (int j = 0; j < parameters.size(); j++) {
+                sb.append(j == 0 ? "" : ", ").append(sourceType(parameters.get(j).asType())).append(" arg").append(j);
+            }
+            sb.append(") {\n        ");
+            if (returnType.getKind() != TypeKind.VOID) {
+                sb.append("return (").append(boxedSourceType(returnType)).append(") ");
+            }
+            sb.append("invoke(").append(i).append(", new Object[] {");
+            for (int j = 0; j < parameters.size(); j++) {
+                sb.append(j == 0 ? "" : ", ").append("arg").append(j);
+            }
+            sb.append("});\n    }\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private String dispatcherSource(TypeElement service, String dispatcherName, List<ExecutableElement> methods) {
+        String serviceName = service.getQualifiedName().toString();
+        StringBuilder sb = new StringBuilder();
+        sb.append("/**\n * Generated by ").append(getClass().getName()).append(", do not edit.\n */\n");
+        sb.append("public final class ").append(dispatcherName).append(" implements ").append(SERVICE_DISPATCHER).append(" {\n");
+        sb.append("    @Override\n");
+        sb.append("    public Class<?> getServiceClass() {\n");
+        sb.append("        return ").append(serviceName).append(".class;\n");
+        sb.append("    }\n\n");
+        sb.append("    @Override\n");
+        sb.append("    public Object invoke(Object serviceProvider, int methodIndex, Object [] arguments) throws Throwable {\n");
+        sb.append("        ").append(serviceName).append(" service = (").append(serviceName).append(") serviceProvider;\n");
+        sb.append("        switch (methodIndex) {\n");
+        for (int i = 0; i < methods.size(); i++) {
+            ExecutableElement method = methods.get(i);
+            List<? extends VariableElement> parameters = method.getParameters();
+            StringBuilder call = new StringBuilder("service.").append(method.getSimpleName()).append('(');
+            for (int j = 0; j < parameters.size(); j++) {
+                call.append(j == 0 ? "" : ", ")
+                        .append('(').append(boxedSourceType(parameters.get(j).asType())).append(") arguments[").append(j).append(']');
+            }
+            call.append(')');
+            sb.append("            case ").append(i).append(":\n");
+            if (method.getReturnType().getKind() == TypeKind.VOID) {
+                sb.append("                ").append(call).append(";\n");
+                sb.append("                return null;\n");
+            } else {
+                sb.append("                return ").append(call).append(";\n");
+            }
+        }
+        sb.append("            default:\n");
+        sb.append("                throw new IllegalArgumentException(\"Unknown method index: \" + methodIndex);\n");
+        sb.append("        }\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private List<ExecutableElement> serviceMethods(TypeElement service) {
+        return ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(service)).stream()
+                .filter(method -> method.getModifiers().contains(Modifier.ABSTRACT))
+                .sorted(Comparator.comparing((ExecutableElement method) -> method.getSimpleName().toString())
+                        .thenComparing(this::parameterDescriptor))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 与RpcMethod中的排序规则一致，参数类型使用{@link Class#getName()}的格式。
+     */
+    private String parameterDescriptor(ExecutableElement method) {
+        return method.getParameters().stream()
+                .map(parameter -> className(parameter.asType()))
+                .collect(Collectors.joining(",", "(", ")"));
+    }
+
+    private String className(TypeMirror type) {
+        TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+        switch (erasure.getKind()) {
+            case ARRAY:
+                return arrayDescriptor((ArrayType) erasure);
+            case DECLARED:
+                return binaryName(erasure);
+            default:
+                return erasure.toString();
+        }
+    }
+
+    private String arrayDescriptor(ArrayType arrayType) {
+        TypeMirror componentType = processingEnv.getTypeUtils().erasure(arrayType.getComponentType());
+        switch (componentType.getKind()) {
+            case ARRAY: return "[" + arrayDescriptor((ArrayType) componentType);
+            case DECLARED: return "[L" + binaryName(componentType) + ";";
+            case BOOLEAN: return "[Z";
+            case BYTE: return "[B";
+            case CHAR: return "[C";
+            case SHORT: return "[S";
+            case INT: return "[I";
+            case LONG: return "[J";
+            case FLOAT: return "[F";
+            default: return "[D";
+        }
+    }
+
+    private String binaryName(TypeMirror declaredType) {
+        TypeElement typeElement = (TypeElement) ((DeclaredType) declaredType).asElement();
+        return processingEnv.getElementUtils().getBinaryName(typeElement).toString();
+    }
+
+    private String sourceType(TypeMirror type) {
+        return processingEnv.getTypeUtils().erasure(type).toString();
+    }
+
+    private String boxedSourceType(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        }
+        return sourceType(type);
+    }
+
+    private String flatName(TypeElement service, String packageName) {
+        String qualifiedName = service.getQualifiedName().toString();
+        String name = packageName.isEmpty() ? qualifiedName : qualifiedName.substring(packageName.length() + 1);
+        return name.replace('.', '_');
+    }
+
+    private String qualifiedName(String packageName, String simpleName) {
+        return packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+    }
+
+    private void writeSource(String packageName, String className, String body, TypeElement service) throws IOException {
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName(packageName, className), service);
+        try (Writer writer = file.openWriter()) {
+            if (!packageName.isEmpty()) {
+                writer.write("package " + packageName + ";\n\n");
+            }
+            writer.write(body);
+        }
+    }
+
+    private void writeServiceFile(String serviceInterface, List<String> implementations) {
+        if (implementations.isEmpty()) {
+            return;
+        }
+        try {
+            FileObject file = processingEnv.getFiler()
+                    .createResource(StandardLocation.CLASS_OUTPUT, "", "META-INF/services/" + serviceInterface);
+            try (Writer writer = file.openWriter()) {
+                for (String implementation : implementations) {
+                    writer.write(implementation);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Write service file failed: " + e.getMessage());
+        }
+    }
+}